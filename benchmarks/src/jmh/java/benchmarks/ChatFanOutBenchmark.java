@@ -0,0 +1,128 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import server.elements.Client;
+import server.elements.Group;
+import server.elements.ServerData;
+import server.elements.User;
+import server.managers.DatabaseManager;
+import server.managers.MembershipCache;
+import server.managers.MessageWriter;
+import utils.IntSet;
+import utils.elements.ClientTypes;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка сообщения всем участникам группы через {@link Client#sendMessageToChat}.
+ *
+ * <p>Получатели подключены через {@link NullConnection}, поэтому измеряется
+ * только работа сервера: оформление, кодирование и обход участников.
+ * Сообщения записываются в H2 в памяти через {@link MessageWriter},
+ * как и на настоящем сервере - в фоне.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatFanOutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int members;
+
+    @Param({"CONSOLE", "GUI"})
+    public ClientTypes clientType;
+
+    @Param({"false", "true"})
+    public boolean isBinary;
+
+    private final List<Client> clients = new ArrayList<>();
+    private Client sender;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        // Сервер журналирует каждое сообщение; в бенчмарке это только шум.
+        // Свойства читаются при настройке журнала, то есть до первого обращения к нему.
+        System.setProperty("log.level", "warn");
+        System.setProperty("log.chat.level", "off");
+
+        DatabaseManager.init(
+            "jdbc:h2:mem:fanout" + System.nanoTime()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+            "sa",
+            ""
+        );
+        MessageWriter.start(
+            MessageWriter.MAX_BATCH_SIZE, MessageWriter.MAX_DELAY_MS, MessageWriter.MAX_QUEUE_SIZE
+        );
+
+        var ids = new int[members];
+        for (int i = 0; i < members; i++) {
+            var connection = new NullConnection();
+            if (isBinary)
+                connection.switchToFrames(null);
+
+            var client = new Client(connection);
+            client.user = new User("user" + i, "password");
+            client.type = clientType;
+            ServerData.addClient(client);
+            ServerData.login(client);
+            clients.add(client);
+            ids[i] = client.user.getId();
+        }
+
+        sender = clients.getFirst();
+        var group = new Group(sender.user.getId(), "bench", "Bench");
+        for (var client : clients)
+            client.group = group;
+        insertGroup(group, sender.user);
+        MembershipCache.get(group.getIdGroup(), (id) -> IntSet.of(ids));
+    }
+
+    private static void insertGroup(Group group, User owner) throws SQLException {
+        try (var conn = DatabaseManager.getConnection();
+             var stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO users (id, username, password, salt) VALUES ("
+                + owner.getId() + ", 'owner', 'password', 'salt')");
+            stmt.execute("INSERT INTO groups (id, groupname, name, type, owner_id) VALUES ("
+                + group.getIdGroup() + ", 'bench', 'Bench', 0, " + owner.getId() + ")");
+        }
+    }
+
+    /**
+     * Не дает очереди записи расти от итерации к итерации.
+     */
+    @TearDown(Level.Iteration)
+    public void awaitWriter() throws InterruptedException {
+        while (MessageWriter.getQueueDepth() > 0)
+            Thread.sleep(10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clients.forEach(ServerData::removeClient);
+        clients.clear();
+        MembershipCache.invalidate(sender.group.getIdGroup());
+        MessageWriter.close();
+        DatabaseManager.close();
+    }
+
+    @Benchmark
+    public void sendMessageToChat() {
+        sender.sendMessageToChat(
+            "Привет всем! Кто сегодня идет на пары?",
+            clientType == ClientTypes.GUI
+        );
+    }
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import utils.Ansi;
+import utils.cli.CommandError;
+import utils.cli.CommandResult;
+import utils.cli.CommandTokenizer;
+import utils.cli.CommandValidator;
+import utils.cli.CustomCommandProcessor;
+import utils.cli.utils.Token;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор и исполнение команд в том виде, в котором их присылают клиенты.
+ * <br>Дерево команд повторяет серверное, но действия не обращаются к базе.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandBenchmark {
+
+    @Param({
+        "/groups invite gftwl friendName",
+        "/groups create gftwl \"Группа для любителей \\\"[ССЫЛКА\\\\ЗАБЛОКИРОВАНА]\\\"\"",
+        "/friends add \"user name\"",
+        "/history 1200",
+        "/unknown command"
+    })
+    public String command;
+
+    private final Object data = new Object();
+    private CustomCommandProcessor<Object> processor;
+
+    @Setup
+    public void setup() {
+        processor = createProcessor();
+    }
+
+    static CustomCommandProcessor<Object> createProcessor() {
+        var processor = new CustomCommandProcessor<>();
+        processor.register("groups", (a) -> a
+            .subcommand("create", (b) -> b
+                .requireArgument("groupname")
+                .findArgument("name")
+                .executes((ctx) -> ctx.out.stylePrintln(
+                    Ansi.Colors.GREEN, "Group " + ctx.getString("groupname") + " created."
+                ))
+            )
+            .subcommand("invite", (b) -> b
+                .requireArgument("groupname")
+                .requireArgument("username")
+                .executes((ctx) -> ctx.out.println(
+                    "Invited " + ctx.getString("username") + " to " + ctx.getString("groupname")
+                ))
+            )
+            .subcommand("kick", (b) -> b
+                .requireArgument("groupname")
+                .requireArgument("username")
+                .executes((ctx) -> ctx.out.println("Kicked."))
+            )
+            .subcommand("delete", (b) -> b
+                .requireArgument("groupname")
+                .executes((ctx) -> ctx.out.println("Deleted."))
+            )
+        );
+        processor.register("friends", (a) -> a
+            .subcommand("add", (b) -> b
+                .requireArgument("username")
+                .executes((ctx) -> ctx.out.println(
+                    "Friend request sent to " + ctx.getString("username")
+                ))
+            )
+            .subcommand("remove", (b) -> b
+                .requireArgument("username")
+                .executes((ctx) -> ctx.out.println("Removed."))
+            )
+            .subcommand("list", (b) -> b
+                .executes((ctx) -> ctx.out.println("No friends."))
+            )
+        );
+        processor.register("history", (a) -> a
+            .findArgument("before")
+            .executes((ctx) -> ctx.out.stylePrintln(
+                Ansi.Colors.Bright.BLACK, "Older messages: /history " + ctx.getString("before")
+            ))
+        );
+        processor.register("open", (a) -> a
+            .requireArgument("groupname")
+            .executes((ctx) -> ctx.out.println("Opened."))
+        );
+        return processor;
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        return CommandTokenizer.tokenize(command);
+    }
+
+    @Benchmark
+    public CommandError validate() {
+        return CommandValidator.validate(command);
+    }
+
+    @Benchmark
+    public CommandResult execute() {
+        return processor.run(command, data);
+    }
+
+    @Benchmark
+    public String executeAndFormat() {
+        var result = processor.run(command, data, true);
+        return result.isSuccessful()
+            ? result.getOutput()
+            : result.getError().getMessage(true);
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import utils.Ansi;
+import utils.StringPrintWriter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оформление вывода: стили ANSI и HTML и сборка ответа команды.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormattingBenchmark {
+
+    private final String message = "[username] Привет! Кто сегодня идет на пары?";
+    private final Ansi underlinedRed = Ansi.Colors.RED.and(Ansi.Modes.UNDERLINE);
+
+    @Benchmark
+    public String applyStyle() {
+        return Ansi.applyStyle(message, Ansi.Colors.YELLOW);
+    }
+
+    @Benchmark
+    public String applyHtml() {
+        return Ansi.applyHtml(message, Ansi.Colors.YELLOW);
+    }
+
+    @Benchmark
+    public String applyCombinedStyle() {
+        return Ansi.applyStyle(message, underlinedRed);
+    }
+
+    @Benchmark
+    public String applyCombinedHtml() {
+        return Ansi.applyHtml(message, underlinedRed);
+    }
+
+    /**
+     * Типичный ответ команды: несколько строк, часть из них с оформлением.
+     */
+    @Benchmark
+    public String stringPrintWriter() {
+        var out = new StringPrintWriter();
+        out.println("Group members:");
+        for (int i = 0; i < 10; i++)
+            out.printlnf("%d. user%d", i + 1, i);
+        out.stylePrintln(Ansi.Colors.Bright.BLACK, "Older messages: /history", 1200);
+        out.stylePrintln(Ansi.Colors.GREEN, "Done.");
+        return out.toString();
+    }
+
+    @Benchmark
+    public String stringPrintWriterHtml() {
+        var out = new StringPrintWriter();
+        out.printAsHtml = true;
+        out.println("Group members:");
+        for (int i = 0; i < 10; i++)
+            out.printlnf("%d. user%d", i + 1, i);
+        out.stylePrintln(Ansi.Colors.Bright.BLACK, "Older messages: /history", 1200);
+        out.stylePrintln(Ansi.Colors.GREEN, "Done.");
+        return out.toString();
+    }
+}
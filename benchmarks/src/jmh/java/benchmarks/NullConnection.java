@@ -0,0 +1,49 @@
+package benchmarks;
+
+import utils.network.Connection;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Соединение в памяти: ничего не отправляет, а только считает байты.
+ * Строки кодируются так же, как в настоящих соединениях.
+ */
+class NullConnection implements Connection {
+
+    long sentBytes = 0;
+    private boolean isBinary = false;
+
+    @Override
+    public void sendln(String message) {
+        send(message + '\n');
+    }
+
+    @Override
+    public void send(String message) {
+        sentBytes += message.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        sentBytes += data.remaining();
+    }
+
+    @Override
+    public void switchToFrames(String ack) {
+        isBinary = true;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return isBinary;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void close() {}
+}
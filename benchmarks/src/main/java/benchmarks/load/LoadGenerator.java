@@ -0,0 +1,225 @@
+package benchmarks.load;
+
+import utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Нагрузочный тест: множество симулированных клиентов против запущенного сервера.
+ *
+ * <p>Пользователи делятся на группы по <code>--group-size</code> человек.
+ * Первый участник каждой группы создает ее и приглашает остальных,
+ * затем все открывают группу и в течение <code>--duration</code> секунд
+ * пишут в нее <code>--rate</code> сообщений в секунду.
+ * Каждый клиент обслуживается виртуальными потоками, поэтому тысячи
+ * клиентов не требуют тысяч потоков ОС.
+ *
+ * <p>Периодически и в конце выводятся пропускная способность, перцентили
+ * задержки доставки (p50/p99/p999) и число ошибок. Доставки сравниваются
+ * с ожидаемыми: каждое сообщение должны получить все готовые участники группы,
+ * кроме отправителя.
+ *
+ * <pre><code>
+ *     ./gradlew :server:run --args="--transport=nio"
+ *     ./gradlew :benchmarks:loadTest --args="--users=1000 --group-size=20 --rate=2"
+ * </code></pre>
+ *
+ * @see LoadOptions
+ */
+public class LoadGenerator {
+    /**
+     * Сколько ждать доставки последних сообщений после окончания отправки.
+     */
+    private static final long DRAIN_MS = 2000;
+
+    private final LoadOptions options;
+    private final LoadStats stats = new LoadStats();
+
+    private final List<SimulatedUser> users = new ArrayList<>();
+    private final List<List<SimulatedUser>> groups = new ArrayList<>();
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+
+        for (int i = 0; i < options.users(); i++)
+            users.add(new SimulatedUser(
+                options.prefix() + "u" + i,
+                options.prefix() + "g" + i / options.groupSize(),
+                stats,
+                options.timeoutSeconds()
+            ));
+        for (int i = 0; i < options.users(); i += options.groupSize())
+            groups.add(users.subList(i, Math.min(i + options.groupSize(), options.users())));
+    }
+
+    public void run() {
+        System.out.printf(
+            "Load test %s: %d users in %d groups, %.2f msg/s each, %d s against %s:%d\n",
+            options.prefix(), users.size(), groups.size(), options.rate(),
+            options.durationSeconds(), options.host(), options.port()
+        );
+
+        runPhase("Connecting", users, (user) ->
+            user.connect(options.host(), options.port())
+                && user.authenticate(options.password())
+        );
+
+        var groupByOwner = new HashMap<SimulatedUser, List<SimulatedUser>>();
+        var members = new ArrayList<SimulatedUser>();
+        for (var group : groups) {
+            groupByOwner.put(group.getFirst(), group);
+            members.addAll(group.subList(1, group.size()));
+        }
+        runPhase("Creating groups", ready(List.copyOf(groupByOwner.keySet())), (owner) ->
+            owner.createGroup(groupByOwner.get(owner))
+        );
+        runPhase("Opening groups", ready(members), SimulatedUser::open);
+
+        chat();
+        report("Total", stats.total, options.durationSeconds());
+        System.out.printf(
+            "Deliveries: %d of %d expected, errors: %d connect, %d setup, "
+                + "%d disconnects, %d unexpected replies\n",
+            stats.delivered.sum(), stats.expected.sum(),
+            stats.connectFailures.sum(), stats.setupErrors.sum(),
+            stats.disconnects.sum(), stats.unexpectedReplies.sum()
+        );
+
+        for (var user : users)
+            user.close();
+    }
+
+    private static List<SimulatedUser> ready(List<SimulatedUser> users) {
+        return users.stream().filter(SimulatedUser::isReady).toList();
+    }
+
+    /**
+     * Выполняет этап подготовки для всех клиентов параллельно,
+     * не более <code>--setup-concurrency</code> одновременно.
+     * Клиенты, не прошедшие этап, исключаются из теста.
+     */
+    private void runPhase(
+        String name, List<SimulatedUser> phaseUsers, Predicate<SimulatedUser> step
+    ) {
+        var start = System.nanoTime();
+        var permits = new Semaphore(options.setupConcurrency());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var user : phaseUsers)
+                executor.execute(() -> {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    try {
+                        var isReady = step.test(user);
+                        // Неудачные подключения уже учтены отдельно
+                        if (!isReady && user.isConnected())
+                            stats.setupErrors.increment();
+                        user.setReady(isReady);
+                    } finally {
+                        permits.release();
+                    }
+                });
+        }
+
+        System.out.printf(
+            "%s: %d of %d ready in %d ms\n",
+            name, ready(phaseUsers).size(), phaseUsers.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+    }
+
+    /**
+     * Запускает отправку сообщений всеми готовыми клиентами
+     * и выводит промежуточные отчеты, пока она идет.
+     */
+    private void chat() {
+        var ready = ready(users);
+        if (ready.isEmpty()) {
+            System.err.println("No users are ready, nothing to test.");
+            return;
+        }
+        ready.forEach(SimulatedUser::startChatting);
+
+        var start = System.nanoTime();
+        var end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var group : groups) {
+                var recipients = ready(group).size() - 1;
+                for (var user : group)
+                    if (user.isReady())
+                        executor.execute(() -> user.chat(options.rate(), end, recipients));
+            }
+
+            var reportNanos = TimeUnit.SECONDS.toNanos(options.reportSeconds());
+            long previousSent = 0;
+            long previousDelivered = 0;
+            for (var next = start + reportNanos; next < end; next += reportNanos) {
+                sleepUntil(next);
+                var sent = stats.sent.sum();
+                var delivered = stats.delivered.sum();
+                report(
+                    String.format("%4ds", TimeUnit.NANOSECONDS.toSeconds(next - start)),
+                    sent - previousSent, delivered - previousDelivered,
+                    stats.interval.snapshotAndReset(), options.reportSeconds()
+                );
+                previousSent = sent;
+                previousDelivered = delivered;
+            }
+        }
+
+        sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MS));
+    }
+
+    private static void sleepUntil(long nanos) {
+        long delay;
+        while ((delay = nanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void report(String title, LatencyHistogram latency, int seconds) {
+        report(title, stats.sent.sum(), stats.delivered.sum(), latency, seconds);
+    }
+
+    private void report(
+        String title, long sent, long delivered, LatencyHistogram latency, int seconds
+    ) {
+        System.out.printf(
+            "[%s] sent %.1f/s, delivered %.1f/s, latency p50 %.2f ms, p99 %.2f ms, "
+                + "p999 %.2f ms, max %.2f ms, errors %d\n",
+            title, (double) sent / seconds, (double) delivered / seconds,
+            latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0,
+            latency.getPercentile(99.9) / 1000.0, latency.getMax() / 1000.0,
+            stats.getErrorCount()
+        );
+    }
+
+    public static void main(String[] args) {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        new LoadGenerator(options).run();
+    }
+}
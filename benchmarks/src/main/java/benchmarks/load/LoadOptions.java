@@ -0,0 +1,108 @@
+package benchmarks.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Параметры нагрузочного теста.
+ * <br>Пример: <code>--users=1000 --group-size=20 --rate=2 --duration=60</code>
+ *
+ * @param host адрес сервера
+ * @param port порт сервера
+ * @param users число симулированных клиентов
+ * @param groupSize число участников в каждой группе
+ * @param rate сообщений в секунду от каждого клиента
+ * @param durationSeconds длительность отправки сообщений
+ * @param reportSeconds период промежуточных отчетов
+ * @param timeoutSeconds сколько ждать ответа сервера на команду при подготовке
+ * @param setupConcurrency сколько клиентов готовятся к тесту одновременно
+ * @param prefix префикс имен пользователей и групп.
+ *               По умолчанию случайный, чтобы запуски не мешали друг другу.
+ * @param password пароль всех пользователей
+ */
+record LoadOptions(
+    String host,
+    int port,
+    int users,
+    int groupSize,
+    double rate,
+    int durationSeconds,
+    int reportSeconds,
+    int timeoutSeconds,
+    int setupConcurrency,
+    String prefix,
+    String password
+) {
+    /**
+     * Длина префикса ограничена, чтобы имя отправителя и метка времени
+     * помещались в одну строку чата.
+     */
+    static final int MAX_PREFIX_LENGTH = 8;
+
+    static final String USAGE = """
+        Usage: loadTest [options]
+          --host=127.0.0.1       server address
+          --port=8080            server port
+          --users=100            simulated clients
+          --group-size=10        members per group
+          --rate=1               messages per second per client
+          --duration=30          seconds of chatting
+          --report=5             seconds between reports
+          --timeout=10           seconds to wait for a reply during setup
+          --setup-concurrency=50 clients preparing at the same time
+          --prefix=<random>      prefix of user and group names
+          --password=loadtest    password of every user""";
+
+    /**
+     * Разбирает аргументы запуска.
+     *
+     * @throws IllegalArgumentException если аргумент неизвестен или значение неверно
+     */
+    static LoadOptions parse(String[] args) throws IllegalArgumentException {
+        var host = "127.0.0.1";
+        var port = 8080;
+        var users = 100;
+        var groupSize = 10;
+        var rate = 1.0;
+        var duration = 30;
+        var report = 5;
+        var timeout = 10;
+        var setupConcurrency = 50;
+        var prefix = "lt" + Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36), 36);
+        var password = "loadtest";
+
+        for (var arg : args) {
+            var separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1)
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            var value = arg.substring(separator + 1);
+
+            switch (arg.substring(2, separator)) {
+                case "host" -> host = value;
+                case "port" -> port = Integer.parseInt(value);
+                case "users" -> users = Integer.parseInt(value);
+                case "group-size" -> groupSize = Integer.parseInt(value);
+                case "rate" -> rate = Double.parseDouble(value);
+                case "duration" -> duration = Integer.parseInt(value);
+                case "report" -> report = Integer.parseInt(value);
+                case "timeout" -> timeout = Integer.parseInt(value);
+                case "setup-concurrency" -> setupConcurrency = Integer.parseInt(value);
+                case "prefix" -> prefix = value;
+                case "password" -> password = value;
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        if (users < 1 || groupSize < 1 || rate <= 0 || duration < 1
+            || report < 1 || timeout < 1 || setupConcurrency < 1)
+            throw new IllegalArgumentException("Numeric options must be positive");
+        if (prefix.length() > MAX_PREFIX_LENGTH || !prefix.matches("[a-zA-Z0-9]+"))
+            throw new IllegalArgumentException(
+                "Prefix must be 1-" + MAX_PREFIX_LENGTH + " letters or digits"
+            );
+
+        return new LoadOptions(
+            host, port, users, groupSize, rate, duration,
+            report, timeout, setupConcurrency, prefix, password
+        );
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks.load;
+
+import utils.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общие счетчики нагрузочного теста.
+ *
+ * <p>Задержка доставки измеряется по метке времени в тексте сообщения:
+ * отправитель пишет время от начала теста в микросекундах,
+ * а получатель вычитает его из текущего. Все симулированные клиенты
+ * живут в одном процессе, поэтому часы у них общие.
+ */
+final class LoadStats {
+    /**
+     * Признак сообщения с меткой времени, сразу после имени отправителя.
+     */
+    static final String TIMESTAMP_PREFIX = "~";
+
+    private final long startNanos = System.nanoTime();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder expected = new LongAdder();
+
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder setupErrors = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder unexpectedReplies = new LongAdder();
+
+    final LatencyHistogram total = new LatencyHistogram();
+    final LatencyHistogram interval = new LatencyHistogram();
+
+    long nowMicros() {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    /**
+     * Создает текст сообщения с текущей меткой времени.
+     * Метка записана в 36-ричной системе, чтобы сообщение
+     * вместе с именем отправителя уместилось в одну строку чата.
+     */
+    String newMessage() {
+        return TIMESTAMP_PREFIX + Long.toString(nowMicros(), 36);
+    }
+
+    void onSent(int recipients) {
+        sent.increment();
+        expected.add(recipients);
+    }
+
+    /**
+     * Учитывает полученное сообщение.
+     *
+     * @param content текст сообщения без имени отправителя
+     * @return false, если текст не содержит метки времени
+     */
+    boolean onDelivered(String content) {
+        if (!content.startsWith(TIMESTAMP_PREFIX))
+            return false;
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(content.substring(TIMESTAMP_PREFIX.length()).trim(), 36);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        var latency = nowMicros() - sentAt;
+        total.record(latency);
+        interval.record(latency);
+        delivered.increment();
+        return true;
+    }
+
+    long getErrorCount() {
+        return connectFailures.sum() + setupErrors.sum()
+            + disconnects.sum() + unexpectedReplies.sum();
+    }
+}
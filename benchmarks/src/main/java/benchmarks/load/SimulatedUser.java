@@ -0,0 +1,241 @@
+package benchmarks.load;
+
+import utils.network.Frame;
+import utils.network.SimpleSocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Симулированный консольный клиент.
+ *
+ * <p>Говорит с сервером тем же строковым протоколом, что и настоящий клиент:
+ * представляется строкой <code>/hello</code>, регистрируется или входит,
+ * открывает группу и пишет в нее сообщения.
+ *
+ * <p>Строки от сервера читает отдельный виртуальный поток. Во время подготовки
+ * они складываются в очередь ответов, а во время теста сообщения чата
+ * сразу учитываются в {@link LoadStats}.
+ *
+ * <p>Ответы сервера не помечены командой, на которую отвечают. Поэтому после
+ * каждой команды отправляется заведомо неизвестная команда {@link #SYNC_COMMAND}:
+ * команды одного соединения исполняются по очереди, и все строки до ошибки
+ * о ней - ответ на исходную команду.
+ */
+final class SimulatedUser {
+    private static final String SYNC_COMMAND = "/loadtest_sync";
+    private static final String SYNC_REPLY = "Command not found.";
+    private static final String DISCONNECTED = "\0disconnected";
+
+    final String name;
+    private final String groupname;
+    private final LoadStats stats;
+    private final long timeoutNanos;
+
+    private SimpleSocket socket;
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+    private volatile boolean isReady = false;
+    private volatile boolean isChatting = false;
+    private volatile boolean isStopping = false;
+    private volatile boolean isDisconnected = false;
+
+    SimulatedUser(String name, String groupname, LoadStats stats, int timeoutSeconds) {
+        this.name = name;
+        this.groupname = groupname;
+        this.stats = stats;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    boolean isReady() {
+        return isReady;
+    }
+
+    boolean isConnected() {
+        return socket != null && !socket.isClosed() && !isDisconnected;
+    }
+
+    /**
+     * Подключается к серверу и представляется консольным клиентом.
+     */
+    boolean connect(String host, int port) {
+        socket = new SimpleSocket(host, port);
+        if (!socket.isClosed()) {
+            Thread.ofVirtual().name("reader-" + name).start(this::readLoop);
+            var hello = Frame.HELLO + " CONSOLE " + Frame.PROTOCOL_VERSION + " text";
+            if (call(hello) != null)
+                return true;
+        }
+        stats.connectFailures.increment();
+        return false;
+    }
+
+    /**
+     * Регистрирует пользователя, а если он уже существует - входит.
+     */
+    boolean authenticate(String password) {
+        var lines = call("/register " + name + " " + password);
+        if (lines == null)
+            return false;
+        if (contains(lines, "Registered successfully."))
+            return true;
+
+        lines = call("/login " + name + " " + password);
+        return lines != null && contains(lines, "Logged in as");
+    }
+
+    /**
+     * Создает группу клиента, открывает ее и приглашает в нее остальных участников.
+     * Ошибки приглашений не прерывают подготовку:
+     * такие участники просто не смогут открыть группу.
+     */
+    boolean createGroup(List<SimulatedUser> members) {
+        var lines = call("/groups create " + groupname);
+        if (lines == null || !contains(lines, "Registered successfully."))
+            return false;
+        if (!open())
+            return false;
+
+        for (var member : members) {
+            if (member == this || !member.isReady())
+                continue;
+            if (call("/groups invite " + member.name) == null)
+                return false;
+        }
+        return true;
+    }
+
+    boolean open() {
+        var lines = call("/open " + groupname);
+        return lines != null
+            && !contains(lines, "Group not found.")
+            && !contains(lines, "You are not a member");
+    }
+
+    /**
+     * Отмечает результат подготовки. Неготовые клиенты отключаются.
+     */
+    void setReady(boolean isReady) {
+        this.isReady = isReady;
+        if (!isReady)
+            close();
+    }
+
+    /**
+     * Отправляет команду и собирает все строки ответа.
+     *
+     * @return строки ответа, либо null, если ответ не пришел вовремя
+     *         или соединение разорвано
+     */
+    private List<String> call(String command) {
+        try {
+            socket.sendln(command);
+            socket.sendln(SYNC_COMMAND);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+
+        var lines = new ArrayList<String>();
+        var deadline = System.nanoTime() + timeoutNanos;
+        try {
+            while (true) {
+                var line = replies.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (line == null || line.equals(DISCONNECTED))
+                    return null;
+                if (line.contains(SYNC_REPLY))
+                    return lines;
+                lines.add(line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static boolean contains(List<String> lines, String text) {
+        for (var line : lines)
+            if (line.contains(text))
+                return true;
+        return false;
+    }
+
+    private void readLoop() {
+        while (socket.hasNewMessage()) {
+            var line = socket.receiveMessage();
+            if (isChatting)
+                onChatLine(line);
+            else
+                replies.add(line);
+        }
+
+        isDisconnected = true;
+        if (!isStopping)
+            stats.disconnects.increment();
+        replies.add(DISCONNECTED);
+    }
+
+    /**
+     * Разбирает строку, пришедшую во время теста.
+     * Чужие сообщения выглядят как <code>[name] ~метка</code>,
+     * свои возвращаются с отступом и цветом и не учитываются.
+     * Уведомления сервера (<code>/notify ...</code>) пропускаются.
+     */
+    private void onChatLine(String line) {
+        if (line.startsWith("/notify "))
+            return;
+        var nameEnd = line.indexOf("] ");
+        if (nameEnd != -1 && line.startsWith("[")) {
+            if (!stats.onDelivered(line.substring(nameEnd + 2)))
+                stats.unexpectedReplies.increment();
+            return;
+        }
+        if (!line.contains("] " + LoadStats.TIMESTAMP_PREFIX))
+            stats.unexpectedReplies.increment();
+    }
+
+    /**
+     * Пишет сообщения в открытую группу с заданной частотой до указанного момента.
+     * Первое сообщение отправляется в случайный момент первого интервала,
+     * чтобы клиенты не отправляли сообщения одновременно.
+     *
+     * @param rate сообщений в секунду
+     * @param endNanos момент окончания по {@link System#nanoTime()}
+     * @param recipients сколько участников группы должны получить каждое сообщение
+     */
+    void chat(double rate, long endNanos, int recipients) {
+        var interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        var next = System.nanoTime() + ThreadLocalRandom.current().nextLong(interval);
+
+        while (next < endNanos && !isStopping && !isDisconnected) {
+            long delay;
+            while ((delay = next - System.nanoTime()) > 0)
+                LockSupport.parkNanos(delay);
+            try {
+                socket.sendln(stats.newMessage());
+            } catch (IllegalStateException e) {
+                return;
+            }
+            stats.onSent(recipients);
+            next += interval;
+        }
+    }
+
+    /**
+     * Переводит клиента в режим теста заранее, чтобы сообщения,
+     * пришедшие до его первой отправки, тоже были учтены.
+     */
+    void startChatting() {
+        isChatting = true;
+    }
+
+    void close() {
+        isStopping = true;
+        if (socket != null)
+            socket.close();
+    }
+}
@@ -2,22 +2,38 @@ package client.elements;
 
 import client.elements.cli.ServerRequestCommands;
 import client.elements.cli.ServersideCommands;
+import utils.Ansi;
 import utils.elements.ClientTypes;
+import utils.network.Frame;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 public class Client {
 
     public static String openChatId;
 
+    /**
+     * Токен для возобновления сессии при переподключении, либо <code>null</code>.
+     */
+    public static String sessionToken = null;
+
     private static ClientTypes type;
 
     public static ClientTypes getType() {
         return type;
     }
 
-    public static HashMap<String, ArrayList<String>> unread = new HashMap<>(20);
+    /**
+     * Число непрочитанных сообщений по "строковому" id группы.
+     * Сами сообщения не хранятся: их можно получить, открыв группу.
+     */
+    public static HashMap<String, Integer> unread = new HashMap<>(20);
+
+    /**
+     * Статусы друзей и участников общих групп по id пользователя.
+     */
+    public static HashMap<Integer, Frame.Presence> presence = new HashMap<>();
 
     public static void launch(ClientTypes type) {
         Client.type = type;
@@ -32,15 +48,58 @@ public class Client {
     }
 
     /**
-     * Добавляет непрочитанное сообщение в контейнер непрочитанных. <br>
-     * Сохраняет данные по ключу #groupName
+     * Увеличивает число непрочитанных сообщений группы. <br>
+     * О первом непрочитанном сообщении группы сообщается пользователю.
      *
      * @param groupName - "строковый" id группы
-     * @param msg - новое сообщение
      */
-    public static void addUnreadMsg(String groupName, Object msg) {
-        ArrayList<String> unread = Client.unread.get(groupName);
-        unread.add(msg.toString());
+    public static synchronized void addUnreadMsg(String groupName) {
+        int count = unread.merge(groupName, 1, Integer::sum);
+        if (count == 1)
+            OutputManager.stylePrintln("New messages in " + groupName, Ansi.Colors.YELLOW);
+    }
+
+    /**
+     * Заменяет числа непрочитанных сообщений присланными сервером при входе.
+     *
+     * @param counts - "строковый" id группы -&gt; число непрочитанных
+     */
+    public static synchronized void setUnreadCounts(Map<String, Integer> counts) {
+        unread.clear();
+        counts.forEach((groupName, count) -> {
+            if (count > 0)
+                unread.put(groupName, count);
+        });
+        if (!unread.isEmpty())
+            OutputManager.stylePrintln("Unread messages: " + unread, Ansi.Colors.YELLOW);
+    }
+
+    /**
+     * @return число непрочитанных сообщений группы
+     */
+    public static synchronized int getUnreadCount(String groupName) {
+        return unread.getOrDefault(groupName, 0);
+    }
+
+    /**
+     * Запоминает статус пользователя, присланный сервером.
+     */
+    public static synchronized void setPresence(Frame.Presence status) {
+        presence.put(status.userId(), status);
+    }
+
+    /**
+     * Применяет состояние сессии, присланное сервером после приветствия или входа.
+     *
+     * @param username  - имя пользователя, пустое - если вход не выполнен
+     * @param token     - токен для переподключения, пустой - если его нет
+     * @param groupname - открытая сервером группа, пустая - если ее нет
+     */
+    public static synchronized void startSession(String username, String token, String groupname) {
+        sessionToken = token.isEmpty() ? null : token;
+        openChatId = groupname.isEmpty() ? null : groupname;
+        if (!groupname.isEmpty())
+            unread.remove(groupname);
     }
 
     /**
@@ -48,7 +107,8 @@ public class Client {
      *
      * @param groupName - "строковый" id открытого чата
      */
-    public static void readMessage(String groupName) {
+    public static synchronized void readMessage(String groupName) {
+        openChatId = groupName;
         unread.remove(groupName);
     }
 }
@@ -4,12 +4,16 @@ import utils.Ansi;
 import utils.elements.ClientTypes;
 import utils.kt.Apply;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class OutputManager {
 
-    private static final List<Apply<String>> outputListeners = new ArrayList<>();
+    /**
+     * Слушатели добавляются из потока интерфейса, пока клиент уже печатает
+     * из своего потока.
+     */
+    private static final List<Apply<String>> outputListeners = new CopyOnWriteArrayList<>();
 
     public static void addOutPutListener(Apply<String> listener) {
         outputListeners.add(listener);
@@ -3,10 +3,13 @@ package client.elements;
 import client.elements.cli.ServerRequestCommands;
 import utils.Ansi;
 
+import utils.elements.ClientTypes;
 import utils.kt.Apply;
+import utils.network.Frame;
 import utils.network.SimpleSocket;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 public class ServerConnectManager {
@@ -16,15 +19,90 @@ public class ServerConnectManager {
 
     public static SimpleSocket socket = null;
 
-    public static void send(String msg) {
-        if (isConnected())
-            socket.sendln(msg);
-        else {
+    /**
+     * Сообщения, отправленные, пока сервер не подтвердил переход на двоичный протокол.
+     */
+    private static final List<String> pending = new ArrayList<>();
+    /**
+     * Ждем ли подтверждения перехода на кадры. Читается потоком приема без блокировки.
+     */
+    private static volatile boolean isNegotiating = false;
+
+    /**
+     * Отправлено ли приветствие {@link Frame#HELLO} в текущем соединении.
+     * Если да, запрос сервером типа клиента уже отвечен.
+     */
+    private static boolean isHelloSent = false;
+
+    public static synchronized void send(String msg) {
+        if (isConnected()) {
+            if (isNegotiating)
+                pending.add(msg);
+            else
+                socket.sendln(msg);
+        } else {
             System.err.println("Not connected to server.");
             OutputManager.stylePrint("Not connected to server.", Ansi.Colors.RED);
         }
     }
 
+    /**
+     * Просит сервер перейти на двоичный протокол {@link Frame}.
+     * <br>До ответа сервера исходящие сообщения откладываются: сервер начинает
+     * ждать кадры сразу, как только получит запрос.
+     */
+    public static synchronized void requestFrames() {
+        if (!isConnected() || isNegotiating || socket.isBinary())
+            return;
+        socket.sendln(Frame.NEGOTIATION);
+        isNegotiating = true;
+    }
+
+    private static synchronized void onFramesAccepted() {
+        if (!isNegotiating || socket == null)
+            return;
+        socket.switchToFrames(null);
+        isNegotiating = false;
+        pending.forEach(socket::sendln);
+        pending.clear();
+    }
+
+    /**
+     * Отправляет приветствие: тип клиента, версию и протокол, а также токен сессии,
+     * если он есть. Сервер отвечает одним состоянием сессии, см. {@link #onSession}.
+     */
+    private static synchronized void sendHello() {
+        boolean isBinary = Client.getType() == ClientTypes.GUI;
+        var hello = Frame.HELLO + " " + Client.getType()
+            + " " + Frame.PROTOCOL_VERSION
+            + (isBinary ? " binary" : " text")
+            + (Client.sessionToken != null ? " resume " + Client.sessionToken : "");
+
+        // Флаги ставятся до отправки: ответ сервера может прийти раньше,
+        // чем sendln вернет управление
+        isHelloSent = true;
+        // Сервер переходит на кадры сразу после приветствия
+        if (isBinary)
+            isNegotiating = true;
+        socket.sendln(hello);
+    }
+
+    public static synchronized boolean isHelloSent() {
+        return isHelloSent;
+    }
+
+    private static void onSession(Frame.Session session) {
+        Client.startSession(session.username(), session.token(), session.groupname());
+
+        var counts = new HashMap<String, Integer>();
+        for (var count : session.unread())
+            counts.put(count.groupname(), count.count());
+        Client.setUnreadCounts(counts);
+
+        if (!session.message().isEmpty())
+            OutputManager.println(session.message());
+    }
+
     static boolean isConnected() {
         return socket != null;
     }
@@ -39,6 +117,9 @@ public class ServerConnectManager {
             socket = null;
             OutputManager.stylePrintln("Can't connect to server.", Ansi.Colors.RED);
         } else {
+            // Приветствие раньше потока приема: иначе запрос типа клиента
+            // может быть обработан до того, как приветствие отмечено отправленным
+            sendHello();
             processConnection();
 //            updateControllerMsg();
             OutputManager.stylePrintln("Connected to the server", Ansi.Colors.GREEN);
@@ -49,12 +130,15 @@ public class ServerConnectManager {
      * Разрывает соединение с сервером, если таковое имеется. <br>
      * Все потоки, работающие с ним также будут автоматически остановлены.
      */
-    public static void disconnect() {
+    public static synchronized void disconnect() {
         if (socket == null)
             return;
 
         socket.close();
         socket = null;
+        isNegotiating = false;
+        isHelloSent = false;
+        pending.clear();
     }
 
     static boolean isDisconnected() {
@@ -67,30 +151,53 @@ public class ServerConnectManager {
     public static void processConnection() {
         new Thread(() -> {
             while (isConnected()) {
-                if (socket.hasNewMessage()) {
-                    var message = socket.receiveMessage();
-                    if (message.isEmpty())
-                        continue;
-
-                    // Сервер прислал запрос. Отвечаем и ничего не выводим пользователю.
-                    if (ServerRequestCommands.processor.execute(message) == null) {
-                        continue;
-                    }
-
-//                    System.out.println("FUUUUCK");
-//                    System.out.println(message);
-//                    System.out.println("-------");
-
-                    OutputManager.println(message);
-                } else {
+                var frame = socket.receiveFrame();
+                if (frame == null) {
                     OutputManager.stylePrintln("Disconnected from the server", Ansi.Colors.RED);
                     disconnect();
                     break;
                 }
+
+                switch (frame.type) {
+                    case TEXT -> processMessage(frame.getText());
+                    case CHAT -> OutputManager.println(formatChat(frame.getChat()));
+                    case HISTORY -> {
+                        for (var chat : frame.getHistory())
+                            OutputManager.println(formatChat(chat));
+                    }
+                    case RESULT -> {
+                        var result = frame.getResult();
+                        if (!result.text().isEmpty())
+                            OutputManager.println(result.text());
+                    }
+                    case PRESENCE -> Client.setPresence(frame.getPresence());
+                    case UNREAD -> Client.addUnreadMsg(frame.getUnread().groupname());
+                    case SESSION -> onSession(frame.getSession());
+                }
             }
         }).start();
     }
 
+    private static void processMessage(String message) {
+        if (message.isEmpty())
+            return;
+
+        if (isNegotiating && message.equals(Frame.NEGOTIATION)) {
+            onFramesAccepted();
+            return;
+        }
+
+        // Сервер прислал запрос. Отвечаем и ничего не выводим пользователю.
+        if (ServerRequestCommands.processor.execute(message) == null)
+            return;
+
+        OutputManager.println(message);
+    }
+
+    private static String formatChat(Frame.Chat chat) {
+        return "[" + chat.senderName() + "] " + chat.content();
+    }
+
     public static void exit() {
         disconnect();
         System.exit(0);
@@ -63,7 +63,7 @@ public class ServerCommands {
                 .subcommand("type", (type) -> type
                         .requireArgument("clientType")
                         .executes((whatType) ->
-                                ServerConnectManager.socket.sendln("/response type "
+                                ServerConnectManager.send("/response type "
                                         + whatType.getString("clientType")
                                 )
                         )));
@@ -77,12 +77,12 @@ public class ServerCommands {
         processor.register("chat", (a) -> a
                 .description("Send id of open chat.")
                 .subcommand("fetch", (b) -> b
-                        .executes((c) -> ServerConnectManager.socket.sendln("/response chat " + Client.openChatId))
+                        .executes((c) -> ServerConnectManager.send("/response chat " + Client.openChatId))
 
                         .subcommand("new", (d) -> d
                                 .executes((msg) -> {
                                     if (!Client.openChatId.equals(msg.getString("groupId"))) {
-                                        Client.addUnreadMsg(msg.getString("groupId"), msg.getString("message"));
+                                        Client.addUnreadMsg(msg.getString("groupId"));
                                         newMessageMsg();
                                     } else {
                                         System.out.println(msg.getString("message"));
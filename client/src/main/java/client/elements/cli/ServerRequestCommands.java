@@ -5,6 +5,10 @@ import client.elements.InputManager;
 import client.elements.ServerConnectManager;
 import utils.Ansi;
 import utils.cli.CommandProcessor;
+import utils.elements.ClientTypes;
+import utils.network.Frame;
+
+import java.util.HashMap;
 
 public class ServerRequestCommands {
     public static final CommandProcessor processor = new CommandProcessor();
@@ -13,10 +17,58 @@ public class ServerRequestCommands {
         processor.register("request", (a) -> a
             .subcommand("type", (b) -> b
                 .executes(() -> {
-                    ServerConnectManager.socket.sendln("/response type " + Client.getType());
+                    // Тип уже сообщен в приветствии
+                    if (ServerConnectManager.isHelloSent())
+                        return;
+                    ServerConnectManager.send("/response type " + Client.getType());
+                    // Консольный клиент остается на текстовом протоколе
+                    if (Client.getType() == ClientTypes.GUI)
+                        ServerConnectManager.requestFrames();
                 })
             )
         );
+        processor.register("session", (a) -> a
+            .requireArgument("username")
+            .requireArgument("token")
+            .requireArgument("groupname")
+            .executes((ctx) -> Client.startSession(
+                orEmpty(ctx.getString("username")),
+                orEmpty(ctx.getString("token")),
+                orEmpty(ctx.getString("groupname"))
+            ))
+        );
+        processor.register("notify", (a) -> a
+            .subcommand("unread", (b) -> b
+                .requireArgument("groupname")
+                .requireArgument("id")
+                .executes((ctx) -> Client.addUnreadMsg(ctx.getString("groupname")))
+            )
+            .subcommand("counts", (b) -> b
+                .requireArrayArgument("counts")
+                .executes((ctx) -> {
+                    // Пары: "строковый" id группы и число непрочитанных
+                    var list = ctx.getArray("counts");
+                    var counts = new HashMap<String, Integer>();
+                    for (int i = 0; i + 1 < list.size(); i += 2)
+                        counts.put(list.get(i), Integer.parseInt(list.get(i + 1)));
+                    Client.setUnreadCounts(counts);
+                })
+            )
+            .subcommand("presence", (b) -> b
+                .requireArgument("id")
+                .requireArgument("status")
+                .requireArgument("lastSeen")
+                .executes((ctx) -> Client.setPresence(new Frame.Presence(
+                    Integer.parseInt(ctx.getString("id")),
+                    ctx.getString("status").equals("online"),
+                    Long.parseLong(ctx.getString("lastSeen"))
+                )))
+            )
+            .subcommand("opened", (b) -> b
+                .requireArgument("groupname")
+                .executes((ctx) -> Client.readMessage(ctx.getString("groupname")))
+            )
+        );
         processor.register("ask", (a) -> a
             .subcommand("deletion", (b) -> b
                 .requireArgument("groupname")
@@ -30,7 +82,7 @@ public class ServerRequestCommands {
                     ));
                     InputManager.interceptNextLine((it) -> {
                         if (it.equalsIgnoreCase("y")) {
-                            ServerConnectManager.socket.sendln(
+                            ServerConnectManager.send(
                                 "/confirm deletion " + ctx.getString("groupname")
                             );
                         } else {
@@ -51,7 +103,7 @@ public class ServerRequestCommands {
                     ));
                     InputManager.interceptNextLine((it) -> {
                         if (it.equalsIgnoreCase("y")) {
-                            ServerConnectManager.socket.sendln(
+                            ServerConnectManager.send(
                                 "/confirm exit_group " + ctx.getString("groupname")
                             );
                         } else {
@@ -62,4 +114,11 @@ public class ServerRequestCommands {
             )
         );
     }
+
+    /**
+     * В строке <code>/session</code> отсутствующее значение передается как "-".
+     */
+    private static String orEmpty(String value) {
+        return value.equals("-") ? "" : value;
+    }
 }
@@ -55,6 +55,14 @@ public class ServersideCommands {
             .description("Открывает чат")
             .requireArgument("groupname")
         );
+        processor.register("history", (a) -> a
+            .isPhantom()
+            .description(
+                "Показывает последние сообщения открытого чата, либо,"
+                    + "если аргумент задан, сообщения до сообщения с номером before"
+            )
+            .findArgument("before")
+        );
     }
 
     private static void friendsCategoryInit(CommandProcessor processor) {
@@ -0,0 +1,159 @@
+package gui;
+
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Worker;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Лента сообщений в {@link WebView}.
+ *
+ * <p>Страница загружается один раз, а новые сообщения дописываются в ее DOM.
+ * {@link #append(String)} можно вызывать из любого потока: сообщения копятся в очереди
+ * и раз в кадр добавляются на страницу одним вызовом скрипта. Так поток сообщений
+ * в оживленной группе не перерисовывает всю историю на каждую строку.
+ * <br>На странице хранится не больше {@link #MAX_MESSAGES} сообщений,
+ * более старые удаляются.
+ *
+ * <pre><code>
+ *     var chat = new ChatView(webView);
+ *     OutputManager.addOutPutListener(chat::append);
+ * </code></pre>
+ */
+public class ChatView {
+
+    /**
+     * Сколько последних сообщений хранится на странице.
+     */
+    public static final int MAX_MESSAGES = 1000;
+
+    private static final String PAGE = """
+        <html>
+        <head>
+        <style>
+            body {
+                background-color: rgb(17, 147, 187);
+                font-style: italic;
+                color: white;
+                overflow-y: scroll;
+                overflow-x: scroll;
+            }
+            #log > div {
+                white-space: pre-wrap;
+                font-family: monospace;
+            }
+        </style>
+        <script>
+            function appendMessages(messages) {
+                var log = document.getElementById("log");
+                var atBottom = window.innerHeight + window.pageYOffset
+                    >= document.body.scrollHeight - 8;
+
+                var fragment = document.createDocumentFragment();
+                for (var i = 0; i < messages.length; i++) {
+                    var message = document.createElement("div");
+                    message.innerHTML = messages[i];
+                    fragment.appendChild(message);
+                }
+                log.appendChild(fragment);
+
+                while (log.childElementCount > %d)
+                    log.removeChild(log.firstElementChild);
+
+                if (atBottom)
+                    window.scrollTo(window.pageXOffset, document.body.scrollHeight);
+            }
+        </script>
+        </head>
+        <body><div id="log"></div></body>
+        </html>
+        """.formatted(MAX_MESSAGES);
+
+    private final WebEngine engine;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private boolean isLoaded = false;
+
+    /**
+     * Загружает страницу в <code>view</code> и начинает выводить сообщения.
+     * Вызывается в потоке JavaFX.
+     */
+    public ChatView(WebView view) {
+        this.engine = view.getEngine();
+
+        engine.getLoadWorker().stateProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal == Worker.State.SUCCEEDED)
+                isLoaded = true;
+        });
+        engine.loadContent(PAGE);
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        }.start();
+    }
+
+    /**
+     * Добавляет сообщение в ленту. Сообщение может содержать HTML.
+     * <br>Безопасно для вызова из любого потока.
+     */
+    public void append(String message) {
+        pending.add(message);
+    }
+
+    /**
+     * Переносит накопленные сообщения на страницу.
+     * Если их больше {@link #MAX_MESSAGES}, самые старые не выводятся вовсе.
+     */
+    private void flush() {
+        if (!isLoaded || pending.isEmpty())
+            return;
+
+        var batch = new ArrayDeque<String>();
+        String message;
+        while ((message = pending.poll()) != null) {
+            batch.addLast(message);
+            if (batch.size() > MAX_MESSAGES)
+                batch.removeFirst();
+        }
+
+        var script = new StringBuilder("appendMessages([");
+        var iterator = batch.iterator();
+        while (iterator.hasNext()) {
+            appendJsString(script, iterator.next());
+            if (iterator.hasNext())
+                script.append(',');
+        }
+        script.append("])");
+        engine.executeScript(script.toString());
+    }
+
+    /**
+     * Записывает строку как строковый литерал JavaScript.
+     */
+    static void appendJsString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\u2028' -> out.append("\\u2028");
+                case '\u2029' -> out.append("\\u2029");
+                default -> {
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+}
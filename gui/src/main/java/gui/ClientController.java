@@ -4,12 +4,8 @@ import client.elements.InputManager;
 import client.elements.OutputManager;
 import client.elements.cli.ServerCommands;
 import client.elements.Client;
-import javafx.concurrent.Worker;
 import javafx.scene.web.WebView;
-import utils.StringPrintWriter;
 
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
@@ -56,45 +52,12 @@ public class ClientController implements Initializable {
         setInput("/retry");
     }
 
-    public static String getMsg() {
-        return MSG.get();
-    }
-
-    public static void setMsg(String msg) {
-//        System.out.println("Output: " + msg);
-        output.println(msg + "<br>");
-        MSG.set(output.toString());
-    }
-
-    public static StringProperty msgProperty() {
-        return MSG;
-    }
-
-    private static final StringProperty MSG = new SimpleStringProperty("");
-    private static final StringPrintWriter output = new StringPrintWriter();
-
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         ServerCommands.initGeneral();
 
-        receivedMsg.getEngine().loadContent("some content");
-
-        receivedMsg.getEngine().getLoadWorker().stateProperty().addListener((
-                obs, oldVal, newVal) -> {
-            if (newVal == Worker.State.SUCCEEDED) {
-                receivedMsg.getEngine().loadContent("<html><body style="
-                        + "\"background-color: rgb(17, 147, 187); "
-                                + "font-style: italic; color: white; overflow-y: scroll;"
-                                + "overflow-x: scroll;\">"
-                                + "<pre>" + msgProperty().getValue() + "</pre>"
-                        + "</body></html>");
-                var height = (int) receivedMsg.getEngine()
-                        .executeScript("document.body.scrollHeight; document.body.scrollWidth");
-                receivedMsg.setPrefHeight(height);
-            }
-        });
-
-        OutputManager.addOutPutListener(ClientController::setMsg);
+        var chat = new ChatView(receivedMsg);
+        OutputManager.addOutPutListener(chat::append);
     }
 
     @FXML
@@ -1,5 +1,8 @@
 module servermodule {
     requires java.sql;
+    requires java.management;
+    requires jdk.httpserver;
     requires utilsmodule;
     requires com.zaxxer.hikari;
+    requires org.slf4j;
 }
\ No newline at end of file
@@ -1,14 +1,21 @@
 package server;
 
+import utils.cli.Context;
 import utils.cli.CustomCommandProcessor;
 import utils.cli.utils.Condition;
 import server.elements.Client;
 import server.elements.Group;
+import server.elements.Message;
 import server.elements.ServerData;
 import server.elements.User;
+import server.managers.ReadTracker;
+import server.managers.SessionManager;
 import utils.Ansi;
 import utils.elements.ClientTypes;
-import utils.extensions.CollectionExt;
+import utils.network.Frame;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class ClientCommands {
 
@@ -36,6 +43,11 @@ public class ClientCommands {
     public static final CustomCommandProcessor<ClientContextData> processor =
         new CustomCommandProcessor<>();
 
+    /**
+     * Сколько сообщений истории отправляется за раз (при /open и /history).
+     */
+    public static final int HISTORY_PAGE_SIZE = 50;
+
     public static void init() {
         accountCategoryInit();
         friendsCategoryInit();
@@ -53,8 +65,9 @@ public class ClientCommands {
                     ctx.getString("username"),
                     ctx.getString("password")
                 );
+                ServerData.login(ctx.data.client);
                 if (ctx.data.client.user != null)
-                    ServerData.getRegisteredClients().add(ctx.data.client);
+                    ctx.data.client.sendSession("");
             })
         );
         processor.register("login", (a) -> a
@@ -67,15 +80,20 @@ public class ClientCommands {
                     ctx.getString("username"),
                     ctx.getString("password")
                 );
+                ServerData.login(ctx.data.client);
                 if (ctx.data.client.user != null)
-                    ServerData.getRegisteredClients().add(ctx.data.client);
+                    ctx.data.client.sendSession("");
             })
         );
         processor.register("logout", (a) -> a
             .require(requireAuth)
             .executes((ctx) -> {
+                ServerData.logout(ctx.data.client);
+                SessionManager.revoke(ctx.data.client.sessionToken);
+                ctx.data.client.sessionToken = null;
                 ctx.data.client.user = null;
-                ServerData.getRegisteredClients().remove(ctx.data.client);
+                // Клиент забывает токен
+                ctx.data.client.sendSession("");
                 ctx.out.println("Successfully logged out.");
 //                ctx.out.println("Successfully logged out.");
                 ctx.out.stylePrint(Ansi.Colors.GREEN,
@@ -95,12 +113,19 @@ public class ClientCommands {
             .requireArgument("oldPassword")
             .requireArgument("password")
             .requireArgument("passwordAgain")
-            .executes((ctx) -> ctx.data.user.changePassword(
-                ctx.out,
-                ctx.getString("oldPassword"),
-                ctx.getString("password"),
-                ctx.getString("passwordAgain")
-            ))
+            .executes((ctx) -> {
+                var isChanged = ctx.data.user.changePassword(
+                    ctx.out,
+                    ctx.getString("oldPassword"),
+                    ctx.getString("password"),
+                    ctx.getString("passwordAgain")
+                );
+                // Токены, выданные со старым паролем, больше не действуют
+                if (isChanged)
+                    SessionManager.revokeOthers(
+                        ctx.data.user.getId(), ctx.data.client.sessionToken
+                    );
+            })
         );
         processor.register("profile", (a) -> a
             .require(requireAuth)
@@ -133,22 +158,74 @@ public class ClientCommands {
                     return;
                 }
 
-                if (CollectionExt.findBy(
-                    group.getMembersId(),
-                    (it) -> it.equals(ctx.data.client.user.getId())
-                ) == null) {
+                if (!group.hasMember(ctx.data.client.user.getId())) {
                     ctx.out.stylePrintln(Ansi.Colors.RED, "You are not a member of that group.");
                     return;
                 }
                 ctx.data.client.group = group;
-                boolean isHtml = ctx.data.client.type == ClientTypes.GUI;
-                for (var m : group.getMessages())
-                    ctx.data.client.sendln(m.getSenderId() == ctx.data.client.user.getId()
-                        ? m.getFormattedSelf(isHtml)
-                        : m.getFormatted()
-                    );
+                SessionManager.groupOpened(ctx.data.client.user.getId(), groupname);
+                // Клиент сбрасывает счетчик непрочитанных этой группы
+                ctx.data.client.sendln("/notify opened " + groupname);
+                var messages = group.getMessages(HISTORY_PAGE_SIZE);
+                printHistory(ctx, messages);
+                ReadTracker.get(group.getIdGroup()).markRead(
+                    ctx.data.client.user.getId(),
+                    messages.isEmpty() ? 0 : messages.getLast().getId()
+                );
             })
         );
+        processor.register("history", (a) -> a
+            .require(requireAuth)
+            .require("Open group first", (ctx) -> ctx.data.group != null)
+            .findArgument("before")
+            .executes((ctx) -> {
+                if (!ctx.hasArgument("before")) {
+                    printHistory(ctx, ctx.data.group.getMessages(HISTORY_PAGE_SIZE));
+                    return;
+                }
+
+                int before;
+                try {
+                    before = Integer.parseInt(ctx.getString("before"));
+                } catch (NumberFormatException e) {
+                    ctx.out.stylePrintln(Ansi.Colors.RED, "Message id must be a number.");
+                    return;
+                }
+                printHistory(ctx, ctx.data.group.getMessagesBefore(before, HISTORY_PAGE_SIZE));
+            })
+        );
+    }
+
+    /**
+     * Выводит страницу истории. Если страница полная, подсказывает,
+     * как загрузить сообщения до нее.
+     * <br>Клиенту на двоичном протоколе страница отправляется одним кадром.
+     */
+    private static void printHistory(Context<ClientContextData> ctx, List<Message> messages) {
+        var client = ctx.data.client;
+        if (client.isBinary()) {
+            var page = new ArrayList<Frame.Chat>(messages.size());
+            for (var m : messages)
+                page.add(m.toFrameChat());
+            client.sendFrame(Frame.history(page));
+        } else {
+            printHistoryText(ctx, messages);
+        }
+
+        if (messages.size() == HISTORY_PAGE_SIZE)
+            ctx.out.stylePrintln(Ansi.Colors.Bright.BLACK,
+                "Older messages: /history " + messages.getFirst().getId());
+    }
+
+    private static void printHistoryText(Context<ClientContextData> ctx, List<Message> messages) {
+        boolean isHtml = ctx.data.client.type == ClientTypes.GUI;
+        int selfId = ctx.data.client.user.getId();
+
+        for (var m : messages)
+            ctx.out.println(m.getSenderId() == selfId
+                ? m.getFormattedSelf(isHtml)
+                : m.getFormatted()
+            );
     }
 
     private static void friendsCategoryInit() {
@@ -222,15 +299,18 @@ public class ClientCommands {
                     })
                 )
                 .executes((ctx) -> {
-                    var groups = ctx.data.user.getGroups();
+                    var groups = ReadTracker.getGroups(ctx.data.user.getId());
                     if (groups == null) {
                         ctx.out.println("Something went wrong!");
                         return;
                     }
                     ctx.out.println(" Your groups");
                     ctx.out.println("---------------");
-                    for (Group group : groups) {
-                        ctx.out.println(group.getName());
+                    for (var group : groups) {
+                        if (group.unread() > 0)
+                            ctx.out.println(group.name() + " (" + group.unread() + " unread)");
+                        else
+                            ctx.out.println(group.name());
                     }
                 })
             )
@@ -339,31 +419,50 @@ public class ClientCommands {
                 )
             )
             .subcommand("changeName", (b) -> b
+                .require("Open group first", (ctx) -> ctx.data.group != null)
+                .require("You don't have permission to edit this group",
+                    (ctx) -> ctx.data.group.hasAdmin(ctx.data.user)
+                )
                 .requireArgument("newName")
                 .executes((ctx) -> {
-                    // TODO: Хоть все и думали, что он пожилой
-                    ctx.out.println("Changed name");
+                    if (ctx.data.group.setName(ctx.out, ctx.getString("newName")))
+                        ctx.out.println("Changed name");
                 })
             )
             .subcommand("op", (b) -> b
+                .require("Open group first", (ctx) -> ctx.data.group != null)
+                .require("Only the owner can op members",
+                    (ctx) -> ctx.data.group.isOwner(ctx.data.user)
+                )
                 .requireArgument("username")
                 .executes((ctx) -> {
-                    // TODO: Ну а истина в том, что он был молодцом...
-                    ctx.out.println("Op");
+                    var username = ctx.getString("username");
+                    if (ctx.data.group.setAdmin(ctx.out, username, true))
+                        ctx.out.println(username + " is now an admin");
                 })
             )
             .subcommand("deop", (b) -> b
+                .require("Open group first", (ctx) -> ctx.data.group != null)
+                .require("Only the owner can deop members",
+                    (ctx) -> ctx.data.group.isOwner(ctx.data.user)
+                )
                 .requireArgument("username")
                 .executes((ctx) -> {
-                    // TODO: ... Просто немного странным.
-                    ctx.out.println("deop");
+                    var username = ctx.getString("username");
+                    if (ctx.data.group.setAdmin(ctx.out, username, false))
+                        ctx.out.println(username + " is no longer an admin");
                 })
             )
             .subcommand("chown", (b) -> b
+                .require("Open group first", (ctx) -> ctx.data.group != null)
+                .require("Only the owner can chown the group",
+                    (ctx) -> ctx.data.group.isOwner(ctx.data.user)
+                )
                 .requireArgument("username")
                 .executes((ctx) -> {
-                    // TODO: [[Ссылка удалена]]
-                    ctx.out.println("chown");
+                    var username = ctx.getString("username");
+                    if (ctx.data.group.setOwner(ctx.out, username))
+                        ctx.out.println(username + " is now the owner");
                 })
             )
 
@@ -1,12 +1,25 @@
 package server;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import server.elements.Client;
 import server.elements.ClientStates;
 import server.elements.Group;
+import server.elements.ServerData;
+import server.elements.User;
+import server.managers.Metrics;
+import server.managers.SessionManager;
+import utils.Ansi;
+import utils.StringPrintWriter;
 import utils.cli.CustomCommandProcessor;
 import utils.elements.ClientTypes;
+import utils.network.Frame;
+
+import java.util.List;
 
 public class ClientResponseCommands {
+    private static final Logger log = LoggerFactory.getLogger(ClientResponseCommands.class);
+
     public static class ClientContextData {
         public Client client;
 
@@ -25,10 +38,32 @@ public class ClientResponseCommands {
                 .executes((ctx) -> {
                     ctx.data.client.state = ClientStates.Fine;
                     ctx.data.client.type = ClientTypes.valueOf(ctx.getString("type"));
-                    System.out.println(
-                        "Received type from client "
-                            + ctx.data.client + ": " + ctx.getString("type")
-                    );
+                    log.atInfo()
+                        .addKeyValue("client", ctx.data.client)
+                        .addKeyValue("type", ctx.data.client.type)
+                        .log("Received client type");
+                })
+            ));
+        processor.register("hello", (a) -> a
+            .requireArgument("type")
+            .requireArgument("version")
+            .requireArgument("protocol")
+            .requireArrayArgument("auth")
+            .executes((ctx) -> hello(
+                ctx.data.client,
+                ctx.getString("type"),
+                ctx.getString("version"),
+                ctx.getString("protocol"),
+                ctx.getArray("auth")
+            ))
+        );
+        processor.register("protocol", (a) -> a
+            .subcommand("binary", (b) -> b
+                .executes((ctx) -> {
+                    ctx.data.client.switchToFrames();
+                    log.atInfo()
+                        .addKeyValue("client", ctx.data.client)
+                        .log("Switched to binary protocol");
                 })
             ));
         processor.register("confirm", (a) -> a
@@ -63,4 +98,57 @@ public class ClientResponseCommands {
             )
         );
     }
+
+    /**
+     * Подключение за один обмен сообщениями: тип клиента, протокол и вход в аккаунт
+     * (по паролю или токену) приходят в одной строке, а ответом служит одно
+     * состояние сессии, см. {@link Client#sendSession(String)}.
+     * <br>Формат строки описан в {@link Frame#HELLO}.
+     */
+    private static void hello(
+        Client client, String type, String version, String protocol, List<String> auth
+    ) {
+        ClientTypes clientType;
+        try {
+            clientType = ClientTypes.valueOf(type);
+            if (Integer.parseInt(version) != Frame.PROTOCOL_VERSION) {
+                client.sendln("Unsupported protocol version: " + version);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            client.sendln("Invalid handshake.");
+            return;
+        }
+
+        client.type = clientType;
+        client.state = ClientStates.Fine;
+        if (protocol.equals("binary") && !client.isBinary())
+            client.switchToFrames();
+
+        var out = new StringPrintWriter();
+        out.printAsHtml = clientType == ClientTypes.GUI;
+        if (client.user == null && !auth.isEmpty()) {
+            if (auth.getFirst().equals("login") && auth.size() == 3) {
+                client.user = User.logIn(out, auth.get(1), auth.get(2));
+            } else if (auth.getFirst().equals("resume") && auth.size() == 2) {
+                client.user = SessionManager.resume(auth.get(1));
+                if (client.user != null) {
+                    client.sessionToken = auth.get(1);
+                    Metrics.increment("sessions_resumed_total");
+                } else {
+                    out.stylePrintln(Ansi.Colors.RED, "Session expired, please log in.");
+                }
+            } else {
+                out.stylePrintln(Ansi.Colors.RED, "Invalid handshake.");
+            }
+            ServerData.login(client);
+        }
+
+        client.sendSession(out.toString());
+        log.atInfo()
+            .addKeyValue("client", client)
+            .addKeyValue("type", client.type)
+            .addKeyValue("binary", client.isBinary())
+            .log("Handshake completed");
+    }
 }
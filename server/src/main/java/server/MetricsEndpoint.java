@@ -0,0 +1,67 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.managers.Metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP-сервер, отдающий метрики в текстовом формате Prometheus.
+ * Слушает только локальный адрес, так что снаружи метрики недоступны.
+ *
+ * <pre><code>
+ *     curl http://127.0.0.1:9100/metrics
+ * </code></pre>
+ *
+ * @see Metrics#render()
+ */
+public class MetricsEndpoint {
+    private static final Logger log = LoggerFactory.getLogger(MetricsEndpoint.class);
+    public static final String PATH = "/metrics";
+
+    private HttpServer server = null;
+
+    /**
+     * Запускает сервер на указанном порту.
+     *
+     * @return false, если не удалось открыть порт
+     */
+    public boolean start(int port) {
+        try {
+            server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0
+            );
+        } catch (IOException e) {
+            log.error("Error starting metrics endpoint: {}", e.getMessage());
+            return false;
+        }
+        server.createContext(PATH, MetricsEndpoint::handle);
+        server.start();
+        log.info("Metrics available at http://127.0.0.1:{}{}", port, PATH);
+        return true;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+    }
+}
@@ -0,0 +1,201 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Настройки сервера.
+ *
+ * <p>Значение ключа ищется по порядку:
+ * <ol>
+ *     <li>в аргументах запуска: <code>--db.pool-size=20</code>;</li>
+ *     <li>в переменных окружения: <code>MESSENGER_DB_POOL_SIZE=20</code>
+ *     (префикс {@link #ENV_PREFIX}, ключ в верхнем регистре, точки и дефисы
+ *     заменены на подчеркивания);</li>
+ *     <li>в файле настроек {@link #FILE} (путь можно поменять аргументом
+ *     <code>--config=path</code>);</li>
+ *     <li>если ключ нигде не задан, используется значение по умолчанию,
+ *     переданное в <code>get*</code>.</li>
+ * </ol>
+ * Файл настроек необязателен. Пример со всеми ключами - <code>server/server.properties</code>.
+ *
+ * <pre><code>
+ *     var config = ServerConfig.load(args);
+ *     int port = config.getInt("port", ServerMain.PORT);
+ * </code></pre>
+ */
+public class ServerConfig {
+
+    /**
+     * Файл настроек по умолчанию, ищется в рабочей папке.
+     */
+    public static final String FILE = "server.properties";
+
+    public static final String ENV_PREFIX = "MESSENGER_";
+
+    private final Map<String, String> args;
+    private final Map<String, String> env;
+    private final Properties file;
+
+    /**
+     * @param args ключи из аргументов запуска, без <code>--</code>
+     * @param env переменные окружения
+     * @param file содержимое файла настроек
+     */
+    public ServerConfig(Map<String, String> args, Map<String, String> env, Properties file) {
+        this.args = args;
+        this.env = env;
+        this.file = file;
+    }
+
+    /**
+     * Читает настройки из аргументов запуска, окружения и файла.
+     *
+     * @throws IllegalArgumentException если указанный файл настроек не удалось прочитать
+     */
+    public static ServerConfig load(String[] args) {
+        var parsedArgs = parseArgs(args);
+        var path = parsedArgs.get("config");
+        var file = new Properties();
+
+        if (path != null || Files.exists(Path.of(FILE))) {
+            var filePath = Path.of(path == null ? FILE : path);
+            try (var reader = new InputStreamReader(
+                Files.newInputStream(filePath), StandardCharsets.UTF_8
+            )) {
+                file.load(reader);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(
+                    "Can't read config file " + filePath + ": " + e.getMessage(), e
+                );
+            }
+        }
+
+        return new ServerConfig(parsedArgs, System.getenv(), file);
+    }
+
+    /**
+     * Настройки без файла и окружения, только значения по умолчанию.
+     */
+    public static ServerConfig defaults() {
+        return new ServerConfig(Map.of(), Map.of(), new Properties());
+    }
+
+    /**
+     * Разбирает аргументы вида <code>--key=value</code>. Остальные аргументы пропускаются.
+     */
+    static Map<String, String> parseArgs(String[] args) {
+        var result = new HashMap<String, String>();
+        for (var arg : args) {
+            if (!arg.startsWith("--"))
+                continue;
+            var separator = arg.indexOf('=');
+            if (separator == -1)
+                continue;
+            result.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Имя переменной окружения для ключа.
+     * <br>Пример: <code>db.leak-detection-ms</code> - <code>MESSENGER_DB_LEAK_DETECTION_MS</code>
+     */
+    static String envName(String key) {
+        return ENV_PREFIX + key.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_');
+    }
+
+    /**
+     * @return значение ключа, либо <code>null</code>, если он нигде не задан
+     */
+    public String get(String key) {
+        var value = args.get(key);
+        if (value == null)
+            value = env.get(envName(key));
+        if (value == null)
+            value = file.getProperty(key);
+        return value == null ? null : value.trim();
+    }
+
+    public String getString(String key, String defaultValue) {
+        var value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        var value = get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        var value = get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        var value = get(key);
+        if (value == null)
+            return defaultValue;
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "yes", "on" -> true;
+            case "false", "no", "off" -> false;
+            default -> throw invalid(key, value);
+        };
+    }
+
+    /**
+     * Значение перечисления без учета регистра.
+     * <br>Пример: <code>--outbound-policy=block</code>
+     */
+    public <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        var value = get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw invalid(key, value);
+        }
+    }
+
+    /**
+     * Возвращает все ключи с указанным префиксом из файла и аргументов запуска,
+     * без самого префикса. Переменные окружения не учитываются: в них теряется регистр.
+     * <br>Пример: для префикса <code>db.property.</code> ключ
+     * <code>db.property.sslmode=require</code> вернется как <code>sslmode</code>.
+     */
+    public Map<String, String> getSection(String prefix) {
+        var result = new HashMap<String, String>();
+        for (var key : file.stringPropertyNames())
+            if (key.startsWith(prefix))
+                result.put(key.substring(prefix.length()), file.getProperty(key).trim());
+        args.forEach((key, value) -> {
+            if (key.startsWith(prefix))
+                result.put(key.substring(prefix.length()), value.trim());
+        });
+        return result;
+    }
+
+    private static IllegalArgumentException invalid(String key, String value) {
+        return new IllegalArgumentException("Invalid value for " + key + ": " + value);
+    }
+}
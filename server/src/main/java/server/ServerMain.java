@@ -1,52 +1,285 @@
 package server;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import server.elements.Client;
 import server.elements.ClientStates;
+import server.elements.ServerData;
+import server.elements.TransportTypes;
 import server.managers.DatabaseManager;
+import server.managers.GroupDirectory;
+import server.managers.HistoryCache;
+import server.managers.MembershipCache;
+import server.managers.Metrics;
+import server.managers.MessageWriter;
+import server.managers.PresenceManager;
+import server.managers.ReadTracker;
+import server.managers.SessionManager;
+import server.managers.UserDirectory;
 import utils.elements.ClientTypes;
+import utils.elements.OverflowPolicies;
+import utils.network.Frame;
+import utils.network.NioConnection;
+import utils.network.NioServer;
+import utils.network.OutboundQueue;
+import utils.network.QueuedConnection;
 import utils.network.SimpleServerSocket;
+import utils.network.SimpleSocket;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static server.elements.ServerData.getClients;
 import static server.elements.ServerData.getRegisteredClients;
 
 public class  ServerMain {
+    private static final Logger log = LoggerFactory.getLogger(ServerMain.class);
+
+    public static final int PORT = 8080;
+
+    /**
+     * Наибольший объем неотправленных данных на одного клиента.
+     */
+    public static final int OUTBOUND_QUEUE_BYTES = 256 * 1024;
+
+    /**
+     * Сколько отправитель ждет освобождения очереди при {@link OverflowPolicies#BLOCK}.
+     */
+    public static final long OUTBOUND_BLOCK_TIMEOUT_MS = 1000;
+
+    /**
+     * Порт HTTP-сервера метрик по умолчанию, см. {@link MetricsEndpoint}.
+     */
+    public static final int METRICS_PORT = 9100;
+
+    /**
+     * Сколько ждать приветствия {@link Frame#HELLO} от нового соединения, прежде чем
+     * запросить тип клиента по-старому, в миллисекундах.
+     */
+    public static final long HELLO_TIMEOUT_MS = 1000;
+
+    private final TransportTypes transport;
+    private final int port;
+    private final int metricsPort;
+    private final int workerThreads;
+
+    private final int outboundQueueBytes;
+    private final OverflowPolicies overflowPolicy;
+    private final long outboundBlockTimeoutMs;
+
+    private final int receiveBufferBytes;
+    private final int sendBufferBytes;
+
+    private final long helloTimeoutMs;
+
     SimpleServerSocket socket = null;
+    NioServer nioServer = null;
+    ExecutorService workers = null;
+    ExecutorService outboundWriters = null;
+    MetricsEndpoint metricsEndpoint = null;
+
+    /**
+     * Потоки клиентов в режимах {@link TransportTypes#BLOCKING} и {@link TransportTypes#VIRTUAL}.
+     */
+    private final Set<Thread> clientThreads = ConcurrentHashMap.newKeySet();
+
     private final Scanner in = new Scanner(System.in);
 
+    /**
+     * Создает сервер с указанными настройками. Ключи (все необязательные):
+     * <ul>
+     *     <li><code>transport</code> - способ обслуживания соединений
+     *     (<code>nio</code>, <code>blocking</code>, <code>virtual</code>),
+     *     по умолчанию NIO, см. {@link TransportTypes};</li>
+     *     <li><code>port</code> - порт сервера, по умолчанию {@link #PORT};</li>
+     *     <li><code>metrics-port</code> - порт HTTP-сервера метрик, 0 - не запускать его,
+     *     по умолчанию {@link #METRICS_PORT};</li>
+     *     <li><code>workers</code> - размер пула для исполнения команд,
+     *     по умолчанию равен размеру пула соединений с базой;</li>
+     *     <li><code>outbound-queue-bytes</code>, <code>outbound-policy</code>,
+     *     <code>outbound-block-timeout-ms</code> - ограничение очереди исходящих
+     *     сообщений клиента, см. {@link OverflowPolicies};</li>
+     *     <li><code>socket-receive-buffer</code>, <code>socket-send-buffer</code> -
+     *     размеры буферов сокетов клиентов в байтах, 0 - системные;</li>
+     *     <li><code>hello-timeout-ms</code> - сколько ждать приветствия от клиента,
+     *     прежде чем запросить его тип, по умолчанию {@link #HELLO_TIMEOUT_MS}.</li>
+     * </ul>
+     *
+     * @see ServerConfig
+     */
+    public ServerMain(ServerConfig config) {
+        this.transport = config.getEnum("transport", TransportTypes.class, TransportTypes.NIO);
+        this.port = config.getInt("port", PORT);
+        this.metricsPort = config.getInt("metrics-port", METRICS_PORT);
+        this.workerThreads = config.getInt("workers", DatabaseManager.getPoolSize());
+
+        this.outboundQueueBytes = config.getInt("outbound-queue-bytes", OUTBOUND_QUEUE_BYTES);
+        this.overflowPolicy = config.getEnum(
+            "outbound-policy", OverflowPolicies.class, OverflowPolicies.DROP_OLDEST
+        );
+        this.outboundBlockTimeoutMs = config.getLong(
+            "outbound-block-timeout-ms", OUTBOUND_BLOCK_TIMEOUT_MS
+        );
+
+        this.receiveBufferBytes = config.getInt("socket-receive-buffer", 0);
+        this.sendBufferBytes = config.getInt("socket-send-buffer", 0);
+
+        this.helloTimeoutMs = config.getLong("hello-timeout-ms", HELLO_TIMEOUT_MS);
+    }
+
     public void start() {
-        socket = new SimpleServerSocket(8080);
-        if (socket.isClosed())
-            return;
+        switch (transport) {
+            case NIO -> {
+                if (!startNio())
+                    return;
+            }
+            case BLOCKING, VIRTUAL -> {
+                socket = new SimpleServerSocket(port);
+                if (socket.isClosed())
+                    return;
+                socket.setSocketBuffers(receiveBufferBytes, sendBufferBytes);
+                if (transport == TransportTypes.VIRTUAL)
+                    workers = createWorkers();
+                outboundWriters = Executors.newVirtualThreadPerTaskExecutor();
+                acceptClients();
+            }
+        }
+
+        log.atInfo()
+            .addKeyValue("transport", transport)
+            .addKeyValue("port", port)
+            .log("Server started");
 
-        System.out.println("Server started");
+        registerGauges();
+        if (metricsPort > 0) {
+            metricsEndpoint = new MetricsEndpoint();
+            metricsEndpoint.start(metricsPort);
+        }
 
-        acceptClients();
         processInput();
     }
 
     private void acceptClients() {
-        new Thread(() -> {
+        startThread(() -> {
             while (socket != null) {
                 var clSocket = socket.accept();
                 if (clSocket == null)
                     continue;
-                var client = new Client(clSocket);
-                System.out.println("new client");
-                getClients().add(client);
-                processClient(client);
+                var client = new Client(new QueuedConnection(
+                    clSocket,
+                    new OutboundQueue(
+                        outboundQueueBytes, overflowPolicy, outboundBlockTimeoutMs
+                    ),
+                    outboundWriters
+                ));
+                ServerData.addClient(client);
+                processClient(client, clSocket);
+            }
+        });
+    }
+
+    /**
+     * Запускает поток в зависимости от выбранного режима:
+     * виртуальный для {@link TransportTypes#VIRTUAL}, обычный - для остальных.
+     */
+    private void startThread(Runnable task) {
+        newThread(task).start();
+    }
+
+    private Thread newThread(Runnable task) {
+        if (transport == TransportTypes.VIRTUAL)
+            return Thread.ofVirtual().unstarted(task);
+        return new Thread(task);
+    }
+
+    /**
+     * Пул для исполнения команд. По умолчанию его размер совпадает с пулом соединений
+     * с базой, так как почти каждая команда обращается к ней.
+     */
+    private ExecutorService createWorkers() {
+        return Executors.newFixedThreadPool(workerThreads);
+    }
+
+    /**
+     * Запускает неблокирующий сервер.
+     * Строки от клиентов обрабатываются на пуле из нескольких потоков.
+     *
+     * @return false, если не удалось открыть порт
+     */
+    private boolean startNio() {
+        workers = createWorkers();
+        Map<NioConnection, Client> clients = new ConcurrentHashMap<>();
+
+        nioServer = new NioServer(port, new NioServer.Listener() {
+            @Override
+            public void onConnect(NioConnection connection) {
+                var client = new Client(connection);
+                clients.put(connection, client);
+                ServerData.addClient(client);
+                onClientConnected(client);
             }
-        }).start();
+
+            @Override
+            public void onLine(NioConnection connection, String line) {
+                var client = clients.get(connection);
+                if (client != null)
+                    processLine(client, line);
+            }
+
+            @Override
+            public void onDisconnect(NioConnection connection) {
+                var client = clients.remove(connection);
+                if (client != null)
+                    onClientDisconnected(client);
+            }
+        }, workers);
+
+        if (nioServer.isClosed()) {
+            workers.shutdown();
+            return false;
+        }
+        nioServer.setOutboundLimit(outboundQueueBytes, overflowPolicy, outboundBlockTimeoutMs);
+        nioServer.setSocketBuffers(receiveBufferBytes, sendBufferBytes);
+        nioServer.start();
+        return true;
     }
 
     public void stop() {
         broadcast("Closing server...");
 
         new ArrayList<>(getClients()).forEach(Client::close);
-        System.out.println("Server closed.");
-        socket.close();
+        log.info("Server closed.");
+        if (socket != null)
+            socket.close();
+        if (nioServer != null)
+            nioServer.close();
+        awaitClientThreads(5000);
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (outboundWriters != null)
+            outboundWriters.shutdown();
+        if (metricsEndpoint != null)
+            metricsEndpoint.stop();
+        MessageWriter.close();
+        ReadTracker.close();
+        PresenceManager.close();
+        DatabaseManager.close();
         System.exit(0);
     }
 
@@ -56,8 +289,7 @@ public class  ServerMain {
      * @param message сообщение для вещания
      */
     public void broadcast(String message) {
-        for (var client : getClients())
-            client.sendln(message);
+        broadcast(message, null);
     }
 
     /**
@@ -67,62 +299,165 @@ public class  ServerMain {
      * @param excludedClient клиент, которому не следует присылать сообщение
      */
     public void broadcast(String message, Client excludedClient) {
-        for (var client : getClients())
-            if (client != excludedClient)
+        for (var client : getClients()) {
+            if (client == excludedClient)
+                continue;
+            try {
                 client.sendln(message);
+            } catch (IllegalStateException e) {
+                // Клиент отключился во время рассылки
+            }
+        }
     }
 
     /**
      * Создает и запускает новый поток для обработки клиента
      * (получение и отправка сообщений).<br>
      * Данный поток живет до тех пор, пока не будет разорвано соединение.
+     * <br>
+     * <br>В режиме {@link TransportTypes#VIRTUAL} поток виртуальный, а сами команды
+     * исполняются на ограниченном пуле, чтобы не исчерпать соединения с базой.
      */
-    public void processClient(Client client) {
-        new Thread(() -> {
-            System.out.printf("Client %s connected\n", client);
-            client.state = ClientStates.AwaitingType;
-            client.stateRequest();
+    public void processClient(Client client, SimpleSocket clientSocket) {
+        var thread = newThread(() -> {
+            try {
+                onClientConnected(client);
 
-            while (client.hasNewMessage()) {
-                var line = client.receiveMessage();
-
-                ClientResponseCommands.processor.execute(
-                    line,
-                    new ClientResponseCommands.ClientContextData(client)
-                );
-                if (ClientResponseCommands.processor.getLastError() != null) {
-                    client.stateRequest();
-                } else {
-                    var out = ClientResponseCommands.processor.getOutput();
-                    if (!out.isEmpty())
-                        client.sendln(out);
-                    continue;
+                while (clientSocket.hasNewMessage()) {
+                    var line = clientSocket.receiveMessage();
+                    if (workers == null) {
+                        processLine(client, line);
+                        continue;
+                    }
+                    try {
+                        workers.submit(() -> processLine(client, line)).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException e) {
+                        log.error("Error processing client message", e.getCause());
+                    }
                 }
 
-                boolean isHtml = client.type == ClientTypes.GUI;
+                onClientDisconnected(client);
+            } finally {
+                clientThreads.remove(Thread.currentThread());
+            }
+        });
+        clientThreads.add(thread);
+        thread.start();
+    }
 
-                if (line.charAt(0) == '/') {
-                    var proc = ClientCommands.processor;
-                    proc.getRawOutput().printAsHtml = client.type == ClientTypes.GUI;
-                    proc.execute(
-                        line,
-                        new ClientCommands.ClientContextData(client, client.user, client.group)
-                    );
+    /**
+     * Дожидается завершения потоков клиентов, чтобы после остановки
+     * ни одна команда уже не отправляла сообщения.
+     */
+    private void awaitClientThreads(long timeoutMs) {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (var thread : List.copyOf(clientThreads)) {
+            var left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0)
+                break;
+            try {
+                thread.join(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
-                    if (proc.getLastError() != null)
-                        client.sendln(proc.getLastError().getMessage(isHtml));
-                    else if (proc.getOutput() != null)
-                        client.send(proc.getOutput());
-                    continue;
-                }
+    private void onClientConnected(Client client) {
+        log.atInfo().addKeyValue("client", client).log("Client connected");
+        Metrics.increment("connections_opened_total");
+        // Новые клиенты начинают с приветствия, старые молчат до запроса типа
+        client.state = ClientStates.AwaitingHello;
+        CompletableFuture.delayedExecutor(helloTimeoutMs, TimeUnit.MILLISECONDS)
+            .execute(() -> requestType(client));
+    }
 
-                client.sendMessageToChat(line, isHtml);
-            }
+    /**
+     * Запрашивает тип клиента, если тот так и не прислал приветствие.
+     */
+    private static void requestType(Client client) {
+        if (!client.changeState(ClientStates.AwaitingHello, ClientStates.AwaitingType))
+            return;
+        try {
+            client.stateRequest();
+        } catch (IllegalStateException e) {
+            // Клиент отключился, не представившись
+        }
+    }
+
+    private void onClientDisconnected(Client client) {
+        ServerData.removeClient(client);
+        Metrics.increment("connections_closed_total");
+        log.atInfo().addKeyValue("client", client).log("Client disconnected");
+    }
+
+    /**
+     * Обрабатывает одну строку, пришедшую от клиента:
+     * ответ на запрос сервера, команду или сообщение в чат.
+     */
+    void processLine(Client client, String line) {
+        if (line.isEmpty())
+            return;
 
-            getClients().remove(client);
-            getRegisteredClients().remove(client);
-            System.out.printf("Client %s disconnected\n", client);
-        }).start();
+        // Приветствие ожидается только первой строкой. Если пришло не оно,
+        // тип клиента будет запрошен ниже, как только строка не окажется ответом.
+        client.changeState(ClientStates.AwaitingHello, ClientStates.AwaitingType);
+
+        var response = ClientResponseCommands.processor.run(
+            line,
+            new ClientResponseCommands.ClientContextData(client)
+        );
+        if (!response.isSuccessful()) {
+            client.stateRequest();
+        } else {
+            var out = response.getOutput();
+            if (!out.isEmpty())
+                client.sendln(out);
+            return;
+        }
+
+        boolean isHtml = client.type == ClientTypes.GUI;
+
+        if (line.charAt(0) == '/') {
+            long start = System.nanoTime();
+            var result = ClientCommands.processor.run(
+                line,
+                new ClientCommands.ClientContextData(client, client.user, client.group),
+                isHtml
+            );
+            recordCommand(line, result.isSuccessful(), start);
+
+            if (!result.isSuccessful())
+                client.sendResult(false, result.getError().getMessage(isHtml));
+            else
+                client.sendResult(true, result.getOutput());
+            return;
+        }
+
+        client.sendMessageToChat(line, isHtml);
+    }
+
+    /**
+     * Учитывает исполненную команду в метриках.
+     * Неизвестные команды учитываются под общим именем <code>unknown</code>,
+     * чтобы клиенты не могли создавать новые метрики.
+     */
+    private static void recordCommand(String line, boolean isSuccessful, long startNanos) {
+        int end = 1;
+        while (end < line.length() && Character.isLetterOrDigit(line.charAt(end)))
+            end++;
+        var command = line.substring(1, end);
+        if (!ClientCommands.processor.hasCommand(command))
+            command = "unknown";
+
+        Metrics.increment(Metrics.name("commands_total", "command", command));
+        if (!isSuccessful)
+            Metrics.increment(Metrics.name("command_errors_total", "command", command));
+        Metrics.recordSince(Metrics.name("command_latency_us", "command", command), startNanos);
     }
 
     private void processInput() {
@@ -137,13 +472,181 @@ public class  ServerMain {
                 stop();
                 return;
             }
+            if (msg.equals("/stats"))
+                printStats();
+            if (msg.equals("/metrics"))
+                System.out.print(Metrics.render());
         }
     }
 
+    /**
+     * Выводит число соединений, потоков, занятую память и состояние записи сообщений.
+     * Позволяет сравнить режимы обслуживания клиентов между собой.
+     * <br>
+     * <br>Виртуальные потоки не учитываются в числе потоков,
+     * а стеки обычных потоков не входят в кучу.
+     */
+    private void printStats() {
+        var connections = getClients().size();
+        var memory = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        var threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        System.out.println("Transport: " + transport);
+        System.out.println("Connections: " + connections
+            + " (logged in: " + getRegisteredClients().size() + ")");
+        System.out.println("Platform threads: " + threads);
+        System.out.printf("Heap used: %.1f MB", memory.getUsed() / 1024.0 / 1024.0);
+        if (connections > 0) {
+            var perConnection = memory.getUsed() / 1024.0 / connections;
+            System.out.printf(" (~%.1f KB per connection)", perConnection);
+        }
+        System.out.println();
+        System.out.printf(
+            "Messages: %d written, %d failed, %d queued, flush avg %.1f ms / max %.1f ms\n",
+            MessageWriter.getWrittenCount(),
+            MessageWriter.getFailedCount(),
+            MessageWriter.getQueueDepth(),
+            MessageWriter.getAverageFlushMs(),
+            MessageWriter.getMaxFlushMs()
+        );
+        long queuedBytes = 0;
+        for (var client : getClients())
+            queuedBytes += client.getQueuedBytes();
+        System.out.printf(
+            "Outbound (%s): %d KB queued, %d messages dropped, %d slow clients disconnected\n",
+            overflowPolicy,
+            queuedBytes / 1024,
+            OutboundQueue.getTotalDropped(),
+            OutboundQueue.getTotalOverflows()
+        );
+        System.out.printf(
+            "Membership cache: %d groups, %d hits, %d misses\n",
+            MembershipCache.size(),
+            MembershipCache.getHits(),
+            MembershipCache.getMisses()
+        );
+        System.out.printf(
+            "Group directory: %d groups, %d hits, %d misses\n",
+            GroupDirectory.size(),
+            GroupDirectory.getHits(),
+            GroupDirectory.getMisses()
+        );
+        System.out.printf(
+            "User directory: %d users, %d hits, %d misses\n",
+            UserDirectory.size(),
+            UserDirectory.getHits(),
+            UserDirectory.getMisses()
+        );
+        System.out.printf(
+            "History cache: %d groups, %d pages from memory, %d from database\n",
+            HistoryCache.size(),
+            Metrics.getCounter(Metrics.name("history_pages_total", "source", "memory")),
+            Metrics.getCounter(Metrics.name("history_pages_total", "source", "db"))
+        );
+        System.out.printf(
+            "Read positions: %d groups, %d written, %d failed\n",
+            ReadTracker.size(),
+            ReadTracker.getWrittenCount(),
+            ReadTracker.getFailedCount()
+        );
+        System.out.printf(
+            "Presence: %d pending, %d changes sent, %d last online writes\n",
+            PresenceManager.getPendingCount(),
+            PresenceManager.getPushedCount(),
+            PresenceManager.getWrittenCount()
+        );
+        System.out.printf(
+            "Sessions: %d tokens, %d resumed\n",
+            SessionManager.size(),
+            Metrics.getCounter("sessions_resumed_total")
+        );
+    }
+
+    /**
+     * Регистрирует измерители состояния сервера, которые выводит и <code>/stats</code>.
+     */
+    private void registerGauges() {
+        Metrics.gauge("connections_active", () -> getClients().size());
+        Metrics.gauge("connections_logged_in", () -> getRegisteredClients().size());
+        Metrics.gauge(
+            "jvm_platform_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount()
+        );
+        Metrics.gauge(
+            "jvm_heap_used_bytes",
+            () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()
+        );
+        Metrics.gauge("messages_written_total", MessageWriter::getWrittenCount);
+        Metrics.gauge("messages_failed_total", MessageWriter::getFailedCount);
+        Metrics.gauge("messages_queued", MessageWriter::getQueueDepth);
+        Metrics.gauge("outbound_queued_bytes", () -> {
+            long queuedBytes = 0;
+            for (var client : getClients())
+                queuedBytes += client.getQueuedBytes();
+            return queuedBytes;
+        });
+        Metrics.gauge("outbound_dropped_total", OutboundQueue::getTotalDropped);
+        Metrics.gauge("outbound_overflows_total", OutboundQueue::getTotalOverflows);
+        Metrics.gauge("membership_cache_groups", MembershipCache::size);
+        Metrics.gauge("membership_cache_hits_total", MembershipCache::getHits);
+        Metrics.gauge("membership_cache_misses_total", MembershipCache::getMisses);
+        Metrics.gauge("group_directory_groups", GroupDirectory::size);
+        Metrics.gauge("group_directory_hits_total", GroupDirectory::getHits);
+        Metrics.gauge("group_directory_misses_total", GroupDirectory::getMisses);
+        Metrics.gauge("user_directory_users", UserDirectory::size);
+        Metrics.gauge("user_directory_hits_total", UserDirectory::getHits);
+        Metrics.gauge("user_directory_misses_total", UserDirectory::getMisses);
+        Metrics.gauge("history_cache_groups", HistoryCache::size);
+        Metrics.gauge("read_tracker_groups", ReadTracker::size);
+        Metrics.gauge("read_positions_written_total", ReadTracker::getWrittenCount);
+        Metrics.gauge("read_positions_failed_total", ReadTracker::getFailedCount);
+        Metrics.gauge("presence_pending", PresenceManager::getPendingCount);
+        Metrics.gauge("presence_sent_total", PresenceManager::getPushedCount);
+        Metrics.gauge("last_online_written_total", PresenceManager::getWrittenCount);
+        Metrics.gauge("session_tokens", SessionManager::size);
+    }
+
+    /**
+     * Применяет к кешам размеры из настроек. Ключи: <code>cache.users</code>,
+     * <code>cache.users-ttl-ms</code>, <code>cache.groups</code>,
+     * <code>cache.memberships</code>, <code>cache.history-groups</code>,
+     * <code>cache.history-messages</code>, <code>session.capacity</code>,
+     * <code>session.token-ttl-ms</code>.
+     */
+    static void configureCaches(ServerConfig config) {
+        UserDirectory.configure(
+            config.getInt("cache.users", UserDirectory.CAPACITY),
+            config.getLong("cache.users-ttl-ms", UserDirectory.TTL_MS)
+        );
+        GroupDirectory.configure(config.getInt("cache.groups", GroupDirectory.CAPACITY));
+        MembershipCache.configure(
+            config.getInt("cache.memberships", MembershipCache.CAPACITY)
+        );
+        HistoryCache.configure(
+            config.getInt("cache.history-groups", HistoryCache.CAPACITY),
+            config.getInt("cache.history-messages", HistoryCache.TAIL_SIZE)
+        );
+        ReadTracker.configure(config.getInt("unread.groups", ReadTracker.CAPACITY));
+        SessionManager.configure(
+            config.getInt("session.capacity", SessionManager.CAPACITY),
+            config.getLong("session.token-ttl-ms", SessionManager.TTL_MS)
+        );
+    }
+
     public static void main(String[] args) {
-        DatabaseManager.init();
+        var config = ServerConfig.load(args);
+        DatabaseManager.init(config);
+        configureCaches(config);
+        MessageWriter.start(
+            config.getInt("writer.batch-size", MessageWriter.MAX_BATCH_SIZE),
+            config.getLong("writer.max-delay-ms", MessageWriter.MAX_DELAY_MS),
+            config.getInt("writer.queue-size", MessageWriter.MAX_QUEUE_SIZE)
+        );
+        ReadTracker.start(config.getLong("unread.flush-ms", ReadTracker.FLUSH_INTERVAL_MS));
+        PresenceManager.start(
+            config.getLong("presence.flush-ms", PresenceManager.FLUSH_INTERVAL_MS)
+        );
         ClientCommands.init();
         ClientResponseCommands.init();
-        new ServerMain().start();
+        new ServerMain(config).start();
     }
 }
@@ -1,16 +1,33 @@
 package server.elements;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.managers.MessageWriter;
+import server.managers.Metrics;
+import server.managers.ReadTracker;
+import server.managers.SessionManager;
 import utils.elements.ClientTypes;
 import utils.extensions.StringExt;
-import utils.network.SimpleSocket;
+import utils.network.Connection;
+import utils.network.Frame;
+import utils.network.Payload;
 import utils.Ansi;
 
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+
 /**
  * Репрезентация клиента со стороны сервера.
  * <br>Содержит в себе всю информацию о подключении,
  * привязку пользователя и т.д.
  */
 public class Client {
+    /**
+     * Журнал сообщений чата. Отключается отдельно от остальных журналов,
+     * см. <code>log4j2.xml</code>.
+     */
+    private static final Logger chatLog = LoggerFactory.getLogger("server.chat");
 
     /**
      * Текущий привязанный профиль пользователя.
@@ -21,13 +38,24 @@ public class Client {
     public User user = null;
 
     public ClientTypes type = ClientTypes.GUI;
-    public ClientStates state = ClientStates.Fine;
+    public volatile ClientStates state = ClientStates.Fine;
+
+    /**
+     * Открытая группа. Полные сообщения группы приходят только клиентам,
+     * у которых она открыта, остальным - уведомления, см. {@link #sendMessageToChat}.
+     * <br>Читается потоками других клиентов при рассылке.
+     */
+    public volatile Group group = null;
 
-    public Group group = null;
+    /**
+     * Токен, по которому клиент может возобновить сессию после переподключения,
+     * см. {@link SessionManager}. <code>null</code> - если клиент не в аккаунте.
+     */
+    public String sessionToken = null;
 
-    private final SimpleSocket socket;
+    private final Connection socket;
 
-    public Client(SimpleSocket socket) {
+    public Client(Connection socket) {
         this.socket = socket;
     }
 
@@ -35,10 +63,62 @@ public class Client {
         socket.close();
     }
 
+    /**
+     * Объем данных, ожидающих отправки этому клиенту.
+     */
+    public long getQueuedBytes() {
+        return socket.getQueuedBytes();
+    }
+
+    /**
+     * Сколько сообщений не было доставлено, так как клиент не успевал их получать.
+     */
+    public long getDroppedCount() {
+        return socket.getDroppedCount();
+    }
+
+    /**
+     * Переводит клиента на двоичный протокол, подтверждая это строкой
+     * {@link Frame#NEGOTIATION}.
+     *
+     * @see Connection#switchToFrames(String)
+     */
+    public void switchToFrames() {
+        socket.switchToFrames(Frame.NEGOTIATION);
+    }
+
+    /**
+     * @return true, если клиент получает сообщения кадрами {@link Frame}
+     */
+    public boolean isBinary() {
+        return socket.isBinary();
+    }
+
+    /**
+     * Отправляет клиенту результат исполнения команды: кадром
+     * {@link utils.elements.FrameTypes#RESULT} на двоичном протоколе
+     * и обычным текстом - на текстовом.
+     */
+    public void sendResult(boolean isSuccessful, String text) {
+        send(Payload.of(
+            isSuccessful ? text : text + '\n',
+            () -> Frame.result(isSuccessful, text.stripTrailing())
+        ));
+    }
+
+    /**
+     * Отправляет клиенту заранее закодированный кадр.
+     *
+     * @throws IllegalStateException если соединение закрыто
+     */
+    public void sendFrame(ByteBuffer frame) throws IllegalStateException {
+        socket.send(frame);
+    }
+
     /**
      * Отправляет сообщение клиенту.
      *
-     * @see SimpleSocket#sendln(String)
+     * @see Connection#sendln(String)
      */
     public void sendln(Object message) throws IllegalStateException {
         socket.sendln(message.toString());
@@ -57,30 +137,22 @@ public class Client {
     }
 
     /**
-     * Отправляет сообщение клиенту.
-     *
-     * @see SimpleSocket#sendln(String)
-     */
-    public void send(Object message) throws IllegalStateException {
-        socket.send(message.toString());
-    }
-
-    /**
-     * Проверяет, есть ли новые сообщения от клиента.
+     * Отправляет заранее закодированное сообщение в оформлении,
+     * подходящем типу клиента.
      *
-     * @see SimpleSocket#hasNewMessage()
+     * @see Payload
      */
-    public boolean hasNewMessage() {
-        return socket.hasNewMessage();
+    public void send(Payload payload) throws IllegalStateException {
+        socket.send(payload, type == ClientTypes.GUI);
     }
 
     /**
-     * Ждет и возвращает сообщение от клиента.
+     * Отправляет сообщение клиенту.
      *
-     * @see SimpleSocket#receiveMessage()
+     * @see Connection#send(String)
      */
-    public String receiveMessage() throws IllegalStateException {
-        return socket.receiveMessage();
+    public void send(Object message) throws IllegalStateException {
+        socket.send(message.toString());
     }
 
     @Override
@@ -97,56 +169,173 @@ public class Client {
             styledSendln("No group opened.", Ansi.Colors.RED, type == ClientTypes.GUI);
             return;
         }
-        Message message = new Message(0, content, user.getName(), user.getId(),  null);
-        var strMessage = message.getFormatted();
-
-        System.out.println(group.getGroupname() + ": " + strMessage);
+        // Без списка участников сообщение некому разослать
+        var members = group.getMembersId();
+        if (members == null) {
+            sendNotSent();
+            return;
+        }
+        int id = MessageWriter.nextId();
+        if (id == 0) {
+            sendNotSent();
+            return;
+        }
+        Message message = new Message(
+            id,
+            content,
+            user.getName(),
+            user.getId(),
+            new Timestamp(System.currentTimeMillis())
+        );
 
-        group.addMessage(message);
-        for (var u : group.getMembersId()) {
+        if (!group.addMessage(message)) {
+            sendNotSent();
+            return;
+        }
 
-            var client = ServerData.findClient(u);
+        chatLog.atInfo()
+            .addKeyValue("group", group.getGroupname())
+            .addKeyValue("sender", user.getUserName())
+            .log(content);
 
-            if (client == null)
-                continue;
+        // Текст кодируется один раз и рассылается всем одним и тем же буфером
+        var payload = Payload.of(
+            message.getChatLines(),
+            () -> Frame.chat(message.toFrameChat())
+        );
+        socket.send(Payload.of((h) -> message.getChatLinesSelf(isHtml), payload::getFrame), isHtml);
 
-            if (client != this) {
-                var partMsg = strMessage;
-                var last = strMessage;
-                for (int i = 0; !last.isEmpty(); i += 30) {
-                    if (last.length() <= 30) {
-                        client.sendln(last);
-                        break;
-                    } else {
-                        partMsg = last.substring(0, 31);
-                        last = last.substring(31);
+        // Тем, у кого группа не открыта, - только короткое уведомление
+        var groupname = group.getGroupname();
+        var notification = Payload.of(
+            "/notify unread " + groupname + " " + message.getId() + "\n",
+            () -> Frame.unread(new Frame.Unread(groupname, message.getId()))
+        );
 
-                        client.sendln(partMsg);
-                    }
+        long start = System.nanoTime();
+        int recipients = 0;
+        int notified = 0;
+        var reads = ReadTracker.get(group.getIdGroup());
+        for (int i = 0; i < members.size(); i++) {
+            int memberId = members.get(i);
+            boolean isRead = memberId == user.getId();
+            for (var client : ServerData.findClients(memberId)) {
+                if (client == this)
+                    continue;
+                boolean isOpened = client.hasOpened(group);
+                try {
+                    client.send(isOpened ? payload : notification);
+                } catch (IllegalStateException e) {
+                    // Клиент отключился во время рассылки
+                    continue;
                 }
-            } else {
-                if (strMessage.length() <= 30)
-                    client.styledSendln(Message.getOffset(strMessage), Ansi.Colors.YELLOW,
-                            isHtml);
-                else {
-                    var partMsg = strMessage;
-                    var last = strMessage;
-                    for (int i = 0; !last.isEmpty(); i += 30) {
-                        if (last.length() <= 30) {
-                            client.styledSendln(Message.getOffset(last) + last, Ansi.Colors.YELLOW,
-                                    isHtml);
-                            break;
-                        } else {
-                            partMsg = last.substring(0, 31);
-                            last = last.substring(31);
-
-                            client.styledSendln(Message.getOffset(partMsg)
-                                    + partMsg, Ansi.Colors.YELLOW, isHtml);
-                        }
-                    }
+                if (isOpened) {
+                    recipients++;
+                    isRead = true;
+                } else {
+                    notified++;
                 }
             }
+            reads.messageAdded(memberId, message.getId(), isRead);
+        }
+        Metrics.increment("chat_messages_total");
+        Metrics.add("chat_notifications_total", notified);
+        Metrics.record("chat_fanout_recipients", recipients);
+        Metrics.recordSince("chat_fanout_us", start);
+    }
+
+    /**
+     * Сообщает отправителю, что сообщение не сохранено и не разослано.
+     */
+    private void sendNotSent() {
+        styledSendln(
+            "Message not sent, please try again later.",
+            Ansi.Colors.RED,
+            type == ClientTypes.GUI
+        );
+    }
+
+    /**
+     * Отправляет состояние сессии одним ответом: кто вошел, токен возобновления,
+     * снова открытая последняя группа и числа непрочитанных сообщений.
+     * Вызывается после <code>/hello</code> и после входа в аккаунт.
+     * <br>На двоичном протоколе это один кадр {@link utils.elements.FrameTypes#SESSION},
+     * на текстовом - строки <code>/session</code>, <code>/notify counts</code>
+     * и <code>message</code>, отправленные одной записью.
+     *
+     * @param message сообщение для пользователя, может быть пустым
+     */
+    public void sendSession(String message) {
+        var counts = new ArrayList<Frame.UnreadCount>();
+        String groupname = "";
+
+        if (user != null) {
+            if (sessionToken == null)
+                sessionToken = SessionManager.issue(user);
+            groupname = reopenLastGroup();
+
+            var groups = ReadTracker.getGroups(user.getId());
+            if (groups != null)
+                for (var group : groups)
+                    if (group.unread() > 0)
+                        counts.add(new Frame.UnreadCount(group.groupname(), group.unread()));
         }
+
+        var session = new Frame.Session(
+            user == null ? "" : user.getUserName(),
+            sessionToken == null ? "" : sessionToken,
+            groupname,
+            message.stripTrailing(),
+            counts
+        );
+        var text = new StringBuilder("/session ")
+            .append(session.isAuthenticated() ? session.username() : "-").append(' ')
+            .append(session.token().isEmpty() ? "-" : session.token()).append(' ')
+            .append(groupname.isEmpty() ? "-" : groupname)
+            .append("\n/notify counts");
+        for (var count : counts)
+            text.append(' ').append(count.groupname()).append(' ').append(count.count());
+        text.append('\n');
+        if (!session.message().isEmpty())
+            text.append(session.message()).append('\n');
+        send(Payload.of(text.toString(), () -> Frame.session(session)));
+    }
+
+    /**
+     * Снова открывает группу, открытую пользователем последней, если он все еще в ней.
+     *
+     * @return имя открытой группы, либо пустая строка
+     */
+    private String reopenLastGroup() {
+        var groupname = SessionManager.getLastGroup(user.getId());
+        if (groupname == null)
+            return "";
+
+        var last = Group.getGroupByName(groupname);
+        if (last == null || !last.hasMember(user.getId()))
+            return "";
+        group = last;
+        return groupname;
+    }
+
+    /**
+     * @return true, если у клиента открыта группа <code>group</code>
+     */
+    public boolean hasOpened(Group group) {
+        var opened = this.group;
+        return opened != null && opened.getIdGroup() == group.getIdGroup();
+    }
+
+    /**
+     * Переводит клиента из состояния <code>expected</code> в <code>next</code>.
+     *
+     * @return false, если клиент уже не в состоянии <code>expected</code>
+     */
+    public synchronized boolean changeState(ClientStates expected, ClientStates next) {
+        if (state != expected)
+            return false;
+        state = next;
+        return true;
     }
 
     public void stateRequest() {
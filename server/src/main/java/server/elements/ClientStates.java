@@ -1,5 +1,13 @@
 package server.elements;
 
 public enum ClientStates {
-    Fine, AwaitingType
+    Fine,
+    /**
+     * Соединение только открыто, ждем приветствия {@link utils.network.Frame#HELLO}.
+     * Если первой пришла другая строка или приветствия не было дольше
+     * {@link server.ServerMain#HELLO_TIMEOUT_MS}, клиент считается старым
+     * и у него запрашивается тип.
+     */
+    AwaitingHello,
+    AwaitingType
 }
@@ -1,9 +1,19 @@
 package server.elements;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import server.managers.DatabaseManager;
+import server.managers.GroupDirectory;
+import server.managers.HistoryCache;
+import server.managers.MembershipCache;
+import server.managers.MessageWriter;
+import server.managers.Metrics;
+import server.managers.ReadTracker;
 import utils.Ansi;
+import utils.IntSet;
 import utils.StringPrintWriter;
 import utils.elements.AbstractGroup;
+import utils.elements.GroupTypes;
 
 import java.sql.Array;
 import java.sql.Connection;
@@ -15,6 +25,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public class Group extends AbstractGroup {
+    private static final Logger log = LoggerFactory.getLogger(Group.class);
 
     public Group(int owner, String groupname, String name) {
         this.groupname = groupname;
@@ -34,28 +45,14 @@ public class Group extends AbstractGroup {
     }
 
     public static boolean groupExists(String groupname) {
-        String sql = "SELECT EXISTS(SELECT 1 FROM groups WHERE groupname = ?)";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, groupname);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getBoolean(1);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
-        }
-        return false;
+        return GroupDirectory.get(groupname, Group::queryEntry) != null;
     }
 
     public static void addGroup(int ownerId, Group group) {
         String sql = "INSERT INTO groups (groupname, name, type, owner_id)\n"
                 + "VALUES (?, ?, ?, ?);";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.addGroup");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, group.groupname);
@@ -66,7 +63,7 @@ public class Group extends AbstractGroup {
             stmt.executeUpdate();
 
         } catch (SQLException e) {
-            System.err.println("Error adding Group: " + e.getMessage());
+            log.error("Error adding Group: {}", e.getMessage());
         }
     }
 
@@ -80,38 +77,45 @@ public class Group extends AbstractGroup {
         }
         var members = group.getMembersId();
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.deleteGroup");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, group.id);
             stmt.setInt(2, group.id);
             int deletedRows = stmt.executeUpdate();
+            MembershipCache.invalidate(group.id);
+            GroupDirectory.invalidate(groupname);
+            HistoryCache.invalidate(group.id);
+            ReadTracker.invalidate(group.id);
 
             if (deletedRows > 0) {
                 out.println("Deleted successfully");
             } else {
-                System.out.println("Nothing to delete.");
+                log.info("Nothing to delete.");
             }
 
-            if (members == null)
+            if (members == null) {
+                log.warn("Members of deleted group {} are unknown, not notified", groupname);
                 return;
+            }
 
-
-            for (int i : members) {
-                var kickedClient = ServerData.findClient(i);
-                if (kickedClient == null)
-                    continue;
-
-                if (kickedClient.group != null && kickedClient.group.groupname.equals(groupname))
-                    kickedClient.sendln(
-                        "Group \"" + kickedClient.group.name + "\" was deleted."
-                    );
-                kickedClient.group = null;
+            for (int i = 0; i < members.size(); i++) {
+                for (var kickedClient : ServerData.findClients(members.get(i))) {
+                    var opened = kickedClient.group;
+                    kickedClient.group = null;
+                    if (opened == null || !opened.groupname.equals(groupname))
+                        continue;
+                    try {
+                        kickedClient.sendln("Group \"" + opened.name + "\" was deleted.");
+                    } catch (IllegalStateException e) {
+                        // Клиент отключился во время рассылки
+                    }
+                }
             }
 
 
         } catch (SQLException e) {
-            System.err.println("Error deleting group: " + e.getMessage());
+            log.error("Error deleting group: {}", e.getMessage());
             out.println("Something went wrong: " + e.getMessage());
         }
     }
@@ -134,6 +138,7 @@ public class Group extends AbstractGroup {
         addGroup(owner.getId(), group);
         group = getGroupByName(groupname);
         addMember(group.getIdGroup(), owner.getUserName(), true);
+        GroupDirectory.adminChanged(groupname, owner.getId(), true);
         out.println("Registered successfully.");
         ServerData.addGroup(group);
 
@@ -146,26 +151,59 @@ public class Group extends AbstractGroup {
         return new ArrayList<>(Arrays.asList(array));
     }
 
+    /**
+     * Возвращает группу по имени. Сведения о группе кешируются,
+     * см. {@link GroupDirectory}.
+     *
+     * @return группа, либо <code>null</code>, если она не найдена
+     */
     public static Group getGroupByName(String groupname) {
-        String sql = "SELECT * FROM groups WHERE groupname = ?";
+        var entry = GroupDirectory.get(groupname, Group::queryEntry);
+        if (entry == null)
+            return null;
+
+        Group group = new Group(entry.owner(), groupname, entry.name());
+        group.id = entry.id();
+        group.type = entry.type();
+        return group;
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
+    /**
+     * Загружает сведения о группе вместе со списком администраторов одним запросом.
+     *
+     * @return запись, либо <code>null</code>, если группа не найдена
+     */
+    private static GroupDirectory.Entry queryEntry(String groupname) {
+        String sql = "SELECT g.id, g.name, g.type, g.owner_id, gm.user_id FROM groups g "
+            + "LEFT JOIN group_members gm ON gm.group_id = g.id AND gm.is_admin = true "
+            + "WHERE g.groupname = ?";
+
+        try (Connection conn = DatabaseManager.getConnection("Group.queryEntry");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, groupname);
             ResultSet rs = stmt.executeQuery();
 
-            if (rs.next()) {
-                int owner = rs.getInt("owner_id");
-                String name = rs.getString("groupname");
-                Group group = new Group(owner, groupname, name);
-
-                group.id = rs.getInt("id");
-
-                return group;
-            }
+            if (!rs.next())
+                return null;
+
+            int id = rs.getInt("id");
+            String name = rs.getString("name");
+            int type = rs.getInt("type");
+            int owner = rs.getInt("owner_id");
+            var admins = IntSet.EMPTY;
+            do {
+                int admin = rs.getInt("user_id");
+                if (!rs.wasNull())
+                    admins = admins.with(admin);
+            } while (rs.next());
+
+            var types = GroupTypes.values();
+            return new GroupDirectory.Entry(
+                id, groupname, name, type < types.length ? types[type] : null, owner, admins
+            );
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
 
         return null;
@@ -176,16 +214,17 @@ public class Group extends AbstractGroup {
 
         int id = User.getUserIdByUsername(username);
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.addMember");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, groupId);
             stmt.setInt(2, id);
             stmt.setBoolean(3, isAdmin);
             stmt.executeUpdate();
+            MembershipCache.memberAdded(groupId, id);
 
         } catch (SQLException e) {
-            System.err.println("Error adding member: " + e.getMessage());
+            log.error("Error adding member: {}", e.getMessage());
         }
     }
 
@@ -196,7 +235,7 @@ public class Group extends AbstractGroup {
         var group = getGroupByName(groupname);
         int id = User.getUserIdByUsername(username);
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.removeMember");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, group.id);
@@ -207,47 +246,83 @@ public class Group extends AbstractGroup {
                 out.println(username + " was not a member.");
                 return false;
             } else {
-                System.out.println("Deleted " + username + " from group " + groupname);
+                MembershipCache.memberRemoved(group.id, id);
+                GroupDirectory.adminChanged(groupname, id, false);
+                // При повторном вступлении счет непрочитанных начнется заново
+                ReadTracker.get(group.id).markRead(id, 0);
+                log.info("Deleted {} from group {}", username, groupname);
             }
 
-            var kickedClient = ServerData.findClient(username);
-            if (kickedClient == null)
-                return true;
-
-            if (kickedClient.group != null && kickedClient.group.groupname.equals(groupname))
-                kickedClient.sendln(
-                    "You were kicked from group \"" + kickedClient.group.name + "\""
-                );
-            kickedClient.group = null;
+            for (var kickedClient : ServerData.findClients(username)) {
+                var opened = kickedClient.group;
+                kickedClient.group = null;
+                if (opened == null || !opened.groupname.equals(groupname))
+                    continue;
+                try {
+                    kickedClient.sendln("You were kicked from group \"" + opened.name + "\"");
+                } catch (IllegalStateException e) {
+                    // Клиент отключился во время рассылки
+                }
+            }
             return true;
 
 
         } catch (SQLException e) {
-            System.err.println("Error removing member: " + e.getMessage());
+            log.error("Error removing member: {}", e.getMessage());
             out.println("Something went wrong: " + e.getMessage());
             return false;
         }
     }
 
-    public List<Integer> getMembersId() {
-        List<Integer> members = new ArrayList<>();
-        String sql = "SELECT * FROM group_members WHERE group_id = ?";
+    /**
+     * Возвращает id участников группы. Результат кешируется,
+     * см. {@link MembershipCache}.
+     *
+     * @return id участников, либо <code>null</code>, если произошла ошибка
+     */
+    public IntSet getMembersId() {
+        return getMembersId(this.id);
+    }
+
+    /**
+     * Участники группы по ее id, см. {@link MembershipCache}.
+     *
+     * @return id участников, либо <code>null</code>, если произошла ошибка
+     */
+    public static IntSet getMembersId(int groupId) {
+        return MembershipCache.get(groupId, Group::queryMembersId);
+    }
+
+    /**
+     * @return false также если участников не удалось загрузить
+     */
+    public boolean hasMember(int userId) {
+        var members = getMembersId();
+        return members != null && members.contains(userId);
+    }
+
+    private static IntSet queryMembersId(int groupId) {
+        String sql = "SELECT user_id FROM group_members WHERE group_id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.queryMembersId");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setInt(1, this.id);
+            stmt.setInt(1, groupId);
             ResultSet rs = stmt.executeQuery();
 
+            var members = new int[16];
+            int size = 0;
             while (rs.next()) {
-                members.add(rs.getInt("user_id"));
+                if (size == members.length)
+                    members = Arrays.copyOf(members, size * 2);
+                members[size++] = rs.getInt("user_id");
             }
+            return IntSet.of(Arrays.copyOf(members, size));
 
         } catch (SQLException e) {
-            System.err.println("Error getting Members: " + e.getMessage());
+            log.error("Error getting Members: {}", e.getMessage());
+            return null;
         }
-
-        return members;
     }
 
     public void invite(StringPrintWriter out, String username, int groupId) {
@@ -270,33 +345,77 @@ public class Group extends AbstractGroup {
 
     }
 
-    public void addMessage(Message message) {
-        String sql = "INSERT INTO messages (group_id, content, sender_id)\n"
-                + "VALUES (?, ?, ?);";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, this.id);
-            stmt.setString(2, message.getContent());
-            stmt.setInt(3, message.getSenderId());
+    /**
+     * Сохраняет сообщение в базу и в последние сообщения группы.
+     * Запись в базу происходит асинхронно, см. {@link MessageWriter}.
+     *
+     * @param message сообщение с id из {@link MessageWriter#nextId()} и временем отправки
+     * @return false, если сообщение не принято на запись, см. {@link MessageWriter#enqueue}
+     */
+    public boolean addMessage(Message message) {
+        if (!MessageWriter.enqueue(this.id, message))
+            return false;
+        HistoryCache.get(this.id).append(message);
+        return true;
+    }
 
-            stmt.executeUpdate();
+    /**
+     * Возвращает последние <code>limit</code> сообщений группы
+     * в порядке отправки.
+     */
+    public List<Message> getMessages(int limit) {
+        return getMessagesBefore(Integer.MAX_VALUE, limit);
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Error adding Message: " + e.getMessage());
+    /**
+     * Возвращает не более <code>limit</code> сообщений, отправленных
+     * перед сообщением с указанным id, в порядке отправки.
+     * <br>Для загрузки следующей страницы передайте id первого полученного сообщения.
+     *
+     * <p>Последние сообщения берутся из памяти, см. {@link HistoryCache}. При первом
+     * обращении буфер группы заполняется из базы. За более старыми страницами
+     * запрос идет в базу; он использует индекс <code>messages(group_id, id)</code>
+     * и не зависит от размера истории.
+     */
+    public List<Message> getMessagesBefore(int beforeId, int limit) {
+        var tail = HistoryCache.get(this.id);
+        var page = tail.getBefore(beforeId, limit);
+
+        if (page == null && tail.canLoadOlder()) {
+            int space = tail.getFreeSpace();
+            var older = queryMessagesBefore(tail.getOldestId(), space);
+            if (older != null) {
+                tail.prepend(older, older.size() < space);
+                page = tail.getBefore(beforeId, limit);
+            }
         }
+        if (page != null) {
+            Metrics.increment(Metrics.name("history_pages_total", "source", "memory"));
+            return page;
+        }
+
+        Metrics.increment(Metrics.name("history_pages_total", "source", "db"));
+        page = queryMessagesBefore(beforeId, limit);
+        return page == null ? new ArrayList<>() : page;
     }
 
-    public List<Message> getMessages() {
+    /**
+     * Читает сообщения из базы.
+     *
+     * @return сообщения в порядке отправки, либо <code>null</code> при ошибке
+     */
+    private List<Message> queryMessagesBefore(int beforeId, int limit) {
         List<Message> messages = new ArrayList<>();
-        String sql = "SELECT * FROM public.messages m JOIN public.users u "
-            + "ON m.sender_id = u.id WHERE group_id = ? ORDER BY sent_time ASC";
+        String sql = "SELECT m.id, m.content, m.sender_id, m.sent_time, u.name "
+            + "FROM messages m JOIN users u ON m.sender_id = u.id "
+            + "WHERE m.group_id = ? AND m.id < ? ORDER BY m.id DESC LIMIT ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.getMessagesBefore");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, this.id);
+            stmt.setInt(2, beforeId);
+            stmt.setInt(3, limit);
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
@@ -306,60 +425,156 @@ public class Group extends AbstractGroup {
                     rs.getString("name"),
                     rs.getInt("sender_id"),
                     rs.getTimestamp("sent_time")
-
                 ));
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting Messages: " + e.getMessage());
+            log.error("Error getting Messages: {}", e.getMessage());
+            return null;
         }
 
-        return messages;
+        return messages.reversed();
+    }
+
+    /**
+     * Возвращает сведения о группе из {@link GroupDirectory}.
+     *
+     * @return запись, либо <code>null</code>, если группа уже удалена
+     */
+    private GroupDirectory.Entry getEntry() {
+        return GroupDirectory.get(groupname, Group::queryEntry);
     }
 
     public List<Integer> getAdminIds() {
-        List<Integer> admins = new ArrayList<>();
-        String sql = "SELECT * FROM group_members WHERE group_id = ? AND is_admin = true";
+        var entry = getEntry();
+        if (entry == null)
+            return new ArrayList<>();
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        var admins = new ArrayList<Integer>(entry.admins().size());
+        for (int admin : entry.admins().toArray())
+            admins.add(admin);
+        return admins;
+    }
 
-            stmt.setInt(1, this.id);
-            ResultSet rs = stmt.executeQuery();
+    public boolean hasAdmin(User user) {
+        var entry = getEntry();
+        return entry != null && entry.isAdmin(user.getId());
+    }
 
-            while (rs.next()) {
-                admins.add(rs.getInt("user_id"));
+    public boolean isOwner(User user) {
+        return isOwnerId(user.getId());
+    }
+
+    /**
+     * Выдает или забирает права администратора у участника группы.
+     *
+     * @return true, если права изменены
+     */
+    public boolean setAdmin(StringPrintWriter out, String username, boolean isAdmin) {
+        String sql = "UPDATE group_members SET is_admin = ? WHERE group_id = ? AND user_id = ?";
+
+        var userId = User.getUserIdByUsername(username);
+        if (userId == null) {
+            out.println(Ansi.Colors.RED.apply("User not found."));
+            return false;
+        }
+        if (!isAdmin && isOwnerId(userId)) {
+            out.println(Ansi.Colors.RED.apply("Owner can't be deopped."));
+            return false;
+        }
+
+        try (Connection conn = DatabaseManager.getConnection("Group.setAdmin");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setBoolean(1, isAdmin);
+            stmt.setInt(2, id);
+            stmt.setInt(3, userId);
+            if (stmt.executeUpdate() == 0) {
+                out.println(username + " is not a member.");
+                return false;
             }
+            GroupDirectory.adminChanged(groupname, userId, isAdmin);
+            return true;
 
         } catch (SQLException e) {
-            System.err.println("Error getting Admins: " + e.getMessage());
+            log.error("Error changing admin: {}", e.getMessage());
+            out.println("Something went wrong: " + e.getMessage());
+            return false;
         }
-
-        return admins;
     }
 
-    public boolean hasAdmin(User user) {
-        return getAdminIds().contains(user.getId());
+    /**
+     * Передает группу другому участнику. Новый владелец становится администратором.
+     *
+     * @return true, если владелец изменен
+     */
+    public boolean setOwner(StringPrintWriter out, String username) {
+        String sql = "UPDATE groups SET owner_id = ? WHERE id = ?";
+
+        var userId = User.getUserIdByUsername(username);
+        if (userId == null) {
+            out.println(Ansi.Colors.RED.apply("User not found."));
+            return false;
+        }
+        if (!hasMember(userId)) {
+            out.println(username + " is not a member.");
+            return false;
+        }
+        if (!setAdmin(out, username, true))
+            return false;
+
+        try (Connection conn = DatabaseManager.getConnection("Group.setOwner");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, userId);
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+            this.owner = userId;
+            GroupDirectory.ownerChanged(groupname, userId);
+            return true;
+
+        } catch (SQLException e) {
+            log.error("Error changing owner: {}", e.getMessage());
+            out.println("Something went wrong: " + e.getMessage());
+            return false;
+        }
     }
 
-    public boolean isOwner(User user) {
-        String sql = "SELECT * FROM groups WHERE groupname = ?";
+    /**
+     * Меняет название группы. Имя группы (groupname) при этом не меняется.
+     *
+     * @return true, если название изменено
+     */
+    public boolean setName(StringPrintWriter out, String name) {
+        String sql = "UPDATE groups SET name = ? WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        if (name.length() > ServerData.MAX_USERNAME_LENGTH) {
+            out.println(Ansi.Colors.RED.apply(
+                "Name is too long. Max: " + ServerData.MAX_USERNAME_LENGTH
+            ));
+            return false;
+        }
+
+        try (Connection conn = DatabaseManager.getConnection("Group.setName");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, groupname);
-            ResultSet rs = stmt.executeQuery();
+            stmt.setString(1, name);
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+            this.name = name;
+            GroupDirectory.renamed(groupname, name);
+            return true;
 
-            if (rs.next()) {
-                if (rs.getInt("owner_id") == user.getId())
-                    return true;
-            }
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error renaming group: {}", e.getMessage());
+            out.println("Something went wrong: " + e.getMessage());
+            return false;
         }
+    }
 
-        return false;
+    private boolean isOwnerId(int userId) {
+        var entry = getEntry();
+        return entry != null && entry.owner() == userId;
     }
 
     public void loadMemberList() {
@@ -369,7 +584,7 @@ public class Group extends AbstractGroup {
         String sql = "SELECT * FROM group_members gm JOIN users u "
             + "ON gm.user_id=u.id WHERE group_id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("Group.loadMemberList");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, id);
@@ -387,7 +602,7 @@ public class Group extends AbstractGroup {
                     members.add(user);
             }
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
 
     }
@@ -0,0 +1,127 @@
+package server.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Позиции прочтения участников одной группы: id пользователя -&gt;
+ * id последнего прочитанного сообщения и число непрочитанных.
+ *
+ * <p>Число непрочитанных не пересчитывается по таблице сообщений, а поддерживается
+ * на ходу: {@link #messageAdded(int, int, boolean)} вызывается для каждого участника
+ * при рассылке, {@link #markRead(int, int)} - при открытии группы.
+ * <br>Измененные записи помечаются и забираются для записи в базу
+ * методом {@link #takeChanged()}.
+ *
+ * @see server.managers.ReadTracker
+ */
+public class GroupReads {
+
+    /**
+     * Позиция прочтения одного участника.
+     *
+     * @param lastReadId id последнего прочитанного сообщения, 0 - если неизвестен
+     * @param unread число непрочитанных сообщений
+     */
+    public record Position(int userId, int lastReadId, int unread) {}
+
+    private static class Counter {
+        int lastReadId = 0;
+        int unread = 0;
+        boolean isChanged = false;
+    }
+
+    private final int groupId;
+    private final HashMap<Integer, Counter> counters = new HashMap<>();
+    private boolean hasChanges = false;
+
+    public GroupReads(int groupId) {
+        this.groupId = groupId;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * Заполняет позицию, прочитанную из базы. Запись не помечается измененной.
+     */
+    public synchronized void load(int userId, int lastReadId, int unread) {
+        var counter = counters.computeIfAbsent(userId, (k) -> new Counter());
+        counter.lastReadId = lastReadId;
+        counter.unread = unread;
+    }
+
+    /**
+     * Учитывает новое сообщение группы для одного участника.
+     *
+     * @param isRead true, если участник сразу получил сообщение целиком
+     *               (он отправитель или у него открыта группа)
+     */
+    public synchronized void messageAdded(int userId, int messageId, boolean isRead) {
+        var counter = counters.computeIfAbsent(userId, (k) -> new Counter());
+        if (isRead) {
+            counter.lastReadId = Math.max(counter.lastReadId, messageId);
+            counter.unread = 0;
+        } else {
+            counter.unread++;
+        }
+        counter.isChanged = true;
+        hasChanges = true;
+    }
+
+    /**
+     * Отмечает группу прочитанной.
+     *
+     * @param messageId id последнего показанного сообщения, 0 - если неизвестен
+     */
+    public synchronized void markRead(int userId, int messageId) {
+        var counter = counters.computeIfAbsent(userId, (k) -> new Counter());
+        if (counter.unread == 0 && counter.lastReadId >= messageId)
+            return;
+        counter.lastReadId = Math.max(counter.lastReadId, messageId);
+        counter.unread = 0;
+        counter.isChanged = true;
+        hasChanges = true;
+    }
+
+    /**
+     * Снова помечает позицию измененной, например если ее не удалось записать.
+     * Следующий {@link #takeChanged()} вернет текущее значение позиции,
+     * которое не старше переданного.
+     */
+    public synchronized void markChanged(Position position) {
+        var counter = counters.get(position.userId());
+        if (counter == null)
+            return;
+        counter.isChanged = true;
+        hasChanges = true;
+    }
+
+    /**
+     * @return число непрочитанных сообщений участника
+     */
+    public synchronized int getUnread(int userId) {
+        var counter = counters.get(userId);
+        return counter == null ? 0 : counter.unread;
+    }
+
+    /**
+     * Возвращает позиции, измененные с прошлого вызова, и снимает с них отметку.
+     */
+    public synchronized List<Position> takeChanged() {
+        if (!hasChanges)
+            return List.of();
+        hasChanges = false;
+
+        var changed = new ArrayList<Position>();
+        counters.forEach((userId, counter) -> {
+            if (!counter.isChanged)
+                return;
+            counter.isChanged = false;
+            changed.add(new Position(userId, counter.lastReadId, counter.unread));
+        });
+        return changed;
+    }
+}
@@ -1,10 +1,18 @@
 package server.elements;
 
 import utils.Ansi;
+import utils.network.Frame;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Message {
+    /**
+     * Ширина строки чата, по которой переносятся длинные сообщения.
+     */
+    public static final int LINE_WIDTH = 30;
+
     private final int id;
     private final String content;
     private final String senderName; // по id
@@ -40,6 +48,28 @@ public class Message {
         return senderId;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public Timestamp getTime() {
+        return time;
+    }
+
+    /**
+     * Сообщение в виде, пригодном для кадров двоичного протокола.
+     * Еще не записанное в базу сообщение получает текущее время.
+     */
+    public Frame.Chat toFrameChat() {
+        return new Frame.Chat(
+            id,
+            senderId,
+            senderName,
+            content,
+            time == null ? System.currentTimeMillis() : time.getTime()
+        );
+    }
+
     /**
      * Выводит сообщение от себя в чат пользователя.
      *
@@ -48,4 +78,42 @@ public class Message {
     public static String getOffset(String message) {
         return " ".repeat(Math.max(0, (110 - message.length())));
     }
+
+    /**
+     * Строки сообщения в том виде, в котором они отправляются
+     * остальным участникам чата. Каждая строка завершается переносом.
+     */
+    public String getChatLines() {
+        var result = new StringBuilder();
+        for (var line : splitLines(getFormatted()))
+            result.append(line).append('\n');
+        return result.toString();
+    }
+
+    /**
+     * Строки сообщения в том виде, в котором они отправляются самому отправителю:
+     * выровненные по правому краю и выделенные цветом.
+     */
+    public String getChatLinesSelf(boolean isHtml) {
+        var result = new StringBuilder();
+        for (var line : splitLines(getFormatted())) {
+            result.append(Ansi.applyChoose(getOffset(line) + line, Ansi.Colors.YELLOW, isHtml));
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Разбивает текст на строки чата длиной не более {@link #LINE_WIDTH} + 1 символов.
+     */
+    static List<String> splitLines(String text) {
+        var lines = new ArrayList<String>(text.length() / LINE_WIDTH + 1);
+        int start = 0;
+        while (text.length() - start > LINE_WIDTH) {
+            lines.add(text.substring(start, start + LINE_WIDTH + 1));
+            start += LINE_WIDTH + 1;
+        }
+        lines.add(text.substring(start));
+        return lines;
+    }
 }
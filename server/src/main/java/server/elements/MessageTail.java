@@ -0,0 +1,176 @@
+package server.elements;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Последние сообщения одной группы в памяти.
+ *
+ * <p>Сообщения хранятся в кольцевом буфере по столбцам: отдельные массивы для id,
+ * отправителей, времени и текста, а не объект {@link Message} на каждое сообщение.
+ * Объекты создаются только при чтении страницы.
+ * <br>Новые сообщения добавляются методом {@link #append(Message)}; когда буфер
+ * заполнен, самое старое вытесняется. Более старые сообщения из базы можно
+ * дописать в начало методом {@link #prepend(List, boolean)}.
+ * <br>Сообщения упорядочены по id.
+ *
+ * <p>Буфер помнит, могут ли в базе быть сообщения старше самого старого из хранимых.
+ * Пока могут, {@link #getBefore(int, int)} не возвращает неполную страницу:
+ * за ней нужно идти в базу.
+ */
+public class MessageTail {
+    private final int capacity;
+
+    private final int[] ids;
+    private final int[] senderIds;
+    private final long[] times;
+    private final String[] senderNames;
+    private final String[] contents;
+
+    /**
+     * Индекс самого старого сообщения в массивах.
+     */
+    private int start = 0;
+    private int size = 0;
+
+    private boolean hasOlder = true;
+
+    public MessageTail(int capacity) {
+        this.capacity = capacity;
+        ids = new int[capacity];
+        senderIds = new int[capacity];
+        times = new long[capacity];
+        senderNames = new String[capacity];
+        contents = new String[capacity];
+    }
+
+    /**
+     * Добавляет новое сообщение. Сообщение должно иметь id и время отправки.
+     * <br>Сообщения, пришедшие не по порядку id, встают на свое место.
+     */
+    public synchronized void append(Message message) {
+        if (capacity == 0)
+            return;
+        if (size == capacity) {
+            start = slot(1);
+            size--;
+            hasOlder = true;
+        }
+
+        int position = size;
+        while (position > 0 && ids[slot(position - 1)] > message.getId()) {
+            move(slot(position - 1), slot(position));
+            position--;
+        }
+        set(slot(position), message);
+        size++;
+    }
+
+    /**
+     * Дописывает в начало более старые сообщения, прочитанные из базы.
+     * Сообщения не старше уже хранимых пропускаются. Если места не хватает,
+     * пропускаются самые старые из переданных.
+     *
+     * @param older сообщения в порядке отправки
+     * @param isAll true, если в базе нет сообщений старше переданных
+     */
+    public synchronized void prepend(List<Message> older, boolean isAll) {
+        int oldest = getOldestIdUnsafe();
+        int i = older.size() - 1;
+        for (; i >= 0 && size < capacity; i--) {
+            var message = older.get(i);
+            if (message.getId() >= oldest)
+                continue;
+            start = slot(-1);
+            set(start, message);
+            size++;
+            oldest = message.getId();
+        }
+        if (i < 0 && isAll)
+            hasOlder = false;
+    }
+
+    /**
+     * Возвращает не более <code>limit</code> сообщений с id меньше <code>beforeId</code>
+     * в порядке отправки.
+     *
+     * @return страница, либо <code>null</code>, если ее нельзя собрать только из памяти
+     */
+    public synchronized List<Message> getBefore(int beforeId, int limit) {
+        // Число хранимых сообщений с id < beforeId
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[slot(middle)] < beforeId)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int end = low;
+        int from = Math.max(0, end - limit);
+        if (end - from < limit && hasOlder)
+            return null;
+
+        var page = new ArrayList<Message>(end - from);
+        for (int i = from; i < end; i++) {
+            int slot = slot(i);
+            page.add(new Message(
+                ids[slot], contents[slot], senderNames[slot], senderIds[slot],
+                new Timestamp(times[slot])
+            ));
+        }
+        return page;
+    }
+
+    /**
+     * Можно ли дополнить буфер сообщениями из базы.
+     */
+    public synchronized boolean canLoadOlder() {
+        return hasOlder && size < capacity;
+    }
+
+    /**
+     * @return id самого старого сообщения, {@link Integer#MAX_VALUE}, если буфер пуст
+     */
+    public synchronized int getOldestId() {
+        return getOldestIdUnsafe();
+    }
+
+    public synchronized int getFreeSpace() {
+        return capacity - size;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int getOldestIdUnsafe() {
+        return size == 0 ? Integer.MAX_VALUE : ids[start];
+    }
+
+    /**
+     * Индекс в массивах для сообщения с порядковым номером <code>index</code>
+     * от самого старого. Допускает <code>-1</code>.
+     */
+    private int slot(int index) {
+        return Math.floorMod(start + index, capacity);
+    }
+
+    private void set(int slot, Message message) {
+        ids[slot] = message.getId();
+        senderIds[slot] = message.getSenderId();
+        times[slot] = message.getTime().getTime();
+        senderNames[slot] = message.getSenderName();
+        contents[slot] = message.getContent();
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        senderIds[to] = senderIds[from];
+        times[to] = times[from];
+        senderNames[to] = senderNames[from];
+        contents[to] = contents[from];
+    }
+}
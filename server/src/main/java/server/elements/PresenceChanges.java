@@ -0,0 +1,99 @@
+package server.elements;
+
+import utils.network.Frame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Изменения статусов пользователей, накопленные между рассылками.
+ *
+ * <p>Хранится только последний статус каждого пользователя и то, о каком статусе
+ * уже было разослано. Поэтому вход и выход за один период схлопываются:
+ * если статус вернулся к разосланному, {@link #take()} его не вернет.
+ *
+ * @see server.managers.PresenceManager
+ */
+public class PresenceChanges {
+
+    private record Change(boolean isOnline, long time) {}
+
+    /**
+     * Последний статус пользователя с прошлого {@link #take()}.
+     */
+    private final HashMap<Integer, Change> changed = new HashMap<>();
+
+    /**
+     * Пользователи, о появлении которых уже разослано и об уходе еще нет.
+     */
+    private final Set<Integer> published = new HashSet<>();
+
+    /**
+     * Запоминает новый статус пользователя.
+     *
+     * @param time время изменения в миллисекундах
+     */
+    public synchronized void changed(int userId, boolean isOnline, long time) {
+        changed.put(userId, new Change(isOnline, time));
+    }
+
+    /**
+     * Возвращает изменения, о которых нужно разослать, и забывает накопленные.
+     */
+    public synchronized List<Frame.Presence> take() {
+        var result = new ArrayList<Frame.Presence>();
+        changed.forEach((userId, change) -> {
+            if (change.isOnline() == published.contains(userId))
+                return;
+
+            if (change.isOnline())
+                published.add(userId);
+            else
+                published.remove(userId);
+            result.add(new Frame.Presence(userId, change.isOnline(), change.time()));
+        });
+        changed.clear();
+        return result;
+    }
+
+    /**
+     * Число пользователей, изменения которых ждут рассылки.
+     */
+    public synchronized int size() {
+        return changed.size();
+    }
+
+    /**
+     * Раскладывает изменения по получателям: каждый получатель, который
+     * сейчас в сети, получает одну пачку со всеми изменениями своих контактов.
+     * О собственном статусе пользователю не сообщается.
+     *
+     * @param contacts id пользователя -&gt; id его друзей и участников его групп
+     * @param isOnline в сети ли получатель
+     * @return id получателя -&gt; изменения в порядке <code>changes</code>
+     */
+    public static Map<Integer, List<Frame.Presence>> byRecipient(
+        List<Frame.Presence> changes,
+        Map<Integer, ? extends Collection<Integer>> contacts,
+        IntPredicate isOnline
+    ) {
+        var batches = new LinkedHashMap<Integer, List<Frame.Presence>>();
+        for (var presence : changes) {
+            var userContacts = contacts.get(presence.userId());
+            if (userContacts == null)
+                continue;
+            for (int contact : userContacts) {
+                if (contact != presence.userId() && isOnline.test(contact))
+                    batches.computeIfAbsent(contact, (k) -> new ArrayList<>()).add(presence);
+            }
+        }
+        return batches;
+    }
+}
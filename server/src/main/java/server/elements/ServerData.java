@@ -1,9 +1,25 @@
 package server.elements;
 
-import utils.extensions.CollectionExt;
+import server.managers.PresenceManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Общие данные сервера: подключенные клиенты и вошедшие в аккаунт сессии.
+ *
+ * <p>Все коллекции потокобезопасны. Их можно обходить во время рассылки,
+ * даже если в это время клиенты подключаются или отключаются.
+ * <br>Вошедшие клиенты проиндексированы по id и по имени пользователя,
+ * поэтому поиск не зависит от числа клиентов онлайн.
+ * Один пользователь может быть подключен с нескольких клиентов одновременно.
+ * <br>О появлении первой и закрытии последней сессии пользователя
+ * сообщается {@link PresenceManager}.
+ */
 public class ServerData {
     public static final int MAX_USERNAME_LENGTH = 32;
     @Deprecated
@@ -11,29 +27,138 @@ public class ServerData {
     @Deprecated
     private static final ArrayList<Group> registeredGroups = new ArrayList<>();
 
-    private static final ArrayList<Client> clients = new ArrayList<>();
-    private static final ArrayList<Client> registeredClients = new ArrayList<>();
+    private static final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private static final Set<Client> registeredClients = ConcurrentHashMap.newKeySet();
 
-    public static ArrayList<Client> getClients() {
-        return clients;
+    private static final Map<Integer, Set<Client>> sessionsById = new ConcurrentHashMap<>();
+    private static final Map<String, Set<Client>> sessionsByName = new ConcurrentHashMap<>();
+
+    /**
+     * Возвращает всех подключенных клиентов, в том числе не вошедших в аккаунт.
+     */
+    public static Collection<Client> getClients() {
+        return Collections.unmodifiableSet(clients);
+    }
+
+    /**
+     * Возвращает всех клиентов, вошедших в аккаунт.
+     */
+    public static Collection<Client> getRegisteredClients() {
+        return Collections.unmodifiableSet(registeredClients);
     }
 
-    public static ArrayList<Client> getRegisteredClients() {
-        return registeredClients;
+    public static void addClient(Client client) {
+        clients.add(client);
+    }
+
+    /**
+     * Убирает отключившегося клиента отовсюду.
+     * Если клиент был в аккаунте, его сессия тоже закрывается.
+     */
+    public static void removeClient(Client client) {
+        logout(client);
+        clients.remove(client);
+    }
+
+    /**
+     * Регистрирует сессию клиента. Должен вызываться после того,
+     * как клиенту присвоен {@link Client#user}.
+     */
+    public static void login(Client client) {
+        var user = client.user;
+        if (user == null || !registeredClients.add(client))
+            return;
+
+        if (addSession(sessionsById, user.getId(), client))
+            PresenceManager.online(user.getId());
+        addSession(sessionsByName, user.getUserName(), client);
+    }
+
+    /**
+     * Закрывает сессию клиента. Должен вызываться до того,
+     * как у клиента будет сброшен {@link Client#user}.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если клиент не в аккаунте.
+     */
+    public static void logout(Client client) {
+        var user = client.user;
+        if (user == null || !registeredClients.remove(client))
+            return;
+
+        if (removeSession(sessionsById, user.getId(), client))
+            PresenceManager.offline(user.getId());
+        removeSession(sessionsByName, user.getUserName(), client);
     }
 
+    /**
+     * @return true, если это первая сессия по ключу
+     */
+    private static <K> boolean addSession(Map<K, Set<Client>> index, K key, Client client) {
+        var isFirst = new boolean[1];
+        index.compute(key, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                isFirst[0] = true;
+            }
+            sessions.add(client);
+            return sessions;
+        });
+        return isFirst[0];
+    }
+
+    /**
+     * @return true, если это была последняя сессия по ключу
+     */
+    private static <K> boolean removeSession(Map<K, Set<Client>> index, K key, Client client) {
+        var isLast = new boolean[1];
+        index.computeIfPresent(key, (k, sessions) -> {
+            sessions.remove(client);
+            isLast[0] = sessions.isEmpty();
+            return isLast[0] ? null : sessions;
+        });
+        return isLast[0];
+    }
+
+    /**
+     * Возвращает все сессии пользователя. Если пользователь не в сети,
+     * возвращается пустая коллекция.
+     */
+    public static Collection<Client> findClients(int id) {
+        var sessions = sessionsById.get(id);
+        return sessions == null ? Collections.emptySet() : sessions;
+    }
+
+    /**
+     * Возвращает все сессии пользователя. Если пользователь не в сети,
+     * возвращается пустая коллекция.
+     */
+    public static Collection<Client> findClients(String username) {
+        var sessions = sessionsByName.get(username);
+        return sessions == null ? Collections.emptySet() : sessions;
+    }
+
+    /**
+     * Возвращает одну из сессий пользователя или null, если он не в сети.
+     */
     public static Client findClient(String username) {
-        return CollectionExt.findBy(
-            ServerData.getRegisteredClients(),
-            (it) -> it.user.getUserName().equals(username)
-        );
+        var sessions = findClients(username);
+        for (var client : sessions)
+            return client;
+        return null;
     }
 
+    /**
+     * Возвращает одну из сессий пользователя или null, если он не в сети.
+     */
     public static Client findClient(int id) {
-        return CollectionExt.findBy(
-            ServerData.getRegisteredClients(),
-            (it) -> it.user.getId() == id
-        );
+        var sessions = findClients(id);
+        for (var client : sessions)
+            return client;
+        return null;
+    }
+
+    public static boolean isOnline(int id) {
+        return sessionsById.containsKey(id);
     }
 
     @Deprecated
@@ -0,0 +1,20 @@
+package server.elements;
+
+/**
+ * Способ обслуживания клиентских соединений.
+ */
+public enum TransportTypes {
+    /**
+     * Один поток селектора на все соединения и небольшой пул обработчиков.
+     */
+    NIO,
+    /**
+     * Отдельный поток на каждого клиента, блокирующийся на чтении.
+     */
+    BLOCKING,
+    /**
+     * Как {@link #BLOCKING}, но каждый клиент обслуживается виртуальным потоком,
+     * а команды исполняются на ограниченном пуле.
+     */
+    VIRTUAL
+}
@@ -1,10 +1,12 @@
 package server.elements;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import server.managers.DatabaseManager;
+import server.managers.UserDirectory;
 import utils.Ansi;
 import utils.StringPrintWriter;
 import utils.elements.AbstractUser;
-import utils.extensions.CollectionExt;
 import utils.extensions.StringExt;
 
 import java.sql.Connection;
@@ -15,6 +17,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class User extends AbstractUser {
+    private static final Logger log = LoggerFactory.getLogger(User.class);
 
     public User(String username, String password) {
         this.userName = username;
@@ -23,10 +26,21 @@ public class User extends AbstractUser {
         this.id = username.hashCode();
     }
 
+    /**
+     * Создает пользователя по записи справочника {@link UserDirectory}, не обращаясь к базе.
+     * <br>Пароль такого пользователя не загружен, он проверяется по базе.
+     */
+    public static User fromEntry(UserDirectory.Entry entry) {
+        User user = new User(entry.username(), null);
+        user.name = entry.name();
+        user.id = entry.id();
+        return user;
+    }
+
     public static User getUserById(int id) {
         String sql = "SELECT * FROM users WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.getUserById");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, id);
@@ -38,11 +52,12 @@ public class User extends AbstractUser {
                 User user = new User(username, password);
                 user.name = rs.getString(3);
                 user.id = rs.getInt(1);
+                UserDirectory.put(new UserDirectory.Entry(user.id, username, user.name));
 
                 return user;
             }
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
 
         return null;
@@ -51,7 +66,7 @@ public class User extends AbstractUser {
     public static User getUserByUsername(String username) {
         String sql = "SELECT * FROM users WHERE username = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.getUserByUsername");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -62,51 +77,53 @@ public class User extends AbstractUser {
                 User user = new User(username, password);
                 user.name = rs.getString("name");
                 user.id = rs.getInt("id");
+                UserDirectory.put(new UserDirectory.Entry(user.id, username, user.name));
 
                 return user;
             }
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
 
         return null;
     }
 
+    /**
+     * Возвращает id пользователя из {@link UserDirectory}.
+     *
+     * @return id, либо <code>null</code>, если пользователь не найден
+     */
     public static Integer getUserIdByUsername(String username) {
-        String sql = "SELECT id FROM users WHERE username = ?";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
-        }
-
-        return null;
+        var entry = UserDirectory.get(username, User::queryDirectoryEntry);
+        return entry == null ? null : entry.id();
     }
 
     public static boolean userExists(String username) {
-        String sql = "SELECT EXISTS(SELECT 1 FROM users WHERE username = ?)";
+        return UserDirectory.get(username, User::queryDirectoryEntry) != null;
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
+    /**
+     * Загружает запись справочника пользователей из базы.
+     *
+     * @return запись, либо <code>null</code>, если пользователь не найден
+     */
+    public static UserDirectory.Entry queryDirectoryEntry(String username) {
+        String sql = "SELECT id, name FROM users WHERE username = ?";
+
+        try (Connection conn = DatabaseManager.getConnection("User.queryDirectoryEntry");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return rs.getBoolean(1);
+                return new UserDirectory.Entry(rs.getInt("id"), username, rs.getString("name"));
             }
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
-        return false;
+
+        return null;
     }
 
     public static String getSalt() {
@@ -123,7 +140,7 @@ public class User extends AbstractUser {
         String sql = "INSERT INTO users (username, name, password, salt)\n"
             + "VALUES (?, ?, ?, ?);";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.addUser");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, user.userName);
@@ -138,8 +155,9 @@ public class User extends AbstractUser {
             stmt.executeUpdate();
 
         } catch (SQLException e) {
-            System.err.println("Error adding User: " + e.getMessage());
+            log.error("Error adding User: {}", e.getMessage());
         }
+        UserDirectory.invalidate(user.userName);
     }
 
     public static User register(StringPrintWriter out, String username, String password) {
@@ -161,24 +179,10 @@ public class User extends AbstractUser {
         return getUserByUsername(username);
     }
 
-    public static void updateLastOnline(String username) {
-        String sql = "UPDATE users SET last_online = CURRENT_TIMESTAMP WHERE username = ?";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, username);
-            stmt.executeUpdate();
-
-        } catch (SQLException e) {
-            System.err.println("Error updating User`s last online: " + e.getMessage());
-        }
-    }
-
     public static User logIn(StringPrintWriter out, String username, String password) {
         String sql = "SELECT * FROM users WHERE username = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.logIn");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -194,9 +198,6 @@ public class User extends AbstractUser {
                     user.name = rs.getString("name");
                     user.id = rs.getInt("id");
 
-                    // Обновляем время последнего входа
-                    updateLastOnline(user.name);
-
                     out.stylePrintlnf(Ansi.Colors.GREEN, "Logged in as %s.", user.name);
                     return user;
                 } else {
@@ -221,18 +222,19 @@ public class User extends AbstractUser {
     public boolean setName(String name) {
         String sql = "UPDATE users SET name = ? WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.setName");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, name);
             stmt.setInt(2, this.id);
             stmt.executeUpdate();
             this.name = name;
+            UserDirectory.nameChanged(userName, name);
 
             return true;
 
         } catch (SQLException e) {
-            System.err.println("Error updating User`s name: " + e.getMessage());
+            log.error("Error updating User`s name: {}", e.getMessage());
             return false;
         }
     }
@@ -241,7 +243,7 @@ public class User extends AbstractUser {
     public void setPassword(String password) {
         String sql = "UPDATE users SET password = ? WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.setPassword");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, password);
@@ -249,7 +251,7 @@ public class User extends AbstractUser {
             stmt.executeUpdate();
 
         } catch (SQLException e) {
-            System.err.println("Error updating User`s password: " + e.getMessage());
+            log.error("Error updating User`s password: {}", e.getMessage());
         }
     }
 
@@ -266,7 +268,7 @@ public class User extends AbstractUser {
         }
 
         String sql = "INSERT INTO user_friends (user_id, friend_id) VALUES (?, ?)";
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.addFriend");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             int user1 = Math.min(this.id, friendId);
@@ -278,7 +280,7 @@ public class User extends AbstractUser {
             out.println("You are now friends with " + username);
 
         } catch (SQLException e) {
-            System.err.println("Error adding User`s friend: " + e.getMessage());
+            log.error("Error adding User`s friend: {}", e.getMessage());
         }
     }
 
@@ -295,7 +297,7 @@ public class User extends AbstractUser {
                                         OR (u.id = uf.user_id AND uf.friend_id = ?)
             WHERE u.id != ?""";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.getFriendsId");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, this.id);
@@ -308,35 +310,58 @@ public class User extends AbstractUser {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting Friends: " + e.getMessage());
+            log.error("Error getting Friends: {}", e.getMessage());
         }
 
         return friends;
     }
 
     // Возможно переименование в setPassword
-    public void changePassword(StringPrintWriter out, String old, String password, String again) {
-        if (!this.getPassword().equals(old)) {
+    /**
+     * Меняет пароль, если старый указан верно. Старый пароль сверяется с базой,
+     * так как у пользователя, возобновившего сессию по токену, он не загружен.
+     *
+     * @return true, если пароль изменен
+     */
+    public boolean changePassword(
+        StringPrintWriter out, String old, String password, String again
+    ) {
+        if (!isPasswordValid(old)) {
             out.println(Ansi.Colors.RED.apply("Invalid password."));
-            return;
+            return false;
         }
 
         if (!password.equals(again)) {
             out.println(Ansi.Colors.RED.apply("Passwords do not match."));
-            return;
+            return false;
         }
 
         this.password = password;
         setPassword(password);
         out.println("Successfully changed password.");
+        return true;
+    }
+
+    private boolean isPasswordValid(String password) {
+        String sql = "SELECT password, salt FROM users WHERE id = ?";
+
+        try (Connection conn = DatabaseManager.getConnection("User.isPasswordValid");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, this.id);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next())
+                return rs.getString("password").equals(getHash(password, rs.getString("salt")));
+        } catch (SQLException e) {
+            log.error("Error checking User`s password: {}", e.getMessage());
+        }
+
+        return false;
     }
 
     public String getProfile(boolean isHtml) {
-        var connectedCommand = CollectionExt.findBy(
-            ServerData.getClients(),
-            (it) -> it.user != null && it.user.id == this.id
-        );
-        var onlineLabel = connectedCommand == null ? "" : " • online";
+        var onlineLabel = ServerData.isOnline(this.id) ? " • online" : "";
 
         var boxSize = 50;
         var trimmedName = StringExt.limit(this.name, boxSize - 6 - onlineLabel.length());
@@ -383,7 +408,7 @@ public class User extends AbstractUser {
         String sql = "SELECT * FROM group_members gm JOIN "
             + "groups g ON gm.group_id=g.id WHERE user_id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection("User.getGroups");
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, id);
@@ -398,7 +423,7 @@ public class User extends AbstractUser {
             }
             return list;
         } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            log.error("Error: {}", e.getMessage());
         }
 
         return null;
@@ -1,31 +1,117 @@
 package server.managers;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.pool.HikariPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.ServerConfig;
 
 public class DatabaseManager {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseManager.class);
+
     public static final String PORT = "5432";
     public static final String USERNAME = "JavaM";
     public static final String PASSWORD = "255";
+    public static final String URL = "jdbc:postgresql://localhost:" + PORT + "/" + USERNAME;
+
+    /**
+     * Максимальное число одновременно открытых соединений с базой по умолчанию.
+     */
+    public static final int POOL_SIZE = 10;
+
+    /**
+     * Сколько раз запрос исполняется до того, как драйвер PostgreSQL
+     * подготовит его на сервере. Подготовленные запросы кешируются драйвером.
+     */
+    public static final int PREPARE_THRESHOLD = 5;
+    public static final int STATEMENT_CACHE_QUERIES = 256;
+    public static final int STATEMENT_CACHE_SIZE_MIB = 5;
 
     private static final HikariConfig config = new HikariConfig();
     private static HikariDataSource ds;
 
     public static void init() {
-        // Подключение
-        config.setJdbcUrl("jdbc:postgresql://localhost:" + PORT + "/" + USERNAME);
-        config.setUsername(USERNAME);
-        config.setPassword(PASSWORD);
+        init(ServerConfig.defaults());
+    }
+
+    /**
+     * Подключается к базе с указанными настройками. Ключи (все необязательные):
+     * <ul>
+     *     <li><code>db.url</code>, <code>db.username</code>, <code>db.password</code>
+     *     - подключение;</li>
+     *     <li><code>db.pool-size</code>, <code>db.min-idle</code> - размер пула;</li>
+     *     <li><code>db.connection-timeout-ms</code>, <code>db.idle-timeout-ms</code>,
+     *     <code>db.max-lifetime-ms</code> - тайм-ауты пула;</li>
+     *     <li><code>db.leak-detection-ms</code> - через сколько предупреждать
+     *     о невозвращенном соединении, 0 - не следить;</li>
+     *     <li><code>db.prepare-threshold</code>, <code>db.statement-cache-queries</code>,
+     *     <code>db.statement-cache-size-mib</code> - кеш подготовленных запросов драйвера;</li>
+     *     <li><code>db.property.*</code> - произвольные свойства драйвера,
+     *     например <code>db.property.sslmode=require</code>.</li>
+     * </ul>
+     * Тайм-ауты по умолчанию - как в HikariCP.
+     */
+    public static void init(ServerConfig settings) {
+        init(
+            settings.getString("db.url", URL),
+            settings.getString("db.username", USERNAME),
+            settings.getString("db.password", PASSWORD),
+            settings
+        );
+    }
+
+    /**
+     * Подключается к произвольной базе, например к H2 в памяти для бенчмарков:
+     * <pre><code>
+     *     DatabaseManager.init("jdbc:h2:mem:bench;MODE=PostgreSQL", "sa", "");
+     * </code></pre>
+     */
+    public static void init(String jdbcUrl, String username, String password) {
+        init(jdbcUrl, username, password, ServerConfig.defaults());
+    }
 
-        // Оптимизация
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+    private static void init(
+        String jdbcUrl, String username, String password, ServerConfig settings
+    ) {
+        // Подключение
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+
+        // Пул
+        config.setMaximumPoolSize(settings.getInt("db.pool-size", POOL_SIZE));
+        var minIdle = settings.getInt("db.min-idle", -1);
+        if (minIdle >= 0)
+            config.setMinimumIdle(minIdle);
+        config.setConnectionTimeout(
+            settings.getLong("db.connection-timeout-ms", config.getConnectionTimeout())
+        );
+        config.setIdleTimeout(settings.getLong("db.idle-timeout-ms", config.getIdleTimeout()));
+        config.setMaxLifetime(settings.getLong("db.max-lifetime-ms", config.getMaxLifetime()));
+        config.setLeakDetectionThreshold(settings.getLong("db.leak-detection-ms", 0));
+
+        // Кеш подготовленных запросов (свойства драйвера PostgreSQL)
+        config.addDataSourceProperty(
+            "prepareThreshold",
+            String.valueOf(settings.getInt("db.prepare-threshold", PREPARE_THRESHOLD))
+        );
+        config.addDataSourceProperty(
+            "preparedStatementCacheQueries",
+            String.valueOf(settings.getInt("db.statement-cache-queries", STATEMENT_CACHE_QUERIES))
+        );
+        config.addDataSourceProperty(
+            "preparedStatementCacheSizeMiB",
+            String.valueOf(
+                settings.getInt("db.statement-cache-size-mib", STATEMENT_CACHE_SIZE_MIB)
+            )
+        );
+        settings.getSection("db.property.").forEach(config::addDataSourceProperty);
 
         try {
             ds = new HikariDataSource(config);
@@ -35,6 +121,12 @@ public class DatabaseManager {
             return;
         }
 
+        var pool = ds.getHikariPoolMXBean();
+        Metrics.gauge("db_pool_active", pool::getActiveConnections);
+        Metrics.gauge("db_pool_idle", pool::getIdleConnections);
+        Metrics.gauge("db_pool_total", pool::getTotalConnections);
+        Metrics.gauge("db_pool_waiting", pool::getThreadsAwaitingConnection);
+
         try {
             initTables();
         } catch (SQLException e) {
@@ -48,6 +140,50 @@ public class DatabaseManager {
         return ds.getConnection();
     }
 
+    /**
+     * Берет соединение из пула и замеряет, сколько оно было занято.
+     * <br>Время ожидания свободного соединения попадает в гистограмму
+     * <code>db_pool_wait_us</code>, а время от получения соединения до его закрытия -
+     * в <code>db_connection_hold_us{query="..."}</code>. Это не задержка самого запроса:
+     * сюда входит и разбор результата, и все, что вызывающий делает, не закрыв соединение.
+     * Пока значение растет, соединения дольше не возвращаются в пул.
+     * <br>Соединение оборачивается в {@link Proxy}, поэтому каждый вызов JDBC
+     * на нем проходит через рефлексию. Для горячих путей без метрик есть {@link #getConnection()}.
+     *
+     * <pre><code>
+     *     try (Connection conn = DatabaseManager.getConnection("User.getUserById")) {
+     *         ...
+     *     }
+     * </code></pre>
+     *
+     * @param query имя запроса для метрик, обычно <code>Класс.метод</code>
+     */
+    public static Connection getConnection(String query) throws SQLException {
+        long start = System.nanoTime();
+        var conn = ds.getConnection();
+        long acquired = System.nanoTime();
+        Metrics.record("db_pool_wait_us", (acquired - start) / 1000);
+
+        var metric = Metrics.name("db_connection_hold_us", "query", query);
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("close") && !conn.isClosed())
+                    Metrics.recordSince(metric, acquired);
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        );
+    }
+
+    public static int getPoolSize() {
+        return config.getMaximumPoolSize();
+    }
+
     public static void close() {
         if (ds != null && !ds.isClosed()) {
             ds.close();
@@ -55,81 +191,11 @@ public class DatabaseManager {
     }
 
     private static void initTables() throws SQLException {
-        String[] tables = {
-                // Таблица пользователей
-            """
-            CREATE TABLE IF NOT EXISTS users
-             (
-                 id SERIAL PRIMARY KEY ,
-                 username VARCHAR(32) NOT NULL UNIQUE ,
-                 name VARCHAR(32) ,
-                 password VARCHAR(256) NOT NULL ,
-                 salt VARCHAR(200) NOT NULL ,
-                 last_online TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-             );
-               \s""",
-                // Таблица друзей пользователей
-            """
-            CREATE TABLE IF NOT EXISTS user_friends (
-                user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
-                friend_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
-                friendship_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP ,
-                PRIMARY KEY (user_id, friend_id) ,
-                CHECK (user_id < friend_id)
-            );
-              \s""",
-                // Таблица групп
-            """
-            CREATE TABLE IF NOT EXISTS groups
-             (
-                 id    SERIAL PRIMARY KEY ,
-                 groupname  VARCHAR(32) NOT NULL ,
-                 name VARCHAR(32) ,
-                 type SMALLINT CHECK (type >= 0 AND type <= 3) NOT NULL ,
-                 owner_id INTEGER NOT NULL REFERENCES users(id)
-             );
-               \s""",
-                // Таблица участников групп
-            """
-            CREATE TABLE IF NOT EXISTS group_members (
-                 group_id INTEGER NOT NULL REFERENCES groups(id) ON DELETE CASCADE ,
-                 user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
-                 is_admin BOOLEAN DEFAULT FALSE ,
-                 joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ,
-                 PRIMARY KEY (group_id, user_id)
-            );
-              \s""",
-                // Таблица сообщений
-            """
-            CREATE TABLE IF NOT EXISTS messages
-            (
-                id SERIAL PRIMARY KEY ,
-                group_id INTEGER NOT NULL REFERENCES groups(id) ON DELETE CASCADE ,
-                content TEXT ,
-                sender_id INTEGER NOT NULL ,
-                sent_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
-            );
-               \s""",
-        };
-
-        try (Connection conn = ds.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            for (String sql : tables) {
-                try {
-                    stmt.execute(sql);
-                } catch (SQLException e) {
-                    // Таблица уже существует, игнорируем
-                    if (!e.getMessage().contains("already exists")) {
-                        throw e;
-                    }
-                }
-            }
-
-            System.out.println("Database tables init successfully");
-
+        try (Connection conn = ds.getConnection()) {
+            Migrations.migrate(conn);
+            log.info("Database tables init successfully");
         } catch (SQLException e) {
-            System.err.println("Error init tables: " + e.getMessage());
+            log.error("Error init tables: {}", e.getMessage());
             throw e;
         }
     }
@@ -0,0 +1,149 @@
+package server.managers;
+
+import utils.IntSet;
+import utils.LruCache;
+import utils.elements.GroupTypes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кеш сведений о группах: имя группы -&gt; id, название, тип, владелец и администраторы.
+ *
+ * <p>Проверки прав ({@link server.elements.Group#hasAdmin}, {@link server.elements.Group#isOwner})
+ * и поиск группы по имени обслуживаются из памяти. Запись загружается из базы при первом
+ * обращении и дальше поддерживается в актуальном состоянии методами
+ * {@link #adminChanged(String, int, boolean)}, {@link #ownerChanged(String, int)},
+ * {@link #renamed(String, String)} и {@link #invalidate(String)}, которые
+ * должны вызываться после каждого изменения таблиц <code>groups</code>
+ * и <code>group_members</code> (поле <code>is_admin</code>).
+ * <br>Отсутствие группы не кешируется, поэтому только что созданная группа сразу находится.
+ * <br>Число хранимых групп ограничено {@link #CAPACITY}.
+ *
+ * @see MembershipCache
+ */
+public class GroupDirectory {
+
+    /**
+     * Максимальное число групп в кеше по умолчанию.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * Запись о группе.
+     *
+     * @param id id группы
+     * @param groupname имя группы
+     * @param name название группы
+     * @param type тип группы, <code>null</code>, если неизвестен
+     * @param owner id владельца
+     * @param admins id администраторов
+     */
+    public record Entry(
+        int id, String groupname, String name, GroupTypes type, int owner, IntSet admins
+    ) {
+        public boolean isAdmin(int userId) {
+            return admins.contains(userId);
+        }
+    }
+
+    private static LruCache<String, Entry> cache = new LruCache<>(CAPACITY);
+
+    private static final Object lock = new Object();
+
+    /**
+     * Увеличивается при каждом изменении. Загрузка, начавшаяся до изменения,
+     * не кладет свой (возможно устаревший) результат в кеш.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * Меняет размер кеша. Кеш при этом очищается.
+     */
+    public static void configure(int capacity) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache = new LruCache<>(capacity);
+        }
+    }
+
+    /**
+     * Возвращает запись о группе, при необходимости загружая ее.
+     *
+     * @param loader загрузка записи из базы. Возвращает <code>null</code>,
+     *               если группы нет или произошла ошибка; такой результат не кешируется.
+     * @return запись, либо <code>null</code>, если группа не найдена
+     */
+    public static Entry get(String groupname, Function<String, Entry> loader) {
+        var entry = cache.get(groupname);
+        if (entry != null)
+            return entry;
+
+        long stamp = version.get();
+        entry = loader.apply(groupname);
+        if (entry == null)
+            return null;
+
+        synchronized (lock) {
+            if (version.get() == stamp)
+                return cache.putIfAbsent(groupname, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Выдает или забирает права администратора. Используется также
+     * при создании группы и при выходе участника из нее.
+     */
+    public static void adminChanged(String groupname, int userId, boolean isAdmin) {
+        update(groupname, (entry) -> new Entry(
+            entry.id, entry.groupname, entry.name, entry.type, entry.owner,
+            isAdmin ? entry.admins.with(userId) : entry.admins.without(userId)
+        ));
+    }
+
+    /**
+     * Меняет владельца группы. Новый владелец становится администратором.
+     */
+    public static void ownerChanged(String groupname, int ownerId) {
+        update(groupname, (entry) -> new Entry(
+            entry.id, entry.groupname, entry.name, entry.type, ownerId,
+            entry.admins.with(ownerId)
+        ));
+    }
+
+    public static void renamed(String groupname, String name) {
+        update(groupname, (entry) -> new Entry(
+            entry.id, entry.groupname, name, entry.type, entry.owner, entry.admins
+        ));
+    }
+
+    /**
+     * Убирает группу из кеша. Используется при удалении группы.
+     */
+    public static void invalidate(String groupname) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.remove(groupname);
+        }
+    }
+
+    private static void update(String groupname, Function<Entry, Entry> action) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.update(groupname, action);
+        }
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static long getHits() {
+        return cache.getHits();
+    }
+
+    public static long getMisses() {
+        return cache.getMisses();
+    }
+}
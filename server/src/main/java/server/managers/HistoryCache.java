@@ -0,0 +1,77 @@
+package server.managers;
+
+import server.elements.MessageTail;
+import utils.LruCache;
+
+/**
+ * Последние сообщения активных групп: id группы -&gt; {@link MessageTail}.
+ *
+ * <p>Буфер группы создается при первой отправке сообщения в нее или при первом
+ * чтении истории и дальше пополняется каждым отправленным сообщением.
+ * Поэтому открытие активного чата не обращается к базе.
+ * <br>Число групп ограничено {@link #CAPACITY}, сообщений в группе - {@link #TAIL_SIZE};
+ * давно не использованные группы вытесняются.
+ *
+ * @see server.elements.Group#getMessagesBefore(int, int)
+ */
+public class HistoryCache {
+
+    /**
+     * Максимальное число групп в кеше по умолчанию.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * Сколько последних сообщений каждой группы хранится по умолчанию.
+     */
+    public static final int TAIL_SIZE = 128;
+
+    private static LruCache<Integer, MessageTail> cache = new LruCache<>(CAPACITY);
+    private static int tailSize = TAIL_SIZE;
+
+    private static final Object lock = new Object();
+
+    /**
+     * Меняет размер кеша и буферов. Кеш при этом очищается.
+     */
+    public static void configure(int capacity, int tailSize) {
+        synchronized (lock) {
+            cache = new LruCache<>(capacity);
+            HistoryCache.tailSize = tailSize;
+        }
+    }
+
+    /**
+     * Возвращает буфер группы, создавая пустой при необходимости.
+     */
+    public static MessageTail get(int groupId) {
+        var tail = cache.get(groupId);
+        if (tail != null)
+            return tail;
+
+        synchronized (lock) {
+            return cache.putIfAbsent(groupId, new MessageTail(tailSize));
+        }
+    }
+
+    /**
+     * Убирает группу из кеша. Используется при удалении группы.
+     */
+    public static void invalidate(int groupId) {
+        synchronized (lock) {
+            cache.remove(groupId);
+        }
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static long getHits() {
+        return cache.getHits();
+    }
+
+    public static long getMisses() {
+        return cache.getMisses();
+    }
+}
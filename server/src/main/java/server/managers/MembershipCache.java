@@ -0,0 +1,106 @@
+package server.managers;
+
+import utils.IntSet;
+import utils.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Кеш участников групп: id группы -> множество id участников.
+ *
+ * <p>Список участников загружается из базы при первом обращении и дальше
+ * поддерживается в актуальном состоянии методами {@link #memberAdded(int, int)},
+ * {@link #memberRemoved(int, int)} и {@link #invalidate(int)}, которые
+ * должны вызываться после каждого изменения таблицы <code>group_members</code>.
+ * Благодаря этому рассылка сообщения в группу не обращается к базе.
+ * <br>Число хранимых групп ограничено {@link #CAPACITY}; давно не использованные
+ * группы вытесняются и при следующем обращении загружаются заново.
+ */
+public class MembershipCache {
+
+    /**
+     * Максимальное число групп в кеше по умолчанию.
+     */
+    public static final int CAPACITY = 1024;
+
+    private static LruCache<Integer, IntSet> cache = new LruCache<>(CAPACITY);
+
+    private static final Object lock = new Object();
+
+    /**
+     * Увеличивается при каждом изменении. Загрузка, начавшаяся до изменения,
+     * не кладет свой (возможно устаревший) результат в кеш.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * Меняет размер кеша. Кеш при этом очищается.
+     */
+    public static void configure(int capacity) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache = new LruCache<>(capacity);
+        }
+    }
+
+    /**
+     * Возвращает участников группы, при необходимости загружая их.
+     *
+     * @param loader загрузка участников из базы. Возвращает <code>null</code> при ошибке,
+     *               такой результат не кешируется.
+     * @return участники группы, либо <code>null</code>, если загрузить их не удалось
+     */
+    public static IntSet get(int groupId, IntFunction<IntSet> loader) {
+        var members = cache.get(groupId);
+        if (members != null)
+            return members;
+
+        long stamp = version.get();
+        members = loader.apply(groupId);
+        if (members == null)
+            return null;
+
+        synchronized (lock) {
+            if (version.get() == stamp)
+                return cache.putIfAbsent(groupId, members);
+        }
+        return members;
+    }
+
+    public static void memberAdded(int groupId, int userId) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.update(groupId, (members) -> members.with(userId));
+        }
+    }
+
+    public static void memberRemoved(int groupId, int userId) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.update(groupId, (members) -> members.without(userId));
+        }
+    }
+
+    /**
+     * Убирает группу из кеша. Используется при удалении группы.
+     */
+    public static void invalidate(int groupId) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.remove(groupId);
+        }
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static long getHits() {
+        return cache.getHits();
+    }
+
+    public static long getMisses() {
+        return cache.getMisses();
+    }
+}
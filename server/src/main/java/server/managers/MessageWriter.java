@@ -0,0 +1,455 @@
+package server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.elements.Message;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Отложенная запись сообщений в базу.
+ *
+ * <p>Сообщения ставятся в очередь и записываются отдельным потоком пачками
+ * заданного размера (по умолчанию {@link #MAX_BATCH_SIZE}). Пачка отправляется,
+ * как только набирается целиком или спустя заданную задержку после первого
+ * сообщения в ней (по умолчанию {@link #MAX_DELAY_MS} мс).
+ * Благодаря этому отправитель не ждет базу, а при большом потоке сообщений
+ * одна транзакция заменяет десятки отдельных вставок.
+ *
+ * <p>Если база недоступна (нет соединения, истекло ожидание пула), пачка не теряется:
+ * поток записи повторяет ее с нарастающей паузой до {@link #MAX_RETRY_DELAY_MS} мс,
+ * а новые сообщения копятся в очереди. Отбрасываются только сообщения, которые база
+ * отвергла по отдельности, например, для удаленной группы.
+ * <br>Очередь ограничена (по умолчанию {@link #MAX_QUEUE_SIZE}): когда она заполнена,
+ * {@link #enqueue} не принимает сообщение, и отправителю сообщается, что оно не отправлено.
+ *
+ * <p>Время отправки фиксируется в момент постановки в очередь, так что порядок
+ * сообщений в базе не зависит от задержки записи.
+ * <br>Id сообщения выдается заранее методом {@link #nextId()}, еще до записи,
+ * чтобы отправленное сообщение сразу можно было показать в истории и сослаться на него.
+ * Id берутся блоками из последовательности <code>message_ids</code>, которая служит
+ * и значением по умолчанию столбца <code>messages.id</code>, поэтому они не пересекаются
+ * с id, выданными базой или другим сервером.
+ * <br>При остановке сервера должен быть вызван {@link #close()}: он дожидается
+ * записи всех сообщений из очереди.
+ *
+ * <pre><code>
+ *     MessageWriter.start(
+ *         MessageWriter.MAX_BATCH_SIZE, MessageWriter.MAX_DELAY_MS, MessageWriter.MAX_QUEUE_SIZE
+ *     );
+ *     ...
+ *     if (!MessageWriter.enqueue(groupId, message))
+ *         // сообщение не отправлено
+ *     ...
+ *     MessageWriter.close();
+ * </code></pre>
+ */
+public class MessageWriter {
+    private static final Logger log = LoggerFactory.getLogger(MessageWriter.class);
+
+    /**
+     * Максимальное число сообщений в одной пачке по умолчанию.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Максимальное время, которое сообщение может ждать записи, по умолчанию, в миллисекундах.
+     */
+    public static final long MAX_DELAY_MS = 50;
+
+    /**
+     * Максимальное число сообщений, ожидающих записи, по умолчанию.
+     */
+    public static final int MAX_QUEUE_SIZE = 100_000;
+
+    /**
+     * Первая и наибольшая паузы перед повторной записью пачки, в миллисекундах.
+     */
+    public static final long RETRY_DELAY_MS = 100;
+    public static final long MAX_RETRY_DELAY_MS = 5000;
+
+    /**
+     * Сколько id дает одно обращение к последовательности <code>message_ids</code>.
+     * Равен ее шагу (<code>INCREMENT BY</code>) из миграции 4, поэтому не может быть изменен.
+     */
+    public static final int ID_BLOCK_SIZE = 64;
+
+    private static final String SQL = "INSERT INTO messages"
+        + " (id, group_id, content, sender_id, sent_time) VALUES (?, ?, ?, ?, ?)";
+
+    private record Pending(int id, int groupId, String content, int senderId, Timestamp time) {}
+
+    /**
+     * Следующий свободный id и последний id текущего блока. 0 - блока еще нет.
+     */
+    private static int nextId = 0;
+    private static int blockEnd = 0;
+    private static boolean isSequenceChecked = false;
+    private static final Object idLock = new Object();
+
+    private static volatile LinkedBlockingQueue<Pending> queue =
+        new LinkedBlockingQueue<>(MAX_QUEUE_SIZE);
+
+    private static volatile Thread writer = null;
+    private static volatile boolean isClosed = false;
+
+    /**
+     * Прерывает паузу перед повторной записью при остановке.
+     */
+    private static volatile CountDownLatch closing = new CountDownLatch(0);
+
+    /**
+     * Пачка, которую поток записи не смог записать до остановки. Дописывается в {@link #close()}.
+     */
+    private static List<Pending> unwritten = List.of();
+
+    /**
+     * Проверка "поток записи работает" и постановка в очередь идут под общей блокировкой,
+     * а остановка - под исключительной. Так сообщение не может попасть в очередь
+     * после того, как {@link #close()} ее опустошил.
+     */
+    private static final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    private static volatile int batchSize = MAX_BATCH_SIZE;
+    private static volatile long maxDelayMs = MAX_DELAY_MS;
+
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong totalFlushNanos = new AtomicLong();
+    private static final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * Запускает поток записи. Повторный вызов ничего не делает.
+     *
+     * @param batchSize  максимальное число сообщений в одной пачке
+     * @param maxDelayMs максимальное время ожидания записи в миллисекундах
+     * @param queueSize  максимальное число сообщений, ожидающих записи
+     */
+    public static synchronized void start(int batchSize, long maxDelayMs, int queueSize) {
+        if (writer != null)
+            return;
+        MessageWriter.batchSize = Math.max(1, batchSize);
+        MessageWriter.maxDelayMs = Math.max(1, maxDelayMs);
+
+        var thread = new Thread(MessageWriter::writeLoop, "message-writer");
+        stateLock.writeLock().lock();
+        try {
+            isClosed = false;
+            queue = new LinkedBlockingQueue<>(Math.max(1, queueSize));
+            closing = new CountDownLatch(1);
+            writer = thread;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        thread.start();
+    }
+
+    /**
+     * Выдает id для нового сообщения.
+     * <br>База опрашивается один раз на {@link #ID_BLOCK_SIZE} сообщений.
+     *
+     * @return id, либо 0, если база недоступна. Тогда сообщение не может быть
+     *         сохранено, и следующий вызов снова попробует получить блок.
+     */
+    public static int nextId() {
+        synchronized (idLock) {
+            if (nextId == 0 || nextId > blockEnd) {
+                nextId = reserveBlock();
+                blockEnd = nextId + ID_BLOCK_SIZE - 1;
+                if (nextId == 0)
+                    return 0;
+            }
+            return nextId++;
+        }
+    }
+
+    /**
+     * @return первый id нового блока, либо 0, если произошла ошибка
+     */
+    private static int reserveBlock() {
+        try (Connection conn = DatabaseManager.getConnection("MessageWriter.reserveBlock")) {
+            long start = queryLong(conn, "SELECT nextval('message_ids')");
+
+            // Прежде сервер выдавал id сам, не сдвигая последовательность, поэтому
+            // на таких базах она может отставать от занятых id. Проверяется один раз.
+            if (!isSequenceChecked) {
+                long max = queryLong(conn, "SELECT COALESCE(MAX(id), 0) FROM messages");
+                if (start <= max) {
+                    log.warn("Message id sequence is behind existing messages, moving it");
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("ALTER SEQUENCE message_ids RESTART WITH " + (max + 1));
+                    }
+                    start = queryLong(conn, "SELECT nextval('message_ids')");
+                }
+                isSequenceChecked = true;
+            }
+            return Math.toIntExact(start);
+        } catch (SQLException | ArithmeticException e) {
+            log.error("Error reserving message ids: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Ставит сообщение в очередь на запись. Сообщение должно иметь id, см. {@link #nextId()}.
+     * <br>Если поток записи не запущен или уже остановлен,
+     * сообщение записывается сразу же в текущем потоке.
+     *
+     * @return false, если сообщение не принято: очередь заполнена, пока база недоступна,
+     *         или не удалась запись в текущем потоке
+     */
+    public static boolean enqueue(int groupId, Message message) {
+        var time = message.getTime() == null
+            ? new Timestamp(System.currentTimeMillis())
+            : message.getTime();
+        var pending = new Pending(
+            message.getId(), groupId, message.getContent(), message.getSenderId(), time
+        );
+
+        boolean isQueued;
+        stateLock.readLock().lock();
+        try {
+            isQueued = writer != null && !isClosed;
+            if (isQueued)
+                return queue.offer(pending);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        if (write(List.of(pending)).isEmpty())
+            return true;
+        failed.incrementAndGet();
+        return false;
+    }
+
+    private static void writeLoop() {
+        var batch = new ArrayList<Pending>(batchSize);
+        long retryDelayMs = RETRY_DELAY_MS;
+        try {
+            while (!isClosed) {
+                if (batch.isEmpty() && !fill(batch))
+                    continue;
+
+                var rest = write(batch);
+                batch.clear();
+                if (rest.isEmpty()) {
+                    retryDelayMs = RETRY_DELAY_MS;
+                    continue;
+                }
+
+                // База недоступна: та же пачка повторяется, пока не будет записана
+                batch.addAll(rest);
+                log.warn("Retrying {} messages in {} ms", batch.size(), retryDelayMs);
+                if (closing.await(retryDelayMs, TimeUnit.MILLISECONDS))
+                    break;
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+            }
+        } catch (InterruptedException ignored) {
+        }
+        // Будет записана в close() раньше остатка очереди
+        unwritten = batch;
+    }
+
+    /**
+     * Набирает пачку из очереди: ждет первое сообщение, а затем
+     * не дольше заданной задержки добирает остальные.
+     *
+     * @return false, если за время ожидания сообщений не было
+     */
+    private static boolean fill(List<Pending> batch) throws InterruptedException {
+        var first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return false;
+        batch.add(first);
+
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        while (batch.size() < batchSize) {
+            var left = deadline - System.nanoTime();
+            if (left <= 0)
+                break;
+            var next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null)
+                break;
+            batch.add(next);
+        }
+        return true;
+    }
+
+    /**
+     * Записывает пачку одной транзакцией. Если пачка не прошла целиком
+     * (например, группа была удалена), сообщения записываются по одному,
+     * чтобы из-за одного сообщения не потерять остальные.
+     *
+     * @return сообщения, которые не записаны из-за недоступности базы и должны
+     *         быть записаны позже. Отвергнутые базой сообщения сюда не входят.
+     */
+    private static List<Pending> write(List<Pending> batch) {
+        var start = System.nanoTime();
+        List<Pending> rest;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL)) {
+
+            conn.setAutoCommit(false);
+            try {
+                for (var pending : batch) {
+                    bind(stmt, pending);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                written.addAndGet(batch.size());
+                rest = List.of();
+            } catch (BatchUpdateException e) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+                rest = writeOneByOne(conn, stmt, batch);
+            }
+
+        } catch (SQLException e) {
+            log.error("Error writing messages: {}", e.getMessage());
+            rest = List.copyOf(batch);
+        }
+
+        var elapsed = System.nanoTime() - start;
+        batches.incrementAndGet();
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        return rest;
+    }
+
+    /**
+     * @return сообщения, не записанные из-за потери соединения
+     */
+    private static List<Pending> writeOneByOne(
+        Connection conn,
+        PreparedStatement stmt,
+        List<Pending> batch
+    ) {
+        for (int i = 0; i < batch.size(); i++) {
+            var pending = batch.get(i);
+            try {
+                bind(stmt, pending);
+                stmt.executeUpdate();
+                written.incrementAndGet();
+            } catch (SQLException e) {
+                if (!isValid(conn))
+                    return List.copyOf(batch.subList(i, batch.size()));
+                log.error("Error adding Message: {}", e.getMessage());
+                failed.incrementAndGet();
+            }
+        }
+        return List.of();
+    }
+
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Pending pending) throws SQLException {
+        stmt.setInt(1, pending.id());
+        stmt.setInt(2, pending.groupId());
+        stmt.setString(3, pending.content());
+        stmt.setInt(4, pending.senderId());
+        stmt.setTimestamp(5, pending.time());
+    }
+
+    /**
+     * Останавливает поток записи и записывает все, что осталось в очереди.
+     * Возвращается только после окончания записи.
+     * Сообщения, отправленные после вызова, записываются сразу же в потоке отправителя.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если запись не запущена.
+     */
+    public static synchronized void close() {
+        Thread thread;
+        stateLock.writeLock().lock();
+        try {
+            isClosed = true;
+            thread = writer;
+            writer = null;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        closing.countDown();
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        var rest = new ArrayList<>(unwritten);
+        unwritten = List.of();
+        queue.drainTo(rest);
+        int lost = 0;
+        for (int i = 0; i < rest.size(); i += batchSize)
+            lost += write(rest.subList(i, Math.min(rest.size(), i + batchSize))).size();
+        if (lost > 0) {
+            log.error("{} messages were not written: database is unavailable", lost);
+            failed.addAndGet(lost);
+        }
+    }
+
+    /**
+     * Число сообщений, ожидающих записи.
+     */
+    public static int getQueueDepth() {
+        return queue.size();
+    }
+
+    public static long getWrittenCount() {
+        return written.get();
+    }
+
+    public static long getFailedCount() {
+        return failed.get();
+    }
+
+    public static long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Среднее время записи одной пачки в миллисекундах.
+     */
+    public static double getAverageFlushMs() {
+        var count = batches.get();
+        return count == 0 ? 0 : totalFlushNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Наибольшее время записи одной пачки в миллисекундах.
+     */
+    public static double getMaxFlushMs() {
+        return maxFlushNanos.get() / 1e6;
+    }
+}
@@ -0,0 +1,146 @@
+package server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Реестр метрик сервера: счетчики, измерители и гистограммы задержек.
+ *
+ * <p>Метрика создается при первом обращении по имени, заранее регистрировать
+ * ничего не нужно. Имя может содержать метку в стиле Prometheus, например
+ * <code>commands_total{command="open"}</code>, см. {@link #name(String, String, String)}.
+ * Значения меток должны браться из ограниченного набора (имена команд, методов),
+ * а не из ввода пользователя: каждая метка - отдельная метрика в памяти.
+ * <br>Обновление метрики не блокирует поток и безопасно на горячем пути.
+ *
+ * <p>Все метрики выводятся командой <code>/metrics</code> в консоли сервера
+ * и по HTTP, см. {@link #render()}.
+ *
+ * <pre><code>
+ *     Metrics.increment("connections_opened_total");
+ *     Metrics.gauge("connections_active", () -> ServerData.getClients().size());
+ *
+ *     long start = System.nanoTime();
+ *     ...
+ *     Metrics.recordSince(Metrics.name("command_latency_us", "command", "open"), start);
+ * </code></pre>
+ */
+public class Metrics {
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Составляет имя метрики с меткой.
+     * <br>Пример: <code>name("db_connection_hold_us", "query", "User.logIn")</code> -
+     * <code>db_connection_hold_us{query="User.logIn"}</code>
+     */
+    public static String name(String base, String label, String value) {
+        return base + '{' + label + "=\"" + value + "\"}";
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long amount) {
+        counters.computeIfAbsent(name, (key) -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Регистрирует измеритель: значение вычисляется в момент вывода метрик.
+     * Повторная регистрация с тем же именем заменяет прежний измеритель.
+     */
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Записывает значение в гистограмму. Гистограммы хранят все значения
+     * с момента запуска сервера.
+     *
+     * @param value значение, обычно задержка в микросекундах
+     */
+    public static void record(String name, long value) {
+        histograms.computeIfAbsent(name, (key) -> new LatencyHistogram()).record(value);
+    }
+
+    /**
+     * Записывает в гистограмму время, прошедшее с момента <code>startNanos</code>,
+     * в микросекундах.
+     *
+     * @param startNanos момент начала по {@link System#nanoTime()}
+     */
+    public static void recordSince(String name, long startNanos) {
+        record(name, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public static long getCounter(String name) {
+        var counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public static LatencyHistogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * Выводит все метрики в текстовом формате Prometheus, по одной на строку,
+     * в алфавитном порядке. Для гистограмм выводятся число значений,
+     * перцентили и максимум:
+     * <pre><code>
+     *     commands_total{command="open"} 12
+     *     command_latency_us_count{command="open"} 12
+     *     command_latency_us{command="open",quantile="0.99"} 840
+     *     command_latency_us_max{command="open"} 912
+     * </code></pre>
+     */
+    public static String render() {
+        var lines = new TreeMap<String, Long>();
+        counters.forEach((name, counter) -> lines.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> {
+            try {
+                lines.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                log.warn("Error reading gauge {}: {}", name, e.getMessage());
+            }
+        });
+        histograms.forEach((name, histogram) -> {
+            lines.put(withSuffix(name, "_count"), histogram.getCount());
+            lines.put(withSuffix(name, "_max"), histogram.getMax());
+            for (var quantile : QUANTILES)
+                lines.put(
+                    withLabel(name, "quantile", String.valueOf(quantile)),
+                    histogram.getPercentile(quantile * 100)
+                );
+        });
+
+        var result = new StringBuilder();
+        lines.forEach((name, value) -> result.append(name).append(' ').append(value).append('\n'));
+        return result.toString();
+    }
+
+    private static String withSuffix(String name, String suffix) {
+        var labels = name.indexOf('{');
+        if (labels == -1)
+            return name + suffix;
+        return name.substring(0, labels) + suffix + name.substring(labels);
+    }
+
+    private static String withLabel(String name, String label, String value) {
+        if (name.indexOf('{') == -1)
+            return name(name, label, value);
+        return name.substring(0, name.length() - 1) + ',' + label + "=\"" + value + "\"}";
+    }
+}
@@ -0,0 +1,218 @@
+package server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Версионированные изменения схемы базы.
+ *
+ * <p>Номер последнего примененного изменения хранится в таблице
+ * <code>schema_version</code>. При запуске применяются только изменения
+ * с большим номером, каждое - в своей транзакции, поэтому схему можно менять,
+ * не удаляя данные.
+ * <br>Чтобы изменить схему, добавьте в конец {@link #MIGRATIONS} новое изменение
+ * со следующим номером. Уже добавленные изменения редактировать нельзя:
+ * на существующих базах они не будут применены повторно.
+ *
+ * <pre><code>
+ *     try (Connection conn = DatabaseManager.getConnection()) {
+ *         Migrations.migrate(conn);
+ *     }
+ * </code></pre>
+ */
+public class Migrations {
+    private static final Logger log = LoggerFactory.getLogger(Migrations.class);
+
+    /**
+     * Одно изменение схемы.
+     *
+     * @param version номер изменения, строго больше номера предыдущего
+     * @param description краткое описание, сохраняется в <code>schema_version</code>
+     * @param statements SQL-запросы, исполняемые по порядку
+     */
+    public record Migration(int version, String description, String... statements) {}
+
+    public static final List<Migration> MIGRATIONS = List.of(
+        // Изначальная схема. На базах, созданных до появления миграций,
+        // таблицы уже есть, и это изменение лишь отмечается как примененное.
+        new Migration(1, "initial schema",
+            """
+            CREATE TABLE IF NOT EXISTS users
+            (
+                id SERIAL PRIMARY KEY ,
+                username VARCHAR(32) NOT NULL UNIQUE ,
+                name VARCHAR(32) ,
+                password VARCHAR(256) NOT NULL ,
+                salt VARCHAR(200) NOT NULL ,
+                last_online TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS user_friends
+            (
+                user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
+                friend_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
+                friendship_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP ,
+                PRIMARY KEY (user_id, friend_id) ,
+                CHECK (user_id < friend_id)
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS groups
+            (
+                id SERIAL PRIMARY KEY ,
+                groupname VARCHAR(32) NOT NULL ,
+                name VARCHAR(32) ,
+                type SMALLINT CHECK (type >= 0 AND type <= 3) NOT NULL ,
+                owner_id INTEGER NOT NULL REFERENCES users(id)
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS group_members
+            (
+                group_id INTEGER NOT NULL REFERENCES groups(id) ON DELETE CASCADE ,
+                user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
+                is_admin BOOLEAN DEFAULT FALSE ,
+                joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ,
+                PRIMARY KEY (group_id, user_id)
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS messages
+            (
+                id SERIAL PRIMARY KEY ,
+                group_id INTEGER NOT NULL REFERENCES groups(id) ON DELETE CASCADE ,
+                content TEXT ,
+                sender_id INTEGER NOT NULL ,
+                sent_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+            )"""
+        ),
+        new Migration(2, "lookup indexes",
+            // Постраничная загрузка истории
+            "CREATE INDEX IF NOT EXISTS messages_group_id_id_idx ON messages (group_id, id)",
+            // Раньше groupname проверялся отдельно от вставки, и в старых базах
+            // могут быть группы с одинаковым groupname. Самая старая сохраняет имя,
+            // остальные получают суффикс _<id>. На базах, где изменение уже
+            // применено, дубликатов нет, поэтому этот запрос добавлен сюда.
+            """
+            UPDATE groups
+            SET groupname = LEFT(groupname, 31 - LENGTH(CAST(id AS VARCHAR)))
+                || '_' || CAST(id AS VARCHAR)
+            WHERE id NOT IN (SELECT MIN(id) FROM groups GROUP BY groupname)""",
+            // groupExists, getGroupByName
+            "CREATE UNIQUE INDEX IF NOT EXISTS groups_groupname_idx ON groups (groupname)",
+            // Группы пользователя
+            "CREATE INDEX IF NOT EXISTS group_members_user_id_idx ON group_members (user_id)"
+        ),
+        // Позиции прочтения, см. ReadTracker
+        new Migration(3, "read positions",
+            """
+            CREATE TABLE IF NOT EXISTS group_reads
+            (
+                group_id INTEGER NOT NULL REFERENCES groups(id) ON DELETE CASCADE ,
+                user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE ,
+                last_read_id INTEGER NOT NULL DEFAULT 0 ,
+                unread INTEGER NOT NULL DEFAULT 0 ,
+                PRIMARY KEY (group_id, user_id)
+            )"""
+        ),
+        // Сервер берет id сообщений блоками из той же последовательности,
+        // что и значение по умолчанию столбца, см. MessageWriter#nextId().
+        // Шаг последовательности равен MessageWriter.ID_BLOCK_SIZE.
+        // В H2 столбец остается identity, и значение по умолчанию не меняется.
+        new Migration(4, "message id blocks",
+            "CREATE SEQUENCE IF NOT EXISTS message_ids INCREMENT BY 64",
+            "ALTER TABLE messages ALTER COLUMN id SET DEFAULT nextval('message_ids')"
+        )
+    );
+
+    private static final String CREATE_VERSION_TABLE = """
+        CREATE TABLE IF NOT EXISTS schema_version
+        (
+            version INTEGER PRIMARY KEY ,
+            description VARCHAR(256) ,
+            applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )""";
+
+    /**
+     * Применяет все недостающие изменения из {@link #MIGRATIONS}.
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        migrate(conn, MIGRATIONS);
+    }
+
+    /**
+     * Применяет недостающие изменения из указанного списка.
+     * <br>Если изменение не удалось, его транзакция откатывается,
+     * а следующие изменения не применяются.
+     *
+     * @return номер версии схемы после применения
+     * @throws SQLException если одно из изменений не удалось применить
+     */
+    public static int migrate(Connection conn, List<Migration> migrations) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_VERSION_TABLE);
+        }
+
+        int current = getVersion(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try {
+            for (var migration : migrations) {
+                if (migration.version() <= current)
+                    continue;
+
+                try {
+                    apply(conn, migration);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException(
+                        "Migration " + migration.version() + " (" + migration.description()
+                            + ") failed: " + e.getMessage(), e
+                    );
+                }
+                current = migration.version();
+                log.info("Applied migration {}: {}", current, migration.description());
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return current;
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (var sql : migration.statements()) {
+                stmt.execute(sql);
+                int changed = stmt.getUpdateCount();
+                if (changed > 0)
+                    log.warn("Migration {} changed {} rows: {}", migration.version(), changed, sql);
+            }
+        }
+
+        String sql = "INSERT INTO schema_version (version, description) VALUES (?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, migration.version());
+            stmt.setString(2, migration.description());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Возвращает номер последнего примененного изменения, либо 0,
+     * если ни одно изменение еще не применялось.
+     */
+    public static int getVersion(Connection conn) throws SQLException {
+        String sql = "SELECT COALESCE(MAX(version), 0) FROM schema_version";
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.elements.Group;
+import server.elements.PresenceChanges;
+import server.elements.ServerData;
+import utils.network.Frame;
+import utils.network.Payload;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Статусы пользователей: в сети или нет и время последнего появления.
+ *
+ * <p>Статус определяется сессиями {@link ServerData}: пользователь появляется в сети
+ * с первой сессией и уходит с последней, см. {@link #online(int)} и {@link #offline(int)}.
+ * <br>Изменения не рассылаются и не пишутся в базу сразу, а копятся и раз в
+ * {@link #FLUSH_INTERVAL_MS} мс обрабатываются отдельным потоком:
+ * <ul>
+ *     <li>каждому другу и участнику общих групп, который сейчас в сети, уходит
+ *     одна пачка изменений: кадры {@link utils.elements.FrameTypes#PRESENCE}
+ *     на двоичном протоколе, строки <code>/notify presence</code> - на текстовом;</li>
+ *     <li>вход и выход за один период схлопываются: если статус вернулся к прежнему,
+ *     ничего не рассылается, см. {@link PresenceChanges};</li>
+ *     <li>друзья всех изменившихся пользователей и их группы находятся одним запросом,
+ *     а участники групп берутся из {@link MembershipCache};</li>
+ *     <li>время последнего появления (<code>users.last_online</code>) записывается
+ *     одной пачкой, по одной строке на пользователя.</li>
+ * </ul>
+ * При остановке сервера должен быть вызван {@link #close()}: он записывает
+ * последние отметки времени.
+ *
+ * <pre><code>
+ *     PresenceManager.start(PresenceManager.FLUSH_INTERVAL_MS);
+ *     ...
+ *     PresenceManager.close();
+ * </code></pre>
+ */
+public class PresenceManager {
+    private static final Logger log = LoggerFactory.getLogger(PresenceManager.class);
+
+    /**
+     * Период рассылки и записи изменений по умолчанию, в миллисекундах.
+     */
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static final String UPDATE_SQL = "UPDATE users SET last_online = ? WHERE id = ?";
+
+    /**
+     * Группы и друзья сразу нескольких пользователей: строки
+     * (пользователь, группа, -1) и (пользователь, -1, друг).
+     */
+    private static final String CONTACTS_SQL = """
+        SELECT user_id, group_id, -1 AS friend_id FROM group_members WHERE user_id = ANY(?)
+        UNION ALL SELECT user_id, -1, friend_id FROM user_friends WHERE user_id = ANY(?)
+        UNION ALL SELECT friend_id, -1, user_id FROM user_friends WHERE friend_id = ANY(?)""";
+
+    private static final PresenceChanges pending = new PresenceChanges();
+
+    /**
+     * Время последнего появления, еще не записанное в базу.
+     */
+    private static final ConcurrentHashMap<Integer, Long> lastSeen = new ConcurrentHashMap<>();
+
+    private static Thread flusher = null;
+    private static volatile boolean isClosed = false;
+
+    private static final AtomicLong pushed = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+
+    /**
+     * Запускает поток рассылки. Повторный вызов ничего не делает.
+     *
+     * @param intervalMs период рассылки и записи в миллисекундах
+     */
+    public static synchronized void start(long intervalMs) {
+        if (flusher != null)
+            return;
+        isClosed = false;
+        flusher = new Thread(() -> flushLoop(intervalMs), "presence");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Пользователь появился в сети: открыта его первая сессия.
+     */
+    public static void online(int userId) {
+        changed(userId, true);
+    }
+
+    /**
+     * Пользователь ушел из сети: закрыта его последняя сессия.
+     */
+    public static void offline(int userId) {
+        changed(userId, false);
+    }
+
+    private static void changed(int userId, boolean isOnline) {
+        var time = System.currentTimeMillis();
+        pending.changed(userId, isOnline, time);
+        lastSeen.put(userId, time);
+        Metrics.increment("presence_changes_total");
+    }
+
+    private static void flushLoop(long intervalMs) {
+        while (!isClosed) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                // Отметки времени будут записаны в close()
+                return;
+            }
+            try {
+                publish();
+            } catch (RuntimeException e) {
+                log.error("Error sending presence: {}", e.getMessage());
+            }
+            writeLastSeen();
+        }
+    }
+
+    /**
+     * Рассылает изменения, накопленные с прошлого вызова.
+     */
+    private static synchronized void publish() {
+        var changes = pending.take();
+        if (changes.isEmpty())
+            return;
+
+        var userIds = new ArrayList<Integer>(changes.size());
+        for (var presence : changes)
+            userIds.add(presence.userId());
+        var batches = PresenceChanges.byRecipient(
+            changes, queryContacts(userIds), ServerData::isOnline
+        );
+
+        batches.forEach((recipient, batch) -> {
+            var payload = Payload.of(encodeLines(batch), () -> encodeFrames(batch));
+            for (var client : ServerData.findClients(recipient)) {
+                try {
+                    client.send(payload);
+                } catch (IllegalStateException e) {
+                    // Клиент отключился во время рассылки
+                }
+            }
+        });
+        pushed.addAndGet(changes.size());
+    }
+
+    /**
+     * Склеивает кадры пачки в один буфер, чтобы отправить их одной записью.
+     */
+    private static ByteBuffer encodeFrames(List<Frame.Presence> batch) {
+        var encoded = new ArrayList<ByteBuffer>(batch.size());
+        int size = 0;
+        for (var presence : batch) {
+            var frame = Frame.presence(presence);
+            encoded.add(frame);
+            size += frame.remaining();
+        }
+
+        var buffer = ByteBuffer.allocate(size);
+        encoded.forEach(buffer::put);
+        return buffer.flip();
+    }
+
+    private static String encodeLines(List<Frame.Presence> batch) {
+        var text = new StringBuilder();
+        for (var presence : batch) {
+            text.append("/notify presence ")
+                .append(presence.userId())
+                .append(presence.isOnline() ? " online " : " offline ")
+                .append(presence.lastSeen())
+                .append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Находит контакты сразу всех пользователей одним запросом.
+     *
+     * @return id пользователя -&gt; id его друзей и участников его групп,
+     *         в том числе его самого
+     */
+    private static Map<Integer, Set<Integer>> queryContacts(List<Integer> userIds) {
+        var contacts = new HashMap<Integer, Set<Integer>>();
+        var groups = new HashMap<Integer, List<Integer>>();
+
+        try (Connection conn = DatabaseManager.getConnection("PresenceManager.queryContacts");
+             PreparedStatement stmt = conn.prepareStatement(CONTACTS_SQL)) {
+
+            var ids = conn.createArrayOf("integer", userIds.toArray());
+            stmt.setArray(1, ids);
+            stmt.setArray(2, ids);
+            stmt.setArray(3, ids);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                int userId = rs.getInt("user_id");
+                int groupId = rs.getInt("group_id");
+                if (groupId != -1)
+                    groups.computeIfAbsent(userId, (k) -> new ArrayList<>()).add(groupId);
+                else
+                    contacts.computeIfAbsent(userId, (k) -> new HashSet<>())
+                        .add(rs.getInt("friend_id"));
+            }
+        } catch (SQLException e) {
+            log.error("Error getting contacts: {}", e.getMessage());
+            return contacts;
+        }
+
+        // Участники групп - из кеша, уже после возврата соединения в пул
+        groups.forEach((userId, groupIds) -> {
+            var userContacts = contacts.computeIfAbsent(userId, (k) -> new HashSet<>());
+            for (int groupId : groupIds) {
+                var members = Group.getMembersId(groupId);
+                if (members == null)
+                    continue;
+                for (int i = 0; i < members.size(); i++)
+                    userContacts.add(members.get(i));
+            }
+        });
+        return contacts;
+    }
+
+    /**
+     * Записывает накопленные отметки времени одной пачкой.
+     */
+    private static synchronized void writeLastSeen() {
+        if (lastSeen.isEmpty())
+            return;
+
+        var batch = new HashMap<Integer, Long>();
+        for (var userId : List.copyOf(lastSeen.keySet())) {
+            var time = lastSeen.remove(userId);
+            if (time != null)
+                batch.put(userId, time);
+        }
+
+        try (Connection conn = DatabaseManager.getConnection("PresenceManager.writeLastSeen");
+             PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+
+            conn.setAutoCommit(false);
+            for (var entry : batch.entrySet()) {
+                stmt.setTimestamp(1, new Timestamp(entry.getValue()));
+                stmt.setInt(2, entry.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+            written.addAndGet(batch.size());
+        } catch (SQLException e) {
+            log.error("Error updating last online: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Останавливает поток рассылки и записывает последние отметки времени.
+     * Неразосланные изменения отбрасываются: сервер все равно останавливается.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если рассылка не запущена.
+     */
+    public static synchronized void close() {
+        isClosed = true;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher = null;
+        }
+        writeLastSeen();
+    }
+
+    /**
+     * Число пользователей, изменения статуса которых ждут рассылки.
+     */
+    public static int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Число разосланных изменений статуса (без учета числа получателей).
+     */
+    public static long getPushedCount() {
+        return pushed.get();
+    }
+
+    public static long getWrittenCount() {
+        return written.get();
+    }
+}
@@ -0,0 +1,355 @@
+package server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.elements.GroupReads;
+import utils.LruCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Позиции прочтения и счетчики непрочитанных сообщений: id группы -&gt; {@link GroupReads}.
+ *
+ * <p>Позиции группы загружаются из таблицы <code>group_reads</code> одним запросом
+ * при первом обращении и дальше меняются только в памяти: при рассылке сообщения
+ * и при открытии группы. Измененные позиции записываются в базу отдельным потоком
+ * раз в {@link #FLUSH_INTERVAL_MS} мс, так что отправка сообщения не ждет базу,
+ * а подсчет непрочитанных не требует <code>COUNT(*)</code> по таблице сообщений.
+ * <br>Число загруженных групп ограничено (по умолчанию {@link #CAPACITY}), давно
+ * не использованные вытесняются. Вытесненная группа ждет, пока ее изменения
+ * не будут записаны, а если к ней обратятся раньше, возвращается в кеш
+ * без чтения из базы. Поэтому значения в памяти всегда не старше значений в базе.
+ * <br>При остановке сервера должен быть вызван {@link #close()}: он записывает
+ * последние изменения.
+ *
+ * <pre><code>
+ *     ReadTracker.start(ReadTracker.FLUSH_INTERVAL_MS);
+ *     ...
+ *     ReadTracker.get(groupId).markRead(userId, lastMessageId);
+ *     ...
+ *     ReadTracker.close();
+ * </code></pre>
+ */
+public class ReadTracker {
+    private static final Logger log = LoggerFactory.getLogger(ReadTracker.class);
+
+    /**
+     * Период записи изменений в базу по умолчанию, в миллисекундах.
+     */
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    /**
+     * Максимальное число загруженных групп по умолчанию.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * Группа пользователя с числом непрочитанных в ней сообщений.
+     */
+    public record GroupUnread(int groupId, String groupname, String name, int unread) {}
+
+    private static final String UPDATE_SQL = "UPDATE group_reads"
+        + " SET last_read_id = ?, unread = ? WHERE group_id = ? AND user_id = ?";
+    private static final String INSERT_SQL = "INSERT INTO group_reads"
+        + " (last_read_id, unread, group_id, user_id) VALUES (?, ?, ?, ?)";
+
+    private record Change(GroupReads reads, GroupReads.Position position) {}
+
+    private static LruCache<Integer, GroupReads> groups =
+        new LruCache<>(CAPACITY, ReadTracker::evicted);
+
+    /**
+     * Вытесненная группа.
+     *
+     * @param isIdle не было изменений с прошлой записи
+     */
+    private record Parked(GroupReads reads, boolean isIdle) {}
+
+    /**
+     * Вытесненные группы, изменения которых еще могут быть не записаны.
+     * Группа убирается отсюда, когда в ней целый период записи не было изменений:
+     * к этому времени рассылки, получившие ее до вытеснения, уже закончены.
+     */
+    private static final ConcurrentHashMap<Integer, Parked> evicted = new ConcurrentHashMap<>();
+
+    private static final Object lock = new Object();
+
+    private static Thread flusher = null;
+    private static volatile boolean isClosed = false;
+
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Запускает поток записи. Повторный вызов ничего не делает.
+     *
+     * @param intervalMs период записи изменений в миллисекундах
+     */
+    public static synchronized void start(long intervalMs) {
+        if (flusher != null)
+            return;
+        isClosed = false;
+        flusher = new Thread(() -> flushLoop(intervalMs), "read-tracker");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Меняет максимальное число загруженных групп.
+     * Уже загруженные группы вытесняются, их изменения не теряются.
+     */
+    public static void configure(int capacity) {
+        synchronized (lock) {
+            var old = groups;
+            groups = new LruCache<>(capacity, ReadTracker::evicted);
+            for (var reads : old.values())
+                evicted(reads.getGroupId(), reads);
+        }
+    }
+
+    private static void evicted(int groupId, GroupReads reads) {
+        evicted.put(groupId, new Parked(reads, false));
+    }
+
+    /**
+     * Возвращает позиции прочтения группы, при необходимости загружая их.
+     * <br>Если загрузить не удалось, возвращается пустой объект, который
+     * не запоминается: изменения в нем не будут записаны.
+     */
+    public static GroupReads get(int groupId) {
+        var reads = groups.get(groupId);
+        if (reads != null)
+            return reads;
+
+        synchronized (lock) {
+            // Вытесненная группа может быть новее базы
+            var parked = evicted.remove(groupId);
+            if (parked != null)
+                return groups.putIfAbsent(groupId, parked.reads());
+        }
+
+        reads = load(groupId);
+        if (reads == null)
+            return new GroupReads(groupId);
+
+        synchronized (lock) {
+            // Пока шла загрузка, группа могла быть загружена и снова вытеснена
+            var parked = evicted.remove(groupId);
+            return groups.putIfAbsent(groupId, parked != null ? parked.reads() : reads);
+        }
+    }
+
+    private static GroupReads load(int groupId) {
+        String sql = "SELECT user_id, last_read_id, unread FROM group_reads WHERE group_id = ?";
+
+        try (Connection conn = DatabaseManager.getConnection("ReadTracker.load");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, groupId);
+            ResultSet rs = stmt.executeQuery();
+
+            var reads = new GroupReads(groupId);
+            while (rs.next())
+                reads.load(rs.getInt("user_id"), rs.getInt("last_read_id"), rs.getInt("unread"));
+            return reads;
+        } catch (SQLException e) {
+            log.error("Error loading read positions: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Убирает группу из памяти. Используется при удалении группы;
+     * строки в базе удаляются вместе с группой.
+     */
+    public static void invalidate(int groupId) {
+        synchronized (lock) {
+            groups.remove(groupId);
+            evicted.remove(groupId);
+        }
+    }
+
+    /**
+     * Возвращает все группы пользователя с числом непрочитанных одним запросом.
+     * Для загруженных групп число берется из памяти.
+     *
+     * @return группы, либо <code>null</code>, если произошла ошибка
+     */
+    public static List<GroupUnread> getGroups(int userId) {
+        String sql = "SELECT g.id, g.groupname, g.name, r.unread FROM group_members gm "
+            + "JOIN groups g ON g.id = gm.group_id "
+            + "LEFT JOIN group_reads r ON r.group_id = gm.group_id AND r.user_id = gm.user_id "
+            + "WHERE gm.user_id = ? ORDER BY g.id";
+
+        try (Connection conn = DatabaseManager.getConnection("ReadTracker.getGroups");
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, userId);
+            ResultSet rs = stmt.executeQuery();
+
+            var result = new ArrayList<GroupUnread>();
+            while (rs.next()) {
+                int groupId = rs.getInt("id");
+                var reads = find(groupId);
+                int unread = reads != null ? reads.getUnread(userId) : rs.getInt("unread");
+                result.add(new GroupUnread(
+                    groupId, rs.getString("groupname"), rs.getString("name"), unread
+                ));
+            }
+            return result;
+        } catch (SQLException e) {
+            log.error("Error: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return позиции группы из памяти, не загружая их, либо <code>null</code>
+     */
+    private static GroupReads find(int groupId) {
+        var reads = groups.get(groupId);
+        if (reads != null)
+            return reads;
+        var parked = evicted.get(groupId);
+        return parked == null ? null : parked.reads();
+    }
+
+    private static void flushLoop(long intervalMs) {
+        while (!isClosed) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                // Остаток будет записан в close()
+                return;
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Записывает в базу все изменения, накопленные с прошлой записи.
+     * <br>Существующие строки обновляются, недостающие добавляются.
+     * Если запись не удалась, позиции снова помечаются измененными и записываются
+     * при следующем вызове, в том числе из {@link #close()}. Не повторяются
+     * только строки, которые не удалось добавить: их группа или пользователь удалены.
+     */
+    public static synchronized void flush() {
+        var changes = new ArrayList<Change>();
+        for (var reads : groups.values())
+            takeChanged(reads, changes);
+        evicted.forEach((groupId, parked) -> {
+            if (takeChanged(parked.reads(), changes))
+                evicted.replace(groupId, parked, new Parked(parked.reads(), false));
+            else if (parked.isIdle())
+                evicted.remove(groupId, parked);
+            else
+                evicted.replace(groupId, parked, new Parked(parked.reads(), true));
+        });
+        if (changes.isEmpty())
+            return;
+
+        try (Connection conn = DatabaseManager.getConnection("ReadTracker.flush");
+             PreparedStatement update = conn.prepareStatement(UPDATE_SQL)) {
+
+            conn.setAutoCommit(false);
+            for (var change : changes) {
+                bind(update, change);
+                update.addBatch();
+            }
+            var counts = update.executeBatch();
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            var missing = new ArrayList<Change>();
+            for (int i = 0; i < counts.length; i++)
+                if (counts[i] == 0)
+                    missing.add(changes.get(i));
+            insert(conn, missing);
+            written.addAndGet(changes.size() - missing.size());
+        } catch (SQLException e) {
+            log.error("Error writing read positions: {}", e.getMessage());
+            failed.addAndGet(changes.size());
+            retry(changes);
+        }
+    }
+
+    /**
+     * @return false, если изменений в группе не было
+     */
+    private static boolean takeChanged(GroupReads reads, List<Change> changes) {
+        var changed = reads.takeChanged();
+        for (var position : changed)
+            changes.add(new Change(reads, position));
+        return !changed.isEmpty();
+    }
+
+    private static void retry(List<Change> changes) {
+        for (var change : changes)
+            change.reads().markChanged(change.position());
+    }
+
+    /**
+     * Добавляет строки по одной: строка может не пройти, если группа
+     * или пользователь уже удалены.
+     */
+    private static void insert(Connection conn, List<Change> missing) throws SQLException {
+        if (missing.isEmpty())
+            return;
+
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+            for (var change : missing) {
+                try {
+                    bind(insert, change);
+                    insert.executeUpdate();
+                    written.incrementAndGet();
+                } catch (SQLException e) {
+                    log.error("Error adding read position: {}", e.getMessage());
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Change change) throws SQLException {
+        stmt.setInt(1, change.position().lastReadId());
+        stmt.setInt(2, change.position().unread());
+        stmt.setInt(3, change.reads().getGroupId());
+        stmt.setInt(4, change.position().userId());
+    }
+
+    /**
+     * Останавливает поток записи и записывает последние изменения.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если запись не запущена.
+     */
+    public static synchronized void close() {
+        isClosed = true;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * Число загруженных групп, включая вытесненные, но еще не записанные.
+     */
+    public static int size() {
+        return groups.size() + evicted.size();
+    }
+
+    public static long getWrittenCount() {
+        return written.get();
+    }
+
+    public static long getFailedCount() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,180 @@
+package server.managers;
+
+import server.elements.User;
+import utils.LruCache;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Токены возобновления сессий и последние открытые группы пользователей.
+ *
+ * <p>После входа клиент получает токен и при переподключении предъявляет его
+ * в <code>/hello</code> вместо пароля. Токен хранит только id и имя пользователя,
+ * а сам пользователь при возобновлении берется из {@link UserDirectory}. Так
+ * возобновленная сессия видит, например, новое отображаемое имя, и обычно
+ * не обращается к базе. Это важно при массовом переподключении,
+ * например после перезапуска балансировщика.
+ * <br>Токены хранятся только в памяти, живут не дольше {@link #TTL_MS}
+ * с последнего использования и пропадают при перезапуске сервера; тогда клиент
+ * входит заново. Число токенов ограничено {@link #CAPACITY}, самые давние вытесняются.
+ * <br>При смене пароля остальные токены пользователя отзываются,
+ * см. {@link #revokeOthers(int, String)}.
+ *
+ * <pre><code>
+ *     var token = SessionManager.issue(user);
+ *     ...
+ *     var user = SessionManager.resume(token);
+ *     if (user == null)
+ *         // токен неизвестен или истек
+ * </code></pre>
+ */
+public class SessionManager {
+
+    /**
+     * Максимальное число токенов по умолчанию.
+     */
+    public static final int CAPACITY = 65536;
+
+    /**
+     * Время жизни токена по умолчанию, в миллисекундах.
+     */
+    public static final long TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    private record Session(int userId, String username, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private static LruCache<String, Session> sessions = new LruCache<>(CAPACITY);
+    private static long ttlNanos = TimeUnit.MILLISECONDS.toNanos(TTL_MS);
+    private static LongSupplier clock = System::nanoTime;
+
+    /**
+     * id пользователя -&gt; имя последней открытой им группы.
+     * Ограничен тем же числом записей, что и токены.
+     */
+    private static LruCache<Integer, String> lastGroups = new LruCache<>(CAPACITY);
+
+    private static final Object lock = new Object();
+
+    /**
+     * Меняет число токенов и их время жизни. Выданные токены и запомненные
+     * группы при этом сбрасываются.
+     */
+    public static void configure(int capacity, long ttlMs) {
+        configure(capacity, ttlMs, System::nanoTime);
+    }
+
+    /**
+     * То же, что {@link #configure(int, long)}, но время берется из <code>clock</code>.
+     *
+     * @param clock текущее время в наносекундах, как {@link System#nanoTime()}
+     */
+    public static void configure(int capacity, long ttlMs, LongSupplier clock) {
+        synchronized (lock) {
+            sessions = new LruCache<>(capacity);
+            lastGroups = new LruCache<>(capacity);
+            ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+            SessionManager.clock = clock;
+        }
+    }
+
+    /**
+     * Выдает новый токен для вошедшего пользователя.
+     */
+    public static String issue(User user) {
+        var bytes = new byte[16];
+        random.nextBytes(bytes);
+        var token = HexFormat.of().formatHex(bytes);
+
+        synchronized (lock) {
+            var expiresAt = clock.getAsLong() + ttlNanos;
+            sessions.put(token, new Session(user.getId(), user.getUserName(), expiresAt));
+        }
+        return token;
+    }
+
+    /**
+     * Возобновляет сессию по токену и продлевает срок его жизни.
+     *
+     * @return пользователь в его текущем состоянии, либо <code>null</code>,
+     *         если токен неизвестен, истек или пользователь удален
+     */
+    public static User resume(String token) {
+        Session session;
+        synchronized (lock) {
+            session = sessions.get(token);
+            if (session == null)
+                return null;
+            var now = clock.getAsLong();
+            if (session.isExpired(now)) {
+                sessions.remove(token);
+                return null;
+            }
+            sessions.put(token, new Session(session.userId(), session.username(), now + ttlNanos));
+        }
+
+        // null - пользователь удален или база недоступна; токен остается до конца срока
+        var entry = UserDirectory.get(session.username(), User::queryDirectoryEntry);
+        if (entry == null)
+            return null;
+        // Под тем же именем зарегистрирован другой пользователь
+        if (entry.id() != session.userId()) {
+            revoke(token);
+            return null;
+        }
+        return User.fromEntry(entry);
+    }
+
+    /**
+     * Отзывает токен. Используется при выходе из аккаунта.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван с <code>null</code>.
+     */
+    public static void revoke(String token) {
+        if (token == null)
+            return;
+        synchronized (lock) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Отзывает все токены пользователя, кроме <code>keptToken</code>.
+     * Используется после смены пароля: утекший токен перестает работать,
+     * а сессия, в которой пароль сменили, остается.
+     *
+     * @param keptToken токен текущей сессии, либо <code>null</code>
+     */
+    public static void revokeOthers(int userId, String keptToken) {
+        synchronized (lock) {
+            sessions.removeIf((token, session) ->
+                session.userId() == userId && !token.equals(keptToken)
+            );
+        }
+    }
+
+    /**
+     * Запоминает группу, открытую пользователем.
+     */
+    public static void groupOpened(int userId, String groupname) {
+        lastGroups.put(userId, groupname);
+    }
+
+    /**
+     * @return имя последней открытой пользователем группы, либо <code>null</code>
+     */
+    public static String getLastGroup(int userId) {
+        return lastGroups.get(userId);
+    }
+
+    public static int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,152 @@
+package server.managers;
+
+import utils.LruCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кеш справочника пользователей: имя пользователя -&gt; id и отображаемое имя.
+ *
+ * <p>Запись загружается из базы при первом обращении и живет не дольше {@link #TTL_MS},
+ * после чего загружается заново. Изменения, сделанные самим сервером, попадают
+ * в кеш сразу: {@link #nameChanged(String, String)} вызывается после смены имени,
+ * а {@link #invalidate(String)} - после регистрации.
+ * <br>Отсутствие пользователя не кешируется, поэтому только что
+ * зарегистрированный пользователь сразу находится.
+ * <br>Пароли в кеше не хранятся.
+ *
+ * <pre><code>
+ *     var entry = UserDirectory.get(username, User::queryDirectoryEntry);
+ *     if (entry != null)
+ *         return entry.id();
+ * </code></pre>
+ */
+public class UserDirectory {
+
+    /**
+     * Максимальное число пользователей в кеше по умолчанию.
+     */
+    public static final int CAPACITY = 4096;
+
+    /**
+     * Время жизни записи по умолчанию, в миллисекундах.
+     */
+    public static final long TTL_MS = 60_000;
+
+    /**
+     * Запись справочника.
+     *
+     * @param id id пользователя
+     * @param username имя пользователя (логин)
+     * @param name отображаемое имя
+     */
+    public record Entry(int id, String username, String name) {}
+
+    private record Cached(Entry entry, long expiresAt) {
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+
+    private static LruCache<String, Cached> cache = new LruCache<>(CAPACITY);
+    private static long ttlNanos = TimeUnit.MILLISECONDS.toNanos(TTL_MS);
+
+    private static final Object lock = new Object();
+
+    /**
+     * Увеличивается при каждом изменении. Загрузка, начавшаяся до изменения,
+     * не кладет свой (возможно устаревший) результат в кеш.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Меняет размер кеша и время жизни записей. Кеш при этом очищается.
+     */
+    public static void configure(int capacity, long ttlMs) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache = new LruCache<>(capacity);
+            ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        }
+    }
+
+    /**
+     * Возвращает запись о пользователе, при необходимости загружая ее.
+     *
+     * @param loader загрузка записи из базы. Возвращает <code>null</code>,
+     *               если пользователя нет или произошла ошибка; такой результат не кешируется.
+     * @return запись, либо <code>null</code>, если пользователь не найден
+     */
+    public static Entry get(String username, Function<String, Entry> loader) {
+        var cached = cache.get(username);
+        if (cached != null && !cached.isExpired()) {
+            hits.incrementAndGet();
+            return cached.entry();
+        }
+        misses.incrementAndGet();
+
+        long stamp = version.get();
+        var entry = loader.apply(username);
+        if (entry == null)
+            return null;
+
+        synchronized (lock) {
+            if (version.get() == stamp)
+                store(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Кладет в кеш запись, только что прочитанную из базы.
+     */
+    public static void put(Entry entry) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            store(entry);
+        }
+    }
+
+    private static void store(Entry entry) {
+        cache.put(entry.username(), new Cached(entry, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Обновляет отображаемое имя пользователя. Вызывается после смены имени.
+     */
+    public static void nameChanged(String username, String name) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.update(username, (cached) -> new Cached(
+                new Entry(cached.entry().id(), username, name), cached.expiresAt()
+            ));
+        }
+    }
+
+    /**
+     * Убирает пользователя из кеша. Вызывается после регистрации и удаления.
+     */
+    public static void invalidate(String username) {
+        synchronized (lock) {
+            version.incrementAndGet();
+            cache.remove(username);
+        }
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.Client;
+import server.elements.Group;
+import server.elements.ServerData;
+import server.elements.User;
+import server.managers.MembershipCache;
+import server.managers.ReadTracker;
+import utils.network.Connection;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+public class ChatFanOutTest {
+
+    /**
+     * Соединение в памяти, считающее отправленное. Закрытое бросает исключение,
+     * как настоящие соединения.
+     */
+    private static class TestConnection implements Connection {
+        final boolean isClosed;
+        int sent = 0;
+
+        TestConnection(boolean isClosed) {
+            this.isClosed = isClosed;
+        }
+
+        @Override
+        public void sendln(String message) {
+            send(message + '\n');
+        }
+
+        @Override
+        public void send(String message) {
+            if (isClosed)
+                throw new IllegalStateException("Socket is closed");
+            sent++;
+        }
+
+        @Override
+        public void send(ByteBuffer data) {
+            if (isClosed)
+                throw new IllegalStateException("Socket is closed");
+            sent++;
+        }
+
+        @Override
+        public void switchToFrames(String ack) {}
+
+        @Override
+        public boolean isBinary() {
+            return false;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return isClosed;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Test
+    public void closedRecipientDoesNotStopFanOut() throws SQLException {
+        TestDatabase.init();
+        int aliceId = TestDatabase.addUser("fanout_alice");
+        int bobId = TestDatabase.addUser("fanout_bob");
+        int carolId = TestDatabase.addUser("fanout_carol");
+        TestDatabase.addGroup("fanout_group", aliceId, bobId, carolId);
+        var group = Group.getGroupByName("fanout_group");
+
+        var sender = login(aliceId, group, new TestConnection(false));
+        // Боб отключился после того, как попал в рассылку
+        var bob = login(bobId, group, new TestConnection(true));
+        var carolConnection = new TestConnection(false);
+        var carol = login(carolId, group, carolConnection);
+        try {
+            Assertions.assertDoesNotThrow(() -> sender.sendMessageToChat("hello", false));
+
+            Assertions.assertEquals(1, carolConnection.sent);
+            var reads = ReadTracker.get(group.getIdGroup());
+            Assertions.assertEquals(1, reads.getUnread(bobId));
+            Assertions.assertEquals(0, reads.getUnread(carolId));
+        } finally {
+            ServerData.removeClient(sender);
+            ServerData.removeClient(bob);
+            ServerData.removeClient(carol);
+        }
+    }
+
+    @Test
+    public void unknownMembersAreReportedToSender() throws SQLException {
+        TestDatabase.init();
+        int aliceId = TestDatabase.addUser("fanout_unknown_alice");
+        int bobId = TestDatabase.addUser("fanout_unknown_bob");
+        TestDatabase.addGroup("fanout_unknown_group", aliceId, bobId);
+        var group = Group.getGroupByName("fanout_unknown_group");
+
+        var senderConnection = new TestConnection(false);
+        var sender = login(aliceId, group, senderConnection);
+        var bobConnection = new TestConnection(false);
+        var bob = login(bobId, group, bobConnection);
+        TestDatabase.execute("ALTER TABLE group_members RENAME TO group_members_off");
+        MembershipCache.invalidate(group.getIdGroup());
+        try {
+            sender.sendMessageToChat("hello", false);
+
+            // Отправитель узнает, что сообщение не ушло, а не видит его доставленным
+            Assertions.assertEquals(1, senderConnection.sent);
+            Assertions.assertEquals(0, bobConnection.sent);
+            Assertions.assertFalse(group.hasMember(aliceId));
+        } finally {
+            TestDatabase.execute("ALTER TABLE group_members_off RENAME TO group_members");
+            ServerData.removeClient(sender);
+            ServerData.removeClient(bob);
+        }
+    }
+
+    private static Client login(int userId, Group group, Connection connection) {
+        var client = new Client(connection);
+        client.user = User.getUserById(userId);
+        client.group = group;
+        ServerData.addClient(client);
+        ServerData.login(client);
+        return client;
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.managers.GroupDirectory;
+import utils.IntSet;
+import utils.elements.GroupTypes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class GroupDirectoryTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, GroupDirectory.Entry> loader = (groupname) -> {
+        loads.incrementAndGet();
+        if (groupname.equals("ghost"))
+            return null;
+        return new GroupDirectory.Entry(
+            groupname.length(), groupname, groupname, GroupTypes.Chat, 1, IntSet.of(1)
+        );
+    };
+
+    @Test
+    public void loadsOnce() {
+        GroupDirectory.configure(16);
+
+        Assertions.assertTrue(GroupDirectory.get("devs", loader).isAdmin(1));
+        Assertions.assertEquals(1, GroupDirectory.get("devs", loader).owner());
+        Assertions.assertEquals(1, loads.get());
+
+        Assertions.assertNull(GroupDirectory.get("ghost", loader));
+        Assertions.assertNull(GroupDirectory.get("ghost", loader));
+        Assertions.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void adminChanged() {
+        GroupDirectory.configure(16);
+        GroupDirectory.get("devs", loader);
+
+        GroupDirectory.adminChanged("devs", 2, true);
+        Assertions.assertTrue(GroupDirectory.get("devs", loader).isAdmin(2));
+        GroupDirectory.adminChanged("devs", 2, false);
+        Assertions.assertFalse(GroupDirectory.get("devs", loader).isAdmin(2));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void ownerChangedAndRenamed() {
+        GroupDirectory.configure(16);
+        GroupDirectory.get("devs", loader);
+
+        GroupDirectory.ownerChanged("devs", 3);
+        GroupDirectory.renamed("devs", "Developers");
+        var entry = GroupDirectory.get("devs", loader);
+        Assertions.assertEquals(3, entry.owner());
+        Assertions.assertTrue(entry.isAdmin(3));
+        Assertions.assertTrue(entry.isAdmin(1));
+        Assertions.assertEquals("Developers", entry.name());
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void invalidate() {
+        GroupDirectory.configure(16);
+        GroupDirectory.get("devs", loader);
+
+        GroupDirectory.invalidate("devs");
+        GroupDirectory.get("devs", loader);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void changesOfUncachedGroupAreIgnored() {
+        GroupDirectory.configure(16);
+
+        GroupDirectory.adminChanged("devs", 2, true);
+        GroupDirectory.renamed("devs", "Developers");
+        Assertions.assertEquals(0, GroupDirectory.size());
+        Assertions.assertFalse(GroupDirectory.get("devs", loader).isAdmin(2));
+    }
+}
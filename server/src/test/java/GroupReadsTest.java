@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.GroupReads;
+
+import java.util.List;
+
+public class GroupReadsTest {
+
+    @Test
+    public void countsUnreadMessages() {
+        var reads = new GroupReads(1);
+        reads.load(10, 5, 2);
+
+        reads.messageAdded(10, 6, false);
+        reads.messageAdded(11, 6, false);
+        reads.messageAdded(12, 6, true);
+        Assertions.assertEquals(3, reads.getUnread(10));
+        Assertions.assertEquals(1, reads.getUnread(11));
+        Assertions.assertEquals(0, reads.getUnread(12));
+        Assertions.assertEquals(0, reads.getUnread(13));
+
+        reads.markRead(10, 6);
+        Assertions.assertEquals(0, reads.getUnread(10));
+    }
+
+    @Test
+    public void takesOnlyChangedPositions() {
+        var reads = new GroupReads(1);
+        reads.load(10, 5, 0);
+        Assertions.assertEquals(List.of(), reads.takeChanged());
+
+        reads.messageAdded(11, 6, false);
+        reads.markRead(10, 6);
+        var changed = reads.takeChanged();
+        Assertions.assertEquals(2, changed.size());
+        Assertions.assertTrue(changed.contains(new GroupReads.Position(10, 6, 0)));
+        Assertions.assertTrue(changed.contains(new GroupReads.Position(11, 0, 1)));
+        Assertions.assertEquals(List.of(), reads.takeChanged());
+
+        // Уже прочитанная группа не считается измененной
+        reads.markRead(10, 6);
+        Assertions.assertEquals(List.of(), reads.takeChanged());
+    }
+
+    @Test
+    public void markChangedAgain() {
+        var reads = new GroupReads(1);
+        reads.messageAdded(10, 6, false);
+        var taken = reads.takeChanged();
+        Assertions.assertEquals(List.of(new GroupReads.Position(10, 0, 1)), taken);
+
+        // Запись не удалась, а позиция тем временем изменилась еще раз
+        reads.messageAdded(10, 7, false);
+        reads.takeChanged();
+        reads.markChanged(taken.getFirst());
+        Assertions.assertEquals(List.of(new GroupReads.Position(10, 0, 2)), reads.takeChanged());
+
+        // Неизвестный участник не добавляется
+        reads.markChanged(new GroupReads.Position(99, 0, 0));
+        Assertions.assertEquals(List.of(), reads.takeChanged());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.Message;
+import server.elements.MessageTail;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageTailTest {
+
+    private static Message message(int id) {
+        return new Message(id, "text " + id, "user", 7, new Timestamp(1000L * id));
+    }
+
+    private static List<Message> messages(int from, int to) {
+        var result = new ArrayList<Message>();
+        for (int id = from; id <= to; id++)
+            result.add(message(id));
+        return result;
+    }
+
+    private static List<Integer> ids(List<Message> page) {
+        return page.stream().map(Message::getId).toList();
+    }
+
+    @Test
+    public void pageFromMemory() {
+        var tail = new MessageTail(8);
+        for (var message : messages(1, 6))
+            tail.append(message);
+
+        Assertions.assertEquals(List.of(4, 5, 6), ids(tail.getBefore(Integer.MAX_VALUE, 3)));
+        Assertions.assertEquals(List.of(2, 3), ids(tail.getBefore(4, 2)));
+
+        var page = tail.getBefore(6, 1).getFirst();
+        Assertions.assertEquals("text 5", page.getContent());
+        Assertions.assertEquals(7, page.getSenderId());
+        Assertions.assertEquals(5000L, page.getTime().getTime());
+    }
+
+    @Test
+    public void incompletePageNeedsDatabase() {
+        var tail = new MessageTail(8);
+        for (var message : messages(10, 12))
+            tail.append(message);
+
+        // В базе могут быть сообщения старше 10
+        Assertions.assertNull(tail.getBefore(Integer.MAX_VALUE, 5));
+        Assertions.assertTrue(tail.canLoadOlder());
+
+        tail.prepend(messages(8, 11), true);
+        Assertions.assertEquals(
+            List.of(8, 9, 10, 11, 12), ids(tail.getBefore(Integer.MAX_VALUE, 5))
+        );
+        Assertions.assertEquals(List.of(8, 9), ids(tail.getBefore(10, 5)));
+        Assertions.assertFalse(tail.canLoadOlder());
+    }
+
+    @Test
+    public void overflowDropsOldest() {
+        var tail = new MessageTail(4);
+        tail.prepend(List.of(), true);
+        for (var message : messages(1, 6))
+            tail.append(message);
+
+        Assertions.assertEquals(4, tail.size());
+        Assertions.assertEquals(3, tail.getOldestId());
+        Assertions.assertEquals(List.of(3, 4, 5, 6), ids(tail.getBefore(Integer.MAX_VALUE, 4)));
+        Assertions.assertNull(tail.getBefore(4, 2));
+    }
+
+    @Test
+    public void prependKeepsNewest() {
+        var tail = new MessageTail(4);
+        tail.append(message(20));
+        tail.prepend(messages(10, 19), false);
+
+        Assertions.assertEquals(List.of(17, 18, 19, 20), ids(tail.getBefore(Integer.MAX_VALUE, 4)));
+        Assertions.assertFalse(tail.canLoadOlder());
+        Assertions.assertNull(tail.getBefore(17, 1));
+    }
+
+    @Test
+    public void outOfOrderAppend() {
+        var tail = new MessageTail(4);
+        tail.prepend(List.of(), true);
+        tail.append(message(1));
+        tail.append(message(3));
+        tail.append(message(2));
+
+        Assertions.assertEquals(List.of(1, 2, 3), ids(tail.getBefore(Integer.MAX_VALUE, 10)));
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.Message;
+import server.managers.MessageWriter;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public class MessageWriterTest {
+
+    @Test
+    public void idsComeFromSequenceInBlocks() throws SQLException {
+        TestDatabase.init();
+        int userId = TestDatabase.addUser("writer");
+        int groupId = TestDatabase.addGroup("writer_group", userId);
+
+        // Сообщение с id, выданным в обход последовательности (как делал прежний сервер)
+        TestDatabase.execute("INSERT INTO messages (id, group_id, content, sender_id)"
+            + " VALUES (1000, " + groupId + ", 'old', " + userId + ")");
+
+        // Последовательность догоняет занятые id
+        int first = MessageWriter.nextId();
+        Assertions.assertTrue(first > 1000);
+
+        // Весь блок выдается без обращения к базе подряд
+        for (int i = 1; i < MessageWriter.ID_BLOCK_SIZE; i++)
+            Assertions.assertEquals(first + i, MessageWriter.nextId());
+
+        // Следующий блок - следующий шаг последовательности
+        Assertions.assertEquals(first + MessageWriter.ID_BLOCK_SIZE, MessageWriter.nextId());
+    }
+
+    @Test
+    public void unavailableDatabaseKeepsMessages() throws Exception {
+        TestDatabase.init();
+        int userId = TestDatabase.addUser("outage");
+        int groupId = TestDatabase.addGroup("outage_group", userId);
+        long failed = MessageWriter.getFailedCount();
+
+        // Пока таблицы нет, каждая запись завершается ошибкой, как при потере базы
+        TestDatabase.execute("ALTER TABLE messages RENAME TO messages_off");
+        MessageWriter.start(10, 10, 2);
+        try {
+            Assertions.assertTrue(MessageWriter.enqueue(groupId, message(userId)));
+            // Первое сообщение взято потоком записи. Пачка с ошибкой повторяется,
+            // и пока она не записана, новые сообщения из очереди не берутся.
+            for (int i = 0; i < 100 && MessageWriter.getQueueDepth() > 0; i++)
+                Thread.sleep(10);
+            Thread.sleep(50);
+
+            Assertions.assertTrue(MessageWriter.enqueue(groupId, message(userId)));
+            Assertions.assertTrue(MessageWriter.enqueue(groupId, message(userId)));
+            // Очередь заполнена
+            Assertions.assertFalse(MessageWriter.enqueue(groupId, message(userId)));
+        } finally {
+            TestDatabase.execute("ALTER TABLE messages_off RENAME TO messages");
+            MessageWriter.close();
+        }
+
+        Assertions.assertEquals(failed, MessageWriter.getFailedCount());
+        Assertions.assertEquals(3, TestDatabase.queryInt(
+            "SELECT COUNT(*) FROM messages WHERE group_id = " + groupId
+        ));
+    }
+
+    @Test
+    public void rejectedMessageDoesNotBlockBatch() throws SQLException {
+        TestDatabase.init();
+        int userId = TestDatabase.addUser("rejected");
+        int groupId = TestDatabase.addGroup("rejected_group", userId);
+        long failed = MessageWriter.getFailedCount();
+
+        MessageWriter.start(10, 1000, 10);
+        try {
+            MessageWriter.enqueue(groupId, message(userId));
+            // Группы нет: запись отвергается базой и отбрасывается
+            MessageWriter.enqueue(-1, message(userId));
+            MessageWriter.enqueue(groupId, message(userId));
+        } finally {
+            MessageWriter.close();
+        }
+
+        Assertions.assertEquals(failed + 1, MessageWriter.getFailedCount());
+        Assertions.assertEquals(2, TestDatabase.queryInt(
+            "SELECT COUNT(*) FROM messages WHERE group_id = " + groupId
+        ));
+    }
+
+    private static Message message(int userId) {
+        var time = new Timestamp(System.currentTimeMillis());
+        return new Message(MessageWriter.nextId(), "text", "user", userId, time);
+    }
+}
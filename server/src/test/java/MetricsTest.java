@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.managers.Metrics;
+
+public class MetricsTest {
+
+    @Test
+    public void renderAllKinds() {
+        var commands = Metrics.name("test_commands_total", "command", "open");
+        Metrics.increment(commands);
+        Metrics.add(commands, 2);
+        Metrics.gauge("test_gauge", () -> 42);
+        Metrics.gauge("test_broken_gauge", () -> {
+            throw new IllegalStateException("not ready");
+        });
+        var latency = Metrics.name("test_latency_us", "query", "User.logIn");
+        Metrics.record(latency, 100);
+        Metrics.record(latency, 300);
+
+        Assertions.assertEquals(3, Metrics.getCounter(commands));
+        var lines = Metrics.render().lines().toList();
+        Assertions.assertTrue(lines.contains("test_commands_total{command=\"open\"} 3"));
+        Assertions.assertTrue(lines.contains("test_gauge 42"));
+        Assertions.assertTrue(lines.contains("test_latency_us_count{query=\"User.logIn\"} 2"));
+        Assertions.assertTrue(lines.contains("test_latency_us_max{query=\"User.logIn\"} 300"));
+        Assertions.assertTrue(
+            lines.contains("test_latency_us{query=\"User.logIn\",quantile=\"0.5\"} 100")
+        );
+        // Сломанный измеритель не мешает выводу остальных
+        Assertions.assertTrue(lines.stream().noneMatch((line) -> line.contains("broken")));
+    }
+
+    @Test
+    public void renderWithoutLabels() {
+        Metrics.recordSince("test_plain_us", System.nanoTime());
+        var lines = Metrics.render().lines().toList();
+        Assertions.assertTrue(lines.contains("test_plain_us_count 1"));
+        Assertions.assertTrue(lines.stream().anyMatch(
+            (line) -> line.startsWith("test_plain_us{quantile=\"0.99\"} ")
+        ));
+    }
+}
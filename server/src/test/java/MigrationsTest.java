@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.managers.Migrations;
+import server.managers.Migrations.Migration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Миграции проверяются на H2 в режиме совместимости с PostgreSQL.
+ */
+public class MigrationsTest {
+
+    private static int databaseCounter = 0;
+
+    private static Connection openDatabase() throws SQLException {
+        return DriverManager.getConnection(
+            "jdbc:h2:mem:migrations" + (databaseCounter++)
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE"
+        );
+    }
+
+    private static int count(Connection conn, String table) throws SQLException {
+        try (var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (var stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    @Test
+    public void emptyDatabase() throws SQLException {
+        try (var conn = openDatabase()) {
+            var latest = Migrations.MIGRATIONS.getLast().version();
+
+            Assertions.assertEquals(latest, Migrations.migrate(conn, Migrations.MIGRATIONS));
+            Assertions.assertEquals(latest, Migrations.getVersion(conn));
+            Assertions.assertEquals(Migrations.MIGRATIONS.size(), count(conn, "schema_version"));
+
+            // Повторный запуск ничего не меняет
+            Assertions.assertEquals(latest, Migrations.migrate(conn, Migrations.MIGRATIONS));
+            Assertions.assertEquals(Migrations.MIGRATIONS.size(), count(conn, "schema_version"));
+        }
+    }
+
+    @Test
+    public void keepsExistingData() throws SQLException {
+        try (var conn = openDatabase()) {
+            Migrations.migrate(conn, Migrations.MIGRATIONS.subList(0, 1));
+            Assertions.assertEquals(1, Migrations.getVersion(conn));
+
+            execute(conn, "INSERT INTO users (username, name, password, salt)"
+                + " VALUES ('user', 'user', 'pass', 'salt')");
+            execute(conn, "INSERT INTO groups (groupname, name, type, owner_id)"
+                + " SELECT 'group', 'group', 0, id FROM users");
+
+            Migrations.migrate(conn, Migrations.MIGRATIONS);
+            Assertions.assertEquals(1, count(conn, "users"));
+            Assertions.assertEquals(1, count(conn, "groups"));
+
+            // Индекс на groupname уникальный
+            Assertions.assertThrows(SQLException.class, () ->
+                execute(conn, "INSERT INTO groups (groupname, name, type, owner_id)"
+                    + " SELECT 'group', 'other', 0, id FROM users")
+            );
+        }
+    }
+
+    @Test
+    public void renamesDuplicateGroupnames() throws SQLException {
+        try (var conn = openDatabase()) {
+            Migrations.migrate(conn, Migrations.MIGRATIONS.subList(0, 1));
+
+            execute(conn, "INSERT INTO users (username, name, password, salt)"
+                + " VALUES ('user', 'user', 'pass', 'salt')");
+            var longName = "g".repeat(32);
+            for (var groupname : List.of("group", "group", "other", longName, longName))
+                execute(conn, "INSERT INTO groups (groupname, name, type, owner_id)"
+                    + " SELECT '" + groupname + "', 'name', 0, id FROM users");
+
+            Migrations.migrate(conn, Migrations.MIGRATIONS);
+            Assertions.assertEquals(5, count(conn, "groups"));
+            Assertions.assertEquals(5, count(conn, "(SELECT DISTINCT groupname FROM groups) t"));
+            Assertions.assertEquals(1, count(conn, "groups WHERE groupname = 'group'"));
+            Assertions.assertEquals(1, count(conn, "groups WHERE groupname = 'group_2'"));
+            Assertions.assertEquals(1, count(conn, "groups WHERE groupname = '"
+                + "g".repeat(30) + "_5'"));
+        }
+    }
+
+    @Test
+    public void failedMigrationIsNotRecorded() throws SQLException {
+        var migrations = List.of(
+            Migrations.MIGRATIONS.getFirst(),
+            new Migration(2, "broken", "CREATE TABLE broken (id INTEGER)", "NOT SQL")
+        );
+
+        try (var conn = openDatabase()) {
+            Assertions.assertThrows(SQLException.class, () ->
+                Migrations.migrate(conn, migrations)
+            );
+            Assertions.assertEquals(1, Migrations.getVersion(conn));
+
+            // После исправления изменение применяется как обычно
+            var fixed = List.of(
+                Migrations.MIGRATIONS.getFirst(),
+                new Migration(2, "fixed", "CREATE TABLE IF NOT EXISTS broken (id INTEGER)")
+            );
+            Assertions.assertEquals(2, Migrations.migrate(conn, fixed));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.PresenceChanges;
+import utils.network.Frame;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PresenceChangesTest {
+
+    @Test
+    public void flapsAreCoalesced() {
+        var changes = new PresenceChanges();
+
+        // Вошел и вышел за один период - рассылать нечего
+        changes.changed(1, true, 10);
+        changes.changed(1, false, 20);
+        Assertions.assertEquals(1, changes.size());
+        Assertions.assertEquals(List.of(), changes.take());
+        Assertions.assertEquals(0, changes.size());
+
+        changes.changed(1, true, 30);
+        Assertions.assertEquals(List.of(new Frame.Presence(1, true, 30)), changes.take());
+
+        // Переподключение: вышел и снова вошел - статус не изменился
+        changes.changed(1, false, 40);
+        changes.changed(1, true, 50);
+        Assertions.assertEquals(List.of(), changes.take());
+
+        changes.changed(1, false, 60);
+        Assertions.assertEquals(List.of(new Frame.Presence(1, false, 60)), changes.take());
+    }
+
+    @Test
+    public void oneBatchPerRecipient() {
+        var first = new Frame.Presence(1, true, 10);
+        var second = new Frame.Presence(2, false, 20);
+        var contacts = Map.of(
+            1, Set.of(1, 2, 3, 4),
+            2, Set.of(1, 2, 3)
+        );
+        // 4 не в сети
+        var batches = PresenceChanges.byRecipient(
+            List.of(first, second), contacts, (id) -> id != 4
+        );
+
+        Assertions.assertEquals(
+            Map.of(
+                3, List.of(first, second),
+                2, List.of(first),
+                1, List.of(second)
+            ),
+            batches
+        );
+    }
+
+    @Test
+    public void unknownUserHasNoRecipients() {
+        var batches = PresenceChanges.byRecipient(
+            List.of(new Frame.Presence(7, true, 0)), Map.of(), (id) -> true
+        );
+        Assertions.assertEquals(Map.of(), batches);
+    }
+}
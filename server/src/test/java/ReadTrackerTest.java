@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.managers.ReadTracker;
+
+import java.sql.SQLException;
+
+public class ReadTrackerTest {
+
+    @AfterEach
+    public void reset() {
+        ReadTracker.configure(ReadTracker.CAPACITY);
+        ReadTracker.flush();
+    }
+
+    @Test
+    public void retriesFailedWrites() throws SQLException {
+        TestDatabase.init();
+        int userId = TestDatabase.addUser("reader");
+        int groupId = TestDatabase.addGroup("reader_group", userId);
+        String select = "SELECT unread FROM group_reads"
+            + " WHERE group_id = " + groupId + " AND user_id = " + userId;
+
+        ReadTracker.get(groupId).messageAdded(userId, 1, false);
+
+        // Запись не проходит: таблицы как будто нет
+        long failed = ReadTracker.getFailedCount();
+        TestDatabase.execute("ALTER TABLE group_reads RENAME TO group_reads_off");
+        try {
+            ReadTracker.flush();
+        } finally {
+            TestDatabase.execute("ALTER TABLE group_reads_off RENAME TO group_reads");
+        }
+        Assertions.assertEquals(failed + 1, ReadTracker.getFailedCount());
+        Assertions.assertEquals(-1, TestDatabase.queryInt(select));
+
+        // Позиция не потеряна и записывается следующим вызовом
+        ReadTracker.flush();
+        Assertions.assertEquals(1, TestDatabase.queryInt(select));
+    }
+
+    @Test
+    public void evictedGroupKeepsChanges() throws SQLException {
+        TestDatabase.init();
+        int userId = TestDatabase.addUser("evicted_reader");
+        int firstId = TestDatabase.addGroup("evicted_first", userId);
+        int secondId = TestDatabase.addGroup("evicted_second", userId);
+        String select = "SELECT unread FROM group_reads"
+            + " WHERE group_id = " + firstId + " AND user_id = " + userId;
+
+        ReadTracker.flush();
+        ReadTracker.configure(1);
+        var first = ReadTracker.get(firstId);
+        first.messageAdded(userId, 1, false);
+
+        // Вытесненная, но не записанная группа возвращается без чтения из базы
+        ReadTracker.get(secondId);
+        Assertions.assertSame(first, ReadTracker.get(firstId));
+        Assertions.assertEquals(1, ReadTracker.get(firstId).getUnread(userId));
+
+        // Изменения вытесненной группы записываются
+        ReadTracker.get(secondId);
+        ReadTracker.flush();
+        Assertions.assertEquals(1, TestDatabase.queryInt(select));
+
+        // Записанная и простоявшая период группа забывается
+        ReadTracker.flush();
+        ReadTracker.flush();
+        Assertions.assertEquals(1, ReadTracker.size());
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.ServerConfig;
+import utils.elements.OverflowPolicies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+
+public class ServerConfigTest {
+
+    @Test
+    public void precedence() {
+        var file = new Properties();
+        file.setProperty("port", "1000");
+        file.setProperty("db.pool-size", "20");
+        file.setProperty("workers", "4");
+        var config = new ServerConfig(
+            Map.of("port", "3000"),
+            Map.of("MESSENGER_PORT", "2000", "MESSENGER_DB_POOL_SIZE", "30"),
+            file
+        );
+
+        Assertions.assertEquals(3000, config.getInt("port", 8080));
+        Assertions.assertEquals(30, config.getInt("db.pool-size", 10));
+        Assertions.assertEquals(4, config.getInt("workers", 10));
+        Assertions.assertEquals(10, config.getInt("db.min-idle", 10));
+    }
+
+    @Test
+    public void types() {
+        var config = new ServerConfig(
+            Map.of(
+                "outbound-policy", "block",
+                "db.leak-detection-ms", " 5000 ",
+                "enabled", "on",
+                "port", "eighty"
+            ),
+            Map.of(),
+            new Properties()
+        );
+
+        Assertions.assertEquals(
+            OverflowPolicies.BLOCK,
+            config.getEnum("outbound-policy", OverflowPolicies.class, OverflowPolicies.DISCONNECT)
+        );
+        Assertions.assertEquals(5000, config.getLong("db.leak-detection-ms", 0));
+        Assertions.assertTrue(config.getBoolean("enabled", false));
+
+        var error = Assertions.assertThrows(
+            IllegalArgumentException.class, () -> config.getInt("port", 8080)
+        );
+        Assertions.assertEquals("Invalid value for port: eighty", error.getMessage());
+    }
+
+    @Test
+    public void section() {
+        var file = new Properties();
+        file.setProperty("db.property.sslmode", "require");
+        file.setProperty("db.property.ApplicationName", "messenger");
+        file.setProperty("db.pool-size", "20");
+        var config = new ServerConfig(Map.of("db.property.sslmode", "disable"), Map.of(), file);
+
+        Assertions.assertEquals(
+            Map.of("sslmode", "disable", "ApplicationName", "messenger"),
+            config.getSection("db.property.")
+        );
+    }
+
+    @Test
+    public void loadFile() throws IOException {
+        var path = Files.createTempFile("server", ".properties");
+        try {
+            Files.writeString(path, "# comment\nport=9000\ntransport=virtual\n");
+            var config = ServerConfig.load(new String[] {
+                "--config=" + path, "--transport=blocking", "ignored"
+            });
+
+            Assertions.assertEquals(9000, config.getInt("port", 8080));
+            Assertions.assertEquals("blocking", config.get("transport"));
+        } finally {
+            Files.delete(path);
+        }
+
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () -> ServerConfig.load(new String[] {"--config=" + path})
+        );
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.elements.User;
+import server.managers.SessionManager;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionManagerTest {
+
+    private static final long TTL_MS = 1000;
+
+    private final AtomicLong now = new AtomicLong();
+
+    @AfterEach
+    public void reset() {
+        SessionManager.configure(SessionManager.CAPACITY, SessionManager.TTL_MS);
+    }
+
+    private void configure(int capacity) {
+        SessionManager.configure(capacity, TTL_MS, now::get);
+    }
+
+    private void advance(long ms) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    private static User user(String username) throws SQLException {
+        TestDatabase.init();
+        return User.getUserById(TestDatabase.addUser(username));
+    }
+
+    @Test
+    public void resumesIssuedToken() throws SQLException {
+        configure(4);
+        var user = user("session_resume");
+        var token = SessionManager.issue(user);
+
+        var resumed = SessionManager.resume(token);
+        Assertions.assertNotNull(resumed);
+        Assertions.assertEquals(user.getId(), resumed.getId());
+        Assertions.assertNull(SessionManager.resume("unknown"));
+        Assertions.assertNotEquals(token, SessionManager.issue(user));
+    }
+
+    @Test
+    public void tokenExpires() throws SQLException {
+        configure(4);
+        var token = SessionManager.issue(user("session_expire"));
+
+        advance(TTL_MS);
+        Assertions.assertNull(SessionManager.resume(token));
+        // Истекший токен удаляется
+        Assertions.assertEquals(0, SessionManager.size());
+    }
+
+    @Test
+    public void resumeExtendsTtl() throws SQLException {
+        configure(4);
+        var token = SessionManager.issue(user("session_extend"));
+
+        // В сумме дольше времени жизни, но каждый раз меньше него
+        advance(TTL_MS - 1);
+        Assertions.assertNotNull(SessionManager.resume(token));
+        advance(TTL_MS - 1);
+        Assertions.assertNotNull(SessionManager.resume(token));
+
+        advance(TTL_MS);
+        Assertions.assertNull(SessionManager.resume(token));
+    }
+
+    @Test
+    public void revokedTokenIsForgotten() throws SQLException {
+        configure(4);
+        var token = SessionManager.issue(user("session_revoke"));
+
+        SessionManager.revoke(token);
+        Assertions.assertNull(SessionManager.resume(token));
+        Assertions.assertDoesNotThrow(() -> SessionManager.revoke(null));
+    }
+
+    @Test
+    public void passwordChangeRevokesOtherTokens() throws SQLException {
+        configure(4);
+        var user = user("session_password");
+        var current = SessionManager.issue(user);
+        var leaked = SessionManager.issue(user);
+        var stranger = SessionManager.issue(user("session_stranger"));
+
+        SessionManager.revokeOthers(user.getId(), current);
+        Assertions.assertNotNull(SessionManager.resume(current));
+        Assertions.assertNull(SessionManager.resume(leaked));
+        Assertions.assertNotNull(SessionManager.resume(stranger));
+    }
+
+    @Test
+    public void resumeSeesCurrentName() throws SQLException {
+        configure(4);
+        var user = user("session_rename");
+        var token = SessionManager.issue(user);
+
+        // Имя сменено в другой сессии
+        User.getUserById(user.getId()).setName("Renamed");
+        Assertions.assertEquals("Renamed", SessionManager.resume(token).getName());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws SQLException {
+        configure(2);
+        var first = SessionManager.issue(user("session_first"));
+        var second = SessionManager.issue(user("session_second"));
+
+        Assertions.assertNotNull(SessionManager.resume(first));
+        SessionManager.issue(user("session_third"));
+
+        Assertions.assertEquals(2, SessionManager.size());
+        Assertions.assertNotNull(SessionManager.resume(first));
+        Assertions.assertNull(SessionManager.resume(second));
+    }
+
+    @Test
+    public void lastGroupsAreBounded() {
+        configure(2);
+        SessionManager.groupOpened(1, "first");
+        SessionManager.groupOpened(2, "second");
+        SessionManager.groupOpened(3, "third");
+
+        Assertions.assertNull(SessionManager.getLastGroup(1));
+        Assertions.assertEquals("third", SessionManager.getLastGroup(3));
+    }
+}
@@ -0,0 +1,73 @@
+import server.managers.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Общая база H2 в памяти для тестов, которым нужен {@link DatabaseManager}.
+ * <br>Пул соединений можно создать только один раз, поэтому все такие тесты
+ * работают с одной базой и не должны полагаться на ее пустоту.
+ */
+final class TestDatabase {
+
+    private static boolean isStarted = false;
+
+    private TestDatabase() {}
+
+    static synchronized void init() {
+        if (isStarted)
+            return;
+        DatabaseManager.init(
+            "jdbc:h2:mem:tests;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+            "sa",
+            ""
+        );
+        isStarted = true;
+    }
+
+    /**
+     * Исполняет запрос и возвращает сгенерированный id, если он есть.
+     */
+    static int execute(String sql) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+            var keys = stmt.getGeneratedKeys();
+            return keys.next() ? keys.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @return первый столбец первой строки результата, либо -1, если строк нет
+     */
+    static int queryInt(String sql) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             var rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    /**
+     * Добавляет пользователя и возвращает его id.
+     */
+    static int addUser(String username) throws SQLException {
+        return execute("INSERT INTO users (username, name, password, salt)"
+            + " VALUES ('" + username + "', '" + username + "', 'x', 'x')");
+    }
+
+    /**
+     * Добавляет группу с указанными участниками и возвращает ее id.
+     */
+    static int addGroup(String groupname, int ownerId, int... memberIds) throws SQLException {
+        int groupId = execute("INSERT INTO groups (groupname, name, type, owner_id)"
+            + " VALUES ('" + groupname + "', '" + groupname + "', 0, " + ownerId + ")");
+        execute("INSERT INTO group_members (group_id, user_id) VALUES ("
+            + groupId + ", " + ownerId + ")");
+        for (int memberId : memberIds)
+            execute("INSERT INTO group_members (group_id, user_id) VALUES ("
+                + groupId + ", " + memberId + ")");
+        return groupId;
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.managers.UserDirectory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class UserDirectoryTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, UserDirectory.Entry> loader = (username) -> {
+        loads.incrementAndGet();
+        if (username.equals("ghost"))
+            return null;
+        return new UserDirectory.Entry(username.length(), username, "Name " + username);
+    };
+
+    @Test
+    public void loadsOnce() {
+        UserDirectory.configure(16, 60_000);
+
+        Assertions.assertEquals(5, UserDirectory.get("alice", loader).id());
+        Assertions.assertEquals(5, UserDirectory.get("alice", loader).id());
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void missingUserIsNotCached() {
+        UserDirectory.configure(16, 60_000);
+
+        Assertions.assertNull(UserDirectory.get("ghost", loader));
+        Assertions.assertNull(UserDirectory.get("ghost", loader));
+        Assertions.assertEquals(2, loads.get());
+        Assertions.assertEquals(0, UserDirectory.size());
+    }
+
+    @Test
+    public void putAndNameChanged() {
+        UserDirectory.configure(16, 60_000);
+        UserDirectory.put(new UserDirectory.Entry(7, "bob", "Bob"));
+
+        UserDirectory.nameChanged("bob", "Robert");
+        var entry = UserDirectory.get("bob", loader);
+        Assertions.assertEquals(7, entry.id());
+        Assertions.assertEquals("Robert", entry.name());
+        Assertions.assertEquals(0, loads.get());
+
+        // Смена имени пользователя не из кеша ничего не добавляет
+        UserDirectory.nameChanged("carol", "Carol");
+        Assertions.assertEquals(1, UserDirectory.size());
+    }
+
+    @Test
+    public void invalidate() {
+        UserDirectory.configure(16, 60_000);
+        UserDirectory.get("alice", loader);
+
+        UserDirectory.invalidate("alice");
+        UserDirectory.get("alice", loader);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void expires() {
+        UserDirectory.configure(16, 0);
+        UserDirectory.get("alice", loader);
+        UserDirectory.get("alice", loader);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void bounded() {
+        UserDirectory.configure(2, 60_000);
+        UserDirectory.get("a", loader);
+        UserDirectory.get("b", loader);
+        UserDirectory.get("c", loader);
+        Assertions.assertEquals(2, UserDirectory.size());
+    }
+}
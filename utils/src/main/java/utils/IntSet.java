@@ -0,0 +1,119 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемое множество целых чисел без упаковки в {@link Integer}.
+ * <br>Хранится как отсортированный массив: проверка вхождения - бинарный поиск,
+ * обход - простой проход по массиву.
+ * <br>Методы {@link #with(int)} и {@link #without(int)} возвращают новое множество,
+ * поэтому экземпляр можно безопасно читать из нескольких потоков.
+ *
+ * <pre><code>
+ *     var set = IntSet.of(3, 1, 2);
+ *     set.contains(2); // true
+ *     set = set.without(2);
+ *     for (int i = 0; i < set.size(); i++)
+ *         System.out.println(set.get(i)); // 1, 3
+ * </code></pre>
+ */
+public final class IntSet {
+
+    public static final IntSet EMPTY = new IntSet(new int[0]);
+
+    private final int[] values;
+
+    private IntSet(int[] sortedValues) {
+        this.values = sortedValues;
+    }
+
+    /**
+     * Создает множество из указанных чисел. Повторы отбрасываются.
+     */
+    public static IntSet of(int... values) {
+        if (values.length == 0)
+            return EMPTY;
+
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+
+        int size = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[size - 1])
+                sorted[size++] = sorted[i];
+        }
+        return new IntSet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Возвращает элемент по порядковому номеру (элементы упорядочены по возрастанию).
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Возвращает множество с добавленным элементом.
+     * Если элемент уже есть, возвращается то же множество.
+     */
+    public IntSet with(int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0)
+            return this;
+
+        index = -index - 1;
+        var result = new int[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return new IntSet(result);
+    }
+
+    /**
+     * Возвращает множество без указанного элемента.
+     * Если элемента нет, возвращается то же множество.
+     */
+    public IntSet without(int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0)
+            return this;
+        if (values.length == 1)
+            return EMPTY;
+
+        var result = new int[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return new IntSet(result);
+    }
+
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntSet other && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
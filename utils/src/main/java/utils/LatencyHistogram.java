@@ -0,0 +1,104 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Потокобезопасная гистограмма задержек в микросекундах.
+ *
+ * <p>Значения до 128 хранятся точно, дальше каждый интервал
+ * <code>[2^k, 2^(k+1))</code> делится на 64 равные корзины,
+ * так что погрешность перцентилей не превышает ~1.6%.
+ * Запись - одна атомарная операция, без блокировок и выделения памяти,
+ * поэтому гистограмму можно обновлять прямо на горячем пути.
+ *
+ * <pre><code>
+ *     var histogram = new LatencyHistogram();
+ *     histogram.record(1500);
+ *     var p99 = histogram.getPercentile(99.0);
+ * </code></pre>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * Значения больше <code>2^(MAX_EXPONENT + 1)</code> мкс (~25 дней) обрезаются.
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts =
+        new AtomicLongArray((MAX_EXPONENT - 4) * SUB_BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        var value = Math.clamp(micros, 0, MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Наибольшее значение, попадающее в корзину.
+     */
+    private static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (mantissa << shift) + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Возвращает значение, не меньше которого оказались
+     * <code>100 - percentile</code> процентов записей.
+     *
+     * @param percentile перцентиль от 0 до 100
+     * @return значение в микросекундах, либо 0, если записей нет
+     */
+    public long getPercentile(double percentile) {
+        var count = getCount();
+        if (count == 0)
+            return 0;
+
+        var target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Переносит накопленные записи в новую гистограмму и очищает эту.
+     * Записи, сделанные во время переноса, не теряются.
+     */
+    public LatencyHistogram snapshotAndReset() {
+        var snapshot = new LatencyHistogram();
+        for (int i = 0; i < counts.length(); i++)
+            snapshot.counts.set(i, counts.getAndSet(i, 0));
+        snapshot.max.set(max.getAndSet(0));
+        return snapshot;
+    }
+}
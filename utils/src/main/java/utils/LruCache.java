@@ -0,0 +1,127 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Потокобезопасный кеш ограниченного размера.
+ * При переполнении вытесняется запись, к которой дольше всего не обращались.
+ *
+ * <pre><code>
+ *     var cache = new LruCache&lt;Integer, String&gt;(2);
+ *     cache.put(1, "a");
+ *     cache.put(2, "b");
+ *     cache.get(1);
+ *     cache.put(3, "c"); // вытесняет 2
+ * </code></pre>
+ */
+public class LruCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public LruCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param onEvict вызывается для каждой вытесненной записи под блокировкой кеша,
+     *                поэтому должен быть быстрым и не обращаться к кешу.
+     *                Записи, удаленные явно, сюда не передаются.
+     */
+    public LruCache(int capacity, BiConsumer<K, V> onEvict) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= LruCache.this.capacity)
+                    return false;
+                if (onEvict != null)
+                    onEvict.accept(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return значение или <code>null</code>, если его нет в кеше
+     */
+    public synchronized V get(K key) {
+        var value = map.get(key);
+        if (value == null)
+            misses++;
+        else
+            hits++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /**
+     * Кладет значение, только если его еще нет в кеше.
+     *
+     * @return значение, оказавшееся в кеше
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        var old = map.putIfAbsent(key, value);
+        return old == null ? value : old;
+    }
+
+    /**
+     * Изменяет значение, если оно есть в кеше. Если функция вернет
+     * <code>null</code>, запись удаляется.
+     */
+    public synchronized void update(K key, Function<V, V> action) {
+        map.computeIfPresent(key, (k, v) -> action.apply(v));
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * Удаляет все записи, подходящие под условие. Порядок вытеснения остальных не меняется.
+     */
+    public synchronized void removeIf(BiPredicate<K, V> filter) {
+        map.entrySet().removeIf((entry) -> filter.test(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Возвращает копию всех значений кеша.
+     */
+    public synchronized List<V> values() {
+        return new ArrayList<>(map.values());
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
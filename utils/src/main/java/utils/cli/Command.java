@@ -9,7 +9,9 @@ import utils.kt.Check;
 import utils.kt.CheckIf;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static utils.cli.CommandErrors.CUSTOM_ERROR;
 import static utils.cli.CommandErrors.FURTHER_SUBCOMMANDS_EXPECTED;
@@ -24,6 +26,7 @@ public class Command<T> {
     final String base;
     final String helpDescription;
     final List<Command<T>> subcommands;
+    final Map<String, Command<T>> subcommandIndex;
     final List<Argument> arguments;
 
     final Apply<Context<T>> action;
@@ -45,6 +48,7 @@ public class Command<T> {
         this.base = base;
         this.helpDescription = helpDescription;
         this.subcommands = subcommands;
+        this.subcommandIndex = indexOf(subcommands);
         this.arguments = arguments;
         this.action = action;
         this.conditions = conditions;
@@ -52,6 +56,13 @@ public class Command<T> {
         this.isInvisible = isInvisible;
     }
 
+    private static <T> Map<String, Command<T>> indexOf(List<Command<T>> subcommands) {
+        var index = new HashMap<String, Command<T>>(subcommands.size() * 2);
+        for (var subcommand : subcommands)
+            index.putIfAbsent(subcommand.base, subcommand);
+        return index;
+    }
+
     public boolean is(Token token) {
         return base.equals(token.content());
     }
@@ -131,16 +142,18 @@ public class Command<T> {
         var nextSubcommand = context.position + 1;
         Command<T> foundSubcommand = null;
 
-        out:
-        while (context.tokens.size() > nextSubcommand) {
-            for (var subcommand : subcommands) {
+        if (!subcommandIndex.isEmpty()) {
+            while (context.tokens.size() > nextSubcommand) {
                 var sbToken = context.getToken(nextSubcommand);
-                if (sbToken.is(subcommand.base) && sbToken.isFunctional()) {
-                    foundSubcommand = subcommand;
-                    break out;
+                if (sbToken.isFunctional()) {
+                    foundSubcommand = subcommandIndex.get(sbToken.content());
+                    if (foundSubcommand != null)
+                        break;
                 }
+                nextSubcommand++;
             }
-            nextSubcommand++;
+        } else {
+            nextSubcommand = context.tokens.size();
         }
 
 
@@ -542,9 +555,9 @@ public class Command<T> {
                 subcommands.stream()
                     .map(Builder::build)
                     .toList(),
-                arguments,
+                List.copyOf(arguments),
                 action,
-                conditions,
+                List.copyOf(conditions),
                 isPhantom,
                 isInvisible
             );
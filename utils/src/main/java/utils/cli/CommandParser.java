@@ -0,0 +1,217 @@
+package utils.cli;
+
+import utils.cli.utils.Token;
+
+import java.util.List;
+
+import static utils.cli.CommandErrors.EMPTY_COMMAND;
+import static utils.cli.CommandErrors.INVALID_SEPARATOR;
+import static utils.cli.CommandErrors.NO_SEPARATION;
+import static utils.cli.CommandErrors.UNCLOSED_QUOTE;
+import static utils.cli.CommandErrors.UNEXPECTED_SYMBOL;
+
+/**
+ * Однопроходный разбор команды: проверка синтаксиса и разбиение на токены
+ * за один проход по строке, без регулярных выражений.
+ *
+ * <p>Грамматика совпадает с прежним регулярным выражением:
+ * <pre><code>
+ *     ^/
+ *     | (\w+ | (?&lt;!")"" | (?&lt;!")".*?(?:(?&lt;=[^\\])(?:\\\\)+|[^\\])")   - токены
+ *     | ([^"^[:alnum]]+?(?=\w|"|$) | ".*)                               - разделители
+ * </code></pre>
+ * Поэтому токены и позиции ошибок остаются прежними, включая особые случаи:
+ * <ul>
+ *     <li> Словом считаются только символы <code>[a-zA-Z0-9_]</code>
+ *     <li> Символы <code>"^:alnum</code> не могут входить в разделитель,
+ *          и последовательность, на которой не нашлось совпадения, пропускается
+ * </ul>
+ *
+ * @see CommandValidator
+ * @see CommandTokenizer
+ */
+final class CommandParser {
+
+    private CommandParser() {}
+
+    /**
+     * Разбирает команду.
+     *
+     * @param command команда
+     * @param tokens список, в который добавляются найденные токены, либо <code>null</code>
+     * @param stopOnError прекратить ли разбор на первой ошибке.
+     *                    Иначе разбор продолжается, и возвращается первая ошибка.
+     * @return первая синтаксическая ошибка, либо <code>null</code>
+     */
+    static CommandError parse(String command, List<Token> tokens, boolean stopOnError) {
+        int length = command.length();
+        if (length == 0)
+            return new CommandError(EMPTY_COMMAND, command, 0, 0);
+
+        CommandError error = null;
+        int pos = command.charAt(0) == '/' ? 1 : 0;
+
+        while (pos < length) {
+            char c = command.charAt(pos);
+            int end;
+
+            if (isWordChar(c)) {
+                end = pos + 1;
+                while (end < length && isWordChar(command.charAt(end)))
+                    end++;
+                if (tokens != null)
+                    tokens.add(new Token(command.substring(pos, end), pos, end, false));
+                pos = end;
+                continue;
+            }
+
+            if (c == '"') {
+                boolean afterQuote = pos > 0 && command.charAt(pos - 1) == '"';
+                end = afterQuote ? -1 : findClosingQuote(command, pos);
+                if (end != -1) {
+                    if (tokens != null) {
+                        var content = unescape(command, pos + 1, end - 1);
+                        tokens.add(new Token(content, pos, end, true));
+                    }
+                    pos = end;
+                    continue;
+                }
+
+                // Незакрытая кавычка поглощает остаток строки
+                end = pos + 1;
+                while (end < length && !isLineTerminator(command.charAt(end)))
+                    end++;
+                if (error == null)
+                    error = new CommandError(
+                        afterQuote ? NO_SEPARATION : UNCLOSED_QUOTE, command, pos, end
+                    );
+                if (stopOnError)
+                    return error;
+                pos = end;
+                continue;
+            }
+
+            end = findSeparatorEnd(command, pos);
+            if (end == -1) {
+                pos++;
+                continue;
+            }
+            if (error == null) {
+                if (c != ' ')
+                    error = new CommandError(INVALID_SEPARATOR, command, pos, end);
+                else if (end - pos > 1)
+                    error = new CommandError(UNEXPECTED_SYMBOL, command, pos + 1, end);
+            }
+            if (error != null && stopOnError)
+                return error;
+            pos = end;
+        }
+        return error;
+    }
+
+    /**
+     * Ищет кавычку, закрывающую открытую в позиции <code>open</code>.
+     * Кавычка закрывающая, если перед ней четное число обратных слешей.
+     *
+     * @return позиция после закрывающей кавычки, либо -1
+     */
+    private static int findClosingQuote(String command, int open) {
+        int length = command.length();
+        int backslashes = 0;
+
+        for (int i = open + 1; i < length; i++) {
+            char c = command.charAt(i);
+            if (c == '"' && backslashes % 2 == 0)
+                return i + 1;
+            if (c == '\\') {
+                backslashes++;
+                continue;
+            }
+            backslashes = 0;
+
+            // Перенос строки допустим только прямо перед закрывающей кавычкой
+            if (isLineTerminator(c))
+                return i + 1 < length && command.charAt(i + 1) == '"' ? i + 2 : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Ищет кратчайший разделитель, начинающийся в позиции <code>start</code>,
+     * за которым следует слово, кавычка или конец строки.
+     *
+     * @return позиция конца разделителя, либо -1
+     */
+    private static int findSeparatorEnd(String command, int start) {
+        int length = command.length();
+        if (!isSeparatorChar(command.charAt(start)))
+            return -1;
+
+        for (int end = start + 1; end <= length; end++) {
+            if (end == length || isEndOfInput(command, end))
+                return end;
+            char c = command.charAt(end);
+            if (isWordChar(c) || c == '"')
+                return end;
+            if (!isSeparatorChar(c))
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Конец строки в смысле <code>$</code>: сам конец,
+     * либо завершающий строку перенос.
+     */
+    private static boolean isEndOfInput(String command, int pos) {
+        int length = command.length();
+        if (pos == length - 2)
+            return command.charAt(pos) == '\r' && command.charAt(pos + 1) == '\n';
+        if (pos != length - 1)
+            return false;
+
+        char c = command.charAt(pos);
+        if (c == '\n')
+            return pos == 0 || command.charAt(pos - 1) != '\r';
+        return isLineTerminator(c);
+    }
+
+    private static String unescape(String command, int from, int to) {
+        int backslash = command.indexOf('\\', from);
+        if (backslash == -1 || backslash >= to)
+            return command.substring(from, to);
+
+        var builder = new StringBuilder(to - from);
+        builder.append(command, from, backslash);
+        boolean isEscaped = false;
+
+        for (int i = backslash; i < to; i++) {
+            char c = command.charAt(i);
+            if (c == '\\' && !isEscaped) {
+                isEscaped = true;
+                continue;
+            }
+            isEscaped = false;
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z'
+            || c >= 'A' && c <= 'Z'
+            || c >= '0' && c <= '9'
+            || c == '_';
+    }
+
+    private static boolean isSeparatorChar(char c) {
+        return switch (c) {
+            case '"', '^', ':', 'a', 'l', 'n', 'u', 'm' -> false;
+            default -> true;
+        };
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,50 @@
+package utils.cli;
+
+import utils.StringPrintWriter;
+
+/**
+ * Результат одного исполнения команды: ее вывод и ошибка, если она возникла.
+ * <br>Создается заново при каждом вызове
+ * {@link CustomCommandProcessor#run(String, Object, boolean)},
+ * поэтому один процессор можно использовать из нескольких потоков одновременно.
+ *
+ * <pre><code>
+ *     var result = processor.run("/myCommand", myData);
+ *     if (result.getError() != null)
+ *         System.out.println(result.getError().getMessage(false));
+ *     else
+ *         System.out.print(result.getOutput());
+ * </code></pre>
+ */
+public class CommandResult {
+
+    private final StringPrintWriter output = new StringPrintWriter();
+    private CommandError error = null;
+
+    CommandResult(boolean printAsHtml) {
+        output.printAsHtml = printAsHtml;
+    }
+
+    void setError(CommandError error) {
+        this.error = error;
+    }
+
+    /**
+     * @return ошибка исполнения или <code>null</code>, если все прошло успешно
+     */
+    public CommandError getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    public String getOutput() {
+        return output.toString();
+    }
+
+    StringPrintWriter getRawOutput() {
+        return output;
+    }
+}
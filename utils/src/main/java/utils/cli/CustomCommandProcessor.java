@@ -8,7 +8,9 @@ import utils.kt.ApplyStrict;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static utils.cli.CommandErrors.COMMAND_NOT_FOUND;
 import static utils.cli.CommandErrors.NOT_A_COMMAND;
@@ -43,19 +45,26 @@ import static utils.cli.CommandErrors.NOT_A_COMMAND;
  *
  * </code></pre>
  *
+ * <p>Методы {@link #execute(String, T)} и {@link #getOutput()} хранят результат
+ * в самом процессоре, поэтому пригодны только для однопоточного использования.
+ * Если процессор общий для нескольких потоков, следует использовать
+ * {@link #run(String, T, boolean)}: он возвращает отдельный {@link CommandResult}
+ * на каждый вызов и не требует синхронизации.
+ * <br>Команды следует регистрировать до начала исполнения.
+ *
  * @see CommandProcessor
  */
 public class CustomCommandProcessor<T> {
 
     private final StringPrintWriter output = new StringPrintWriter();
     private CommandError lastError = null;
-    private final ArrayList<Command<T>> registeredCommands = new ArrayList<>();
+    private final List<Command<T>> registeredCommands = new CopyOnWriteArrayList<>();
 
-    static final Pattern pattern = Pattern.compile(
-        "^/" // Начало строки
-            + "|(\\w+|(?<!\")\"\"|(?<!\")\".*?(?:(?<=[^\\\\])(?:\\\\\\\\)+|[^\\\\])\")"
-            + "|([^\"^[:alnum]]+?(?=\\w|\"|$)|\".*)" // Сепараторы
-    );
+    /**
+     * Команды по имени. Вместе с {@link Command#subcommandIndex} образует дерево,
+     * по которому команда находится за один проход по токенам.
+     */
+    private final Map<String, Command<T>> commandIndex = new ConcurrentHashMap<>();
 
     public CustomCommandProcessor() {
         createHelpCommand();
@@ -87,17 +96,16 @@ public class CustomCommandProcessor<T> {
     @Deprecated(forRemoval = true)
     public void register(Command<T> command) {
         registeredCommands.add(command);
+        commandIndex.putIfAbsent(command.base, command);
     }
 
     public void register(String command, ApplyStrict<Command.Builder<T>> action)
         throws IllegalArgumentException {
 
-        for (Command<T> c : registeredCommands) {
-            if (command.equals(c.base))
-                throw new IllegalArgumentException(
-                    "Command '" + command + "' already exists."
-                );
-        }
+        if (commandIndex.containsKey(command))
+            throw new IllegalArgumentException(
+                "Command '" + command + "' already exists."
+            );
 
         Command.Builder<T> c;
         try {
@@ -107,7 +115,16 @@ public class CustomCommandProcessor<T> {
         }
 
         action.run(c);
-        registeredCommands.add(c.build());
+        var built = c.build();
+        registeredCommands.add(built);
+        commandIndex.put(command, built);
+    }
+
+    /**
+     * @return зарегистрирована ли команда с таким именем
+     */
+    public boolean hasCommand(String command) {
+        return commandIndex.containsKey(command);
     }
 
     /**
@@ -138,44 +155,59 @@ public class CustomCommandProcessor<T> {
      *     <br>false, если возникла ошибка
      */
     public CommandError execute(String input, T contextData) {
-        lastError = internalExecute(input, contextData);
+        output.clear();
+        lastError = internalExecute(input, contextData, output);
         return lastError;
     }
 
-    private CommandError internalExecute(String input, T contextData) {
-        output.clear();
+    /**
+     * Исполняет команду, не затрагивая состояние процессора.
+     * <br>Безопасно для вызова из нескольких потоков одновременно.
+     *
+     * @param printAsHtml следует ли оформлять вывод команды в HTML
+     * @return вывод и ошибка данного исполнения
+     */
+    public CommandResult run(String input, T contextData, boolean printAsHtml) {
+        var result = new CommandResult(printAsHtml);
+        result.setError(internalExecute(input, contextData, result.getRawOutput()));
+        return result;
+    }
+
+    public CommandResult run(String input, T contextData) {
+        return run(input, contextData, false);
+    }
 
+    private CommandError internalExecute(String input, T contextData, StringPrintWriter output) {
         if (input.charAt(0) != '/')
             return new CommandError(NOT_A_COMMAND, input, 0, input.length());
 
         if (input.equals("/"))
             return new CommandError(NOT_A_COMMAND, input, 0, input.length());
 
-        lastError = CommandValidator.validate(input);
-        if (lastError != null)
-            return lastError;
+        // Проверка и разбиение на токены за один проход
+        List<Token> tokens = new ArrayList<>();
+        var syntaxError = CommandParser.parse(input, tokens, true);
+        if (syntaxError != null)
+            return syntaxError;
+        if (tokens.isEmpty())
+            return new CommandError(NOT_A_COMMAND, input, 0, input.length());
 
-        List<Token> tokens = CommandTokenizer.tokenize(input);
         var firstToken = tokens.getFirst();
-
-        for (var command : registeredCommands) {
-            if (!command.is(firstToken))
-                continue;
-
-            if (command.isPhantom != null)
-                return command.isPhantom;
-
-            var context = new Context<>(output, tokens, input, contextData);
-            if (command.isInvisible) {
-                return command.execute(context) != null
-                        ? new CommandError(COMMAND_NOT_FOUND, input, firstToken)
-                        : null;
-            }
-
-            return command.execute(context);
+        var command = commandIndex.get(firstToken.content());
+        if (command == null)
+            return new CommandError(COMMAND_NOT_FOUND, input, firstToken);
+
+        if (command.isPhantom != null)
+            return command.isPhantom;
+
+        var context = new Context<>(output, tokens, input, contextData);
+        if (command.isInvisible) {
+            return command.execute(context) != null
+                    ? new CommandError(COMMAND_NOT_FOUND, input, firstToken)
+                    : null;
         }
 
-        return new CommandError(COMMAND_NOT_FOUND, input, firstToken);
+        return command.execute(context);
     }
 
     private void createHelpCommand() {
@@ -197,25 +229,9 @@ public class CustomCommandProcessor<T> {
         Command<T> head = null;
 
         for (String subcommand : subcommands) {
-            if (head == null) {
-                for (var command : registeredCommands) {
-                    if (!command.base.equals(subcommand)) {
-                        continue;
-                    }
-                    head = command;
-                    break;
-                }
-            } else {
-                var hd = head;
-                head = null;
-                for (var command : hd.subcommands) {
-                    if (!command.base.equals(subcommand)) {
-                        continue;
-                    }
-                    head = command;
-                    break;
-                }
-            }
+            head = head == null
+                ? commandIndex.get(subcommand)
+                : head.subcommandIndex.get(subcommand);
 
             if (head == null || head.isInvisible) {
                 out.println(Ansi.applyStyle(
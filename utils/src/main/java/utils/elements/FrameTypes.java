@@ -0,0 +1,53 @@
+package utils.elements;
+
+/**
+ * Тип кадра двоичного протокола. Код типа - первый байт кадра после длины.
+ *
+ * @see utils.network.Frame
+ */
+public enum FrameTypes {
+    /**
+     * Произвольный текст, может содержать несколько строк.
+     * <br>Так передаются команды клиента и запросы сервера.
+     */
+    TEXT,
+    /**
+     * Одно сообщение чата.
+     */
+    CHAT,
+    /**
+     * Страница истории чата.
+     */
+    HISTORY,
+    /**
+     * Изменение статуса пользователя.
+     */
+    PRESENCE,
+    /**
+     * Результат исполнения команды.
+     */
+    RESULT,
+    /**
+     * Уведомление о новом сообщении в группе, которая у клиента не открыта.
+     * <br>Добавлен последним, чтобы не менять коды остальных типов.
+     */
+    UNREAD,
+    /**
+     * Состояние сессии: ответ на <code>/hello</code> и на вход в аккаунт.
+     * Содержит и числа непрочитанных сообщений.
+     */
+    SESSION;
+
+    private static final FrameTypes[] values = values();
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * @return тип по коду либо <code>null</code>, если код неизвестен
+     */
+    public static FrameTypes fromCode(byte code) {
+        return code >= 0 && code < values.length ? values[code] : null;
+    }
+}
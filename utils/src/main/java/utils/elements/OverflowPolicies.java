@@ -0,0 +1,24 @@
+package utils.elements;
+
+/**
+ * Что делать, если получатель не успевает забирать исходящие сообщения
+ * и его очередь переполнена.
+ *
+ * @see utils.network.OutboundQueue
+ */
+public enum OverflowPolicies {
+    /**
+     * Выбросить самые старые сообщения, чтобы освободить место.
+     */
+    DROP_OLDEST,
+    /**
+     * Разорвать соединение.
+     * <br>Следующие отправки в него бросают <code>IllegalStateException</code>,
+     * см. {@link utils.network.Connection}.
+     */
+    DISCONNECT,
+    /**
+     * Подождать освобождения места; если не дождались - разорвать соединение.
+     */
+    BLOCK
+}
@@ -0,0 +1,104 @@
+package utils.network;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Общий интерфейс соединения, в которое можно отправлять сообщения.
+ * <br>Реализуется как блокирующим {@link SimpleSocket},
+ * так и неблокирующим {@link NioConnection}.
+ *
+ * <p>Отправка в закрытое соединение бросает {@link IllegalStateException}.
+ * Соединение может быть закрыто другим потоком в любой момент: клиент отключился
+ * или не успевал забирать сообщения (см. {@link utils.elements.OverflowPolicies#DISCONNECT}).
+ * Поэтому при рассылке чужим соединениям исключение нужно ловить для каждого
+ * получателя отдельно, чтобы не прервать рассылку остальным.
+ */
+public interface Connection extends Closeable {
+
+    /**
+     * Отправляет сообщение, завершая его переносом строки.
+     *
+     * @param message сообщение
+     * @throws IllegalStateException если соединение закрыто
+     */
+    void sendln(String message) throws IllegalStateException;
+
+    /**
+     * Отправляет сообщение как есть.
+     *
+     * @param message сообщение
+     * @throws IllegalStateException если соединение закрыто
+     */
+    void send(String message) throws IllegalStateException;
+
+    /**
+     * Отправляет уже закодированные в UTF-8 байты одной записью.
+     * <br>Позиция переданного буфера не меняется, поэтому один и тот же буфер
+     * можно отправить в несколько соединений без копирования.
+     *
+     * @param data байты от текущей позиции до конца буфера
+     * @throws IllegalStateException если соединение закрыто
+     * @see Payload
+     */
+    void send(ByteBuffer data) throws IllegalStateException;
+
+    /**
+     * Отправляет сообщение в виде, подходящем соединению: кадром на двоичном протоколе
+     * и текстом - на текстовом.
+     * <br>Выбор вида и отправка не разделяются переключением {@link #switchToFrames(String)},
+     * поэтому текст не может оказаться после ответа на переключение. Проверять
+     * {@link #isBinary()} и затем вызывать {@link #send(ByteBuffer)} так нельзя.
+     *
+     * @param isHtml нужен ли текст в HTML-оформлении
+     * @throws IllegalStateException если соединение закрыто
+     */
+    default void send(Payload payload, boolean isHtml) throws IllegalStateException {
+        send(isBinary() ? payload.getFrame() : payload.get(isHtml));
+    }
+
+    boolean isClosed();
+
+    /**
+     * Переключает соединение на двоичный протокол {@link Frame}.
+     * <br>После переключения строки, отправленные через {@link #sendln(String)}
+     * и {@link #send(String)}, оборачиваются в кадры {@link utils.elements.FrameTypes#TEXT},
+     * а входящие данные разбираются как кадры. Буферы, отправляемые через
+     * {@link #send(ByteBuffer)}, должны содержать целые кадры.
+     *
+     * @param ack строка, отправляемая текстовым протоколом перед переключением,
+     *            либо <code>null</code>. Входящие данные разбираются как кадры
+     *            еще до ее отправки, поэтому собеседник может слать кадры сразу
+     *            после ее получения.
+     * @throws IllegalStateException если соединение закрыто
+     */
+    void switchToFrames(String ack) throws IllegalStateException;
+
+    /**
+     * @return true, если соединение переключено на двоичный протокол
+     */
+    boolean isBinary();
+
+    /**
+     * Суммарный размер сообщений, ожидающих отправки.
+     * <br>Для соединений без очереди всегда 0.
+     */
+    default long getQueuedBytes() {
+        return 0;
+    }
+
+    /**
+     * Сколько сообщений было выброшено из-за того, что получатель не успевал их забирать.
+     * <br>Для соединений без очереди всегда 0.
+     */
+    default long getDroppedCount() {
+        return 0;
+    }
+
+    /**
+     * Закрывает соединение.
+     * <br>Метод безопасен и может быть вызван повторно.
+     */
+    @Override
+    void close();
+}
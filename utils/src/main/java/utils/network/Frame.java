@@ -0,0 +1,367 @@
+package utils.network;
+
+import utils.elements.FrameTypes;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кадр двоичного протокола.
+ *
+ * <p>Формат кадра:
+ * <pre><code>
+ *     int32  длина (тип + данные)
+ *     int8   тип ({@link FrameTypes#code()})
+ *     ...    данные
+ * </code></pre>
+ * Строки кодируются как int32 длина и байты UTF-8, поэтому могут содержать
+ * переносы строк и не требуют экранирования.
+ *
+ * <p>Методы {@link #text(String)}, {@link #chat(Chat)} и т.п. сразу возвращают
+ * закодированный кадр, готовый к отправке через {@link Connection#send(ByteBuffer)}.
+ * Пришедший кадр разбирается соответствующим методом <code>getXxx()</code>.
+ *
+ * <pre><code>
+ *     connection.send(Frame.result(true, "Registered successfully."));
+ *     ...
+ *     var frame = socket.receiveFrame();
+ *     if (frame.type == FrameTypes.RESULT)
+ *         System.out.println(frame.getResult().text());
+ * </code></pre>
+ */
+public final class Frame {
+
+    /**
+     * Размер заголовка: длина и тип.
+     */
+    public static final int HEADER_SIZE = 5;
+
+    /**
+     * Наибольший допустимый размер кадра (без поля длины).
+     */
+    public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    /**
+     * Сообщение чата.
+     *
+     * @param time время отправки в миллисекундах с начала эпохи
+     */
+    public record Chat(int id, int senderId, String senderName, String content, long time) {}
+
+    /**
+     * Статус пользователя.
+     *
+     * @param lastSeen время последнего появления в сети в миллисекундах с начала эпохи
+     */
+    public record Presence(int userId, boolean isOnline, long lastSeen) {}
+
+    /**
+     * Уведомление о новом сообщении в неоткрытой группе: вместо всего сообщения
+     * передаются только имя группы и id сообщения.
+     */
+    public record Unread(String groupname, int messageId) {}
+
+    /**
+     * Число непрочитанных сообщений в группе.
+     */
+    public record UnreadCount(String groupname, int count) {}
+
+    /**
+     * Состояние сессии, которым сервер отвечает на {@link #HELLO} и на вход в аккаунт.
+     *
+     * @param username имя вошедшего пользователя, пустая строка - если вход не выполнен
+     * @param token токен для возобновления сессии, пустая строка - если вход не выполнен
+     * @param groupname последняя открытая группа, она уже открыта снова;
+     *                  пустая строка - если ее нет
+     * @param message сообщение для пользователя, например о неверном пароле
+     * @param unread числа непрочитанных сообщений в группах, где они есть
+     */
+    public record Session(
+        String username, String token, String groupname, String message, List<UnreadCount> unread
+    ) {
+        public boolean isAuthenticated() {
+            return !username.isEmpty();
+        }
+    }
+
+    /**
+     * Результат исполнения команды.
+     */
+    public record Result(boolean isSuccessful, String text) {}
+
+    /**
+     * Строка, которой клиент просит перейти на двоичный протокол.
+     * Сервер отвечает той же строкой, после чего обе стороны обмениваются кадрами.
+     *
+     * @see Connection#switchToFrames(String)
+     */
+    public static final String NEGOTIATION = "/protocol binary";
+
+    /**
+     * Первая строка клиента, заменяющая запрос типа клиента, переход на двоичный
+     * протокол и вход в аккаунт:
+     * <pre><code>
+     *     /hello &lt;type&gt; &lt;version&gt; &lt;binary|text&gt; [login &lt;user&gt; &lt;pass&gt;]
+     *     /hello &lt;type&gt; &lt;version&gt; &lt;binary|text&gt; [resume &lt;token&gt;]
+     * </code></pre>
+     * Сервер отвечает одним кадром {@link FrameTypes#SESSION}
+     * (на текстовом протоколе - строкой <code>/session</code> и связанными с ней строками).
+     */
+    public static final String HELLO = "/hello";
+
+    /**
+     * Версия протокола, передаваемая в {@link #HELLO}.
+     */
+    public static final int PROTOCOL_VERSION = 1;
+
+    public final FrameTypes type;
+    private final ByteBuffer payload;
+
+    Frame(FrameTypes type, ByteBuffer payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    /**
+     * Кадр {@link FrameTypes#TEXT} из уже полученной строки.
+     * Позволяет разбирать текстовый и двоичный протоколы одним кодом.
+     */
+    static Frame ofText(String text) {
+        var buffer = text(text);
+        buffer.position(HEADER_SIZE);
+        return new Frame(FrameTypes.TEXT, buffer.slice());
+    }
+
+    /**
+     * Отбрасывает завершающий перенос строки: в кадре граница сообщения
+     * задается длиной, а не переносом.
+     */
+    static String stripLineEnd(String message) {
+        return message.endsWith("\n")
+            ? message.substring(0, message.length() - 1)
+            : message;
+    }
+
+    // ---------------------------------
+
+    public static ByteBuffer text(String text) {
+        return new Encoder(FrameTypes.TEXT).putString(text).finish();
+    }
+
+    public static ByteBuffer chat(Chat chat) {
+        return putChat(new Encoder(FrameTypes.CHAT), chat).finish();
+    }
+
+    public static ByteBuffer history(List<Chat> page) {
+        var encoder = new Encoder(FrameTypes.HISTORY).putInt(page.size());
+        for (var chat : page)
+            putChat(encoder, chat);
+        return encoder.finish();
+    }
+
+    public static ByteBuffer presence(Presence presence) {
+        return new Encoder(FrameTypes.PRESENCE)
+            .putInt(presence.userId())
+            .putBoolean(presence.isOnline())
+            .putLong(presence.lastSeen())
+            .finish();
+    }
+
+    public static ByteBuffer unread(Unread unread) {
+        return new Encoder(FrameTypes.UNREAD)
+            .putString(unread.groupname())
+            .putInt(unread.messageId())
+            .finish();
+    }
+
+    public static ByteBuffer session(Session session) {
+        var encoder = new Encoder(FrameTypes.SESSION)
+            .putString(session.username())
+            .putString(session.token())
+            .putString(session.groupname())
+            .putString(session.message())
+            .putInt(session.unread().size());
+        for (var count : session.unread())
+            encoder.putString(count.groupname()).putInt(count.count());
+        return encoder.finish();
+    }
+
+    public static ByteBuffer result(boolean isSuccessful, String text) {
+        return new Encoder(FrameTypes.RESULT)
+            .putBoolean(isSuccessful)
+            .putString(text)
+            .finish();
+    }
+
+    private static Encoder putChat(Encoder encoder, Chat chat) {
+        return encoder
+            .putInt(chat.id())
+            .putInt(chat.senderId())
+            .putString(chat.senderName())
+            .putString(chat.content())
+            .putLong(chat.time());
+    }
+
+    // ---------------------------------
+
+    public String getText() {
+        ensureType(FrameTypes.TEXT);
+        return getString(payload.duplicate());
+    }
+
+    public Chat getChat() {
+        ensureType(FrameTypes.CHAT);
+        return getChat(payload.duplicate());
+    }
+
+    public List<Chat> getHistory() {
+        ensureType(FrameTypes.HISTORY);
+        var buffer = payload.duplicate();
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining())
+            throw new IllegalArgumentException("Malformed history frame");
+
+        var page = new ArrayList<Chat>(size);
+        for (int i = 0; i < size; i++)
+            page.add(getChat(buffer));
+        return page;
+    }
+
+    public Presence getPresence() {
+        ensureType(FrameTypes.PRESENCE);
+        var buffer = payload.duplicate();
+        return new Presence(buffer.getInt(), buffer.get() != 0, buffer.getLong());
+    }
+
+    public Unread getUnread() {
+        ensureType(FrameTypes.UNREAD);
+        var buffer = payload.duplicate();
+        return new Unread(getString(buffer), buffer.getInt());
+    }
+
+    public Session getSession() {
+        ensureType(FrameTypes.SESSION);
+        var buffer = payload.duplicate();
+        return new Session(
+            getString(buffer),
+            getString(buffer),
+            getString(buffer),
+            getString(buffer),
+            getUnreadCounts(buffer)
+        );
+    }
+
+    public Result getResult() {
+        ensureType(FrameTypes.RESULT);
+        var buffer = payload.duplicate();
+        return new Result(buffer.get() != 0, getString(buffer));
+    }
+
+    private void ensureType(FrameTypes expected) {
+        if (type != expected)
+            throw new IllegalStateException("Frame " + type + " is not " + expected);
+    }
+
+    private static List<UnreadCount> getUnreadCounts(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining())
+            throw new IllegalArgumentException("Malformed unread counts");
+
+        var counts = new ArrayList<UnreadCount>(size);
+        for (int i = 0; i < size; i++)
+            counts.add(new UnreadCount(getString(buffer), buffer.getInt()));
+        return counts;
+    }
+
+    private static Chat getChat(ByteBuffer buffer) {
+        return new Chat(
+            buffer.getInt(),
+            buffer.getInt(),
+            getString(buffer),
+            getString(buffer),
+            buffer.getLong()
+        );
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+        var result = new String(
+            buffer.array(),
+            buffer.arrayOffset() + buffer.position(),
+            length,
+            StandardCharsets.UTF_8
+        );
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Frame[" + type + ", " + payload.remaining() + " bytes]";
+    }
+
+    // ---------------------------------
+
+    /**
+     * Собирает кадр в растущий буфер, в конце дописывая длину в заголовок.
+     */
+    private static class Encoder {
+        private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        Encoder(FrameTypes type) {
+            buffer.putInt(0);
+            buffer.put(type.code());
+        }
+
+        private void ensureCapacity(int extra) {
+            if (buffer.remaining() >= extra)
+                return;
+            var bigger = ByteBuffer.allocate(
+                Math.max(buffer.capacity() * 2, buffer.position() + extra)
+            );
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+
+        Encoder putInt(int value) {
+            ensureCapacity(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        Encoder putLong(long value) {
+            ensureCapacity(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        Encoder putBoolean(boolean value) {
+            ensureCapacity(1);
+            buffer.put((byte) (value ? 1 : 0));
+            return this;
+        }
+
+        Encoder putString(String value) {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(4 + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+            return this;
+        }
+
+        ByteBuffer finish() {
+            int size = buffer.position() - 4;
+            if (size > MAX_FRAME_SIZE)
+                throw new IllegalArgumentException("Frame is too large: " + size);
+            buffer.putInt(0, size);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package utils.network;
+
+import utils.elements.FrameTypes;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Собирает кадры {@link Frame} из приходящих частями байтов.
+ *
+ * <pre><code>
+ *     var decoder = new FrameDecoder();
+ *     if (!decoder.feed(readBuffer, (frame) -> process(frame)))
+ *         connection.close(); // поврежденный или слишком большой кадр
+ * </code></pre>
+ */
+public class FrameDecoder {
+
+    private final ByteBuffer header = ByteBuffer.allocate(Frame.HEADER_SIZE);
+    private ByteBuffer body = null;
+    private FrameTypes type = null;
+
+    /**
+     * Разбирает все доступные байты буфера. Для каждого собранного кадра
+     * вызывается <code>onFrame</code>.
+     *
+     * @return false, если кадр поврежден: неизвестный тип или недопустимая длина
+     */
+    public boolean feed(ByteBuffer buffer, Consumer<Frame> onFrame) {
+        while (true) {
+            if (body == null) {
+                if (!buffer.hasRemaining())
+                    return true;
+                transfer(buffer, header);
+                if (header.hasRemaining())
+                    return true;
+
+                header.flip();
+                int size = header.getInt();
+                type = FrameTypes.fromCode(header.get());
+                header.clear();
+                if (type == null || size < 1 || size > Frame.MAX_FRAME_SIZE)
+                    return false;
+                body = ByteBuffer.allocate(size - 1);
+            }
+
+            // Кадр отдается, как только тело заполнено, даже если оно пустое
+            // и входные байты уже закончились
+            transfer(buffer, body);
+            if (body.hasRemaining())
+                return true;
+
+            body.flip();
+            var frame = new Frame(type, body);
+            body = null;
+            type = null;
+            onFrame.accept(frame);
+        }
+    }
+
+    private static void transfer(ByteBuffer from, ByteBuffer to) {
+        int count = Math.min(from.remaining(), to.remaining());
+        var slice = from.slice(from.position(), count);
+        to.put(slice);
+        from.position(from.position() + count);
+    }
+
+    /**
+     * Читает один кадр из блокирующего потока.
+     *
+     * @throws EOFException если поток закончился
+     * @throws IOException если кадр поврежден или произошла ошибка чтения
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        var type = FrameTypes.fromCode(in.readByte());
+        if (type == null || size < 1 || size > Frame.MAX_FRAME_SIZE)
+            throw new IOException("Malformed frame");
+
+        var body = new byte[size - 1];
+        in.readFully(body);
+        return new Frame(type, ByteBuffer.wrap(body));
+    }
+}
@@ -0,0 +1,316 @@
+package utils.network;
+
+import utils.elements.FrameTypes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Неблокирующее соединение, обслуживаемое {@link NioServer}.
+ *
+ * <p>Чтение происходит только в потоке селектора: пришедшие байты
+ * режутся на строки по символу <code>'\n'</code>, и каждая строка
+ * передается слушателю сервера. Обработчики одного соединения
+ * исполняются строго по очереди, но могут выполняться на любом потоке пула.
+ *
+ * <p>После {@link #switchToFrames(String)} байты разбираются уже как кадры
+ * {@link Frame}, а слушателю передается текст кадров {@link FrameTypes#TEXT}.
+ *
+ * <p>Отправка возможна из любого потока. Если сокет не может принять
+ * данные сразу, остаток ставится в очередь и дописывается селектором.
+ * Размер очереди и поведение при ее переполнении задаются
+ * в {@link NioServer#setOutboundLimit}.
+ */
+public class NioConnection implements Connection {
+
+    private final NioServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    /**
+     * Недочитанная строка. Создается лениво, чтобы простаивающие
+     * соединения не занимали память.
+     */
+    private ByteArrayOutputStream partialLine = null;
+
+    private volatile FrameDecoder frameDecoder = null;
+    private volatile boolean isBinary = false;
+
+    private final OutboundQueue writeQueue;
+    private final Object flushLock = new Object();
+
+    /**
+     * Отправки выбирают между текстом и кадром под общей блокировкой,
+     * а {@link #switchToFrames(String)} ставит ответ в очередь и переключается
+     * под исключительной. Иначе текст, выбранный до переключения, мог бы попасть
+     * в очередь после ответа, и собеседник принял бы его за кадр.
+     */
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+    NioConnection(NioServer server, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.writeQueue = server.createOutboundQueue();
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (isClosed.get())
+            throw new IllegalStateException("Socket is closed");
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed.get();
+    }
+
+    @Override
+    public void sendln(String message) throws IllegalStateException {
+        ensureOpen();
+        switchLock.readLock().lock();
+        try {
+            if (isBinary)
+                write(Frame.text(message));
+            else
+                write(encode(message + '\n'));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void send(String message) throws IllegalStateException {
+        ensureOpen();
+        switchLock.readLock().lock();
+        try {
+            if (isBinary)
+                write(Frame.text(Frame.stripLineEnd(message)));
+            else
+                write(encode(message));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void send(Payload payload, boolean isHtml) throws IllegalStateException {
+        ensureOpen();
+        switchLock.readLock().lock();
+        try {
+            write((isBinary ? payload.getFrame() : payload.get(isHtml)).duplicate());
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void switchToFrames(String ack) throws IllegalStateException {
+        ensureOpen();
+        switchLock.writeLock().lock();
+        try {
+            frameDecoder = new FrameDecoder();
+            if (ack != null)
+                write(encode(ack + '\n'));
+            isBinary = true;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    private static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean isBinary() {
+        return isBinary;
+    }
+
+    @Override
+    public void send(ByteBuffer data) throws IllegalStateException {
+        ensureOpen();
+        write(data.duplicate());
+    }
+
+    private void write(ByteBuffer buffer) {
+        if (!writeQueue.offer(buffer)) {
+            System.err.println("Client is too slow, closing " + this);
+            close();
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Пишет в сокет сообщения из очереди, пока он их принимает.
+     * Если сокет переполнен, остаток допишет селектор.
+     */
+    private void flush() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    setWriteInterest(true);
+                    return;
+                }
+                writeQueue.remove();
+            }
+            setWriteInterest(false);
+        }
+    }
+
+    private void setWriteInterest(boolean enabled) {
+        try {
+            var ops = key.interestOps();
+            var newOps = enabled
+                ? ops | SelectionKey.OP_WRITE
+                : ops & ~SelectionKey.OP_WRITE;
+            if (ops == newOps)
+                return;
+            key.interestOps(newOps);
+        } catch (CancelledKeyException e) {
+            return;
+        }
+        if (enabled)
+            server.wakeup();
+    }
+
+    /**
+     * Дописывает накопленные в очереди данные.
+     * Вызывается потоком селектора.
+     */
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return writeQueue.getQueuedBytes();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return writeQueue.getDroppedCount();
+    }
+
+    /**
+     * Разбирает прочитанные селектором байты на строки или кадры.
+     * Вызывается потоком селектора.
+     *
+     * @param buffer буфер, готовый к чтению (после {@link ByteBuffer#flip()})
+     * @return false, если строка превысила допустимую длину или кадр поврежден
+     */
+    boolean onRead(ByteBuffer buffer) {
+        var decoder = frameDecoder;
+        if (decoder != null)
+            return decoder.feed(buffer, this::onFrame);
+
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b != '\n') {
+                if (partialLine == null)
+                    partialLine = new ByteArrayOutputStream(64);
+                if (partialLine.size() >= NioServer.MAX_LINE_LENGTH)
+                    return false;
+                partialLine.write(b);
+                continue;
+            }
+
+            var line = partialLine == null
+                ? ""
+                : partialLine.toString(StandardCharsets.UTF_8);
+            partialLine = null;
+            if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r')
+                line = line.substring(0, line.length() - 1);
+
+            var finalLine = line;
+            dispatch(() -> server.listener.onLine(this, finalLine));
+        }
+        return true;
+    }
+
+    private void onFrame(Frame frame) {
+        if (frame.type != FrameTypes.TEXT) {
+            System.err.println("Unexpected " + frame + " from " + this);
+            return;
+        }
+        var text = frame.getText();
+        dispatch(() -> server.listener.onLine(this, text));
+    }
+
+    /**
+     * Ставит задачу в очередь соединения. Задачи одного соединения
+     * исполняются последовательно, в порядке поступления.
+     */
+    void dispatch(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true))
+            server.executor.execute(this::drain);
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error processing connection task: " + e);
+            }
+        }
+        isScheduled.set(false);
+        if (!tasks.isEmpty())
+            schedule();
+    }
+
+    /**
+     * Закрывает соединение. Слушатель сервера будет уведомлен
+     * после обработки всех уже полученных строк.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если соединение закрыто.
+     */
+    @Override
+    public void close() {
+        if (!isClosed.compareAndSet(false, true))
+            return;
+
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        writeQueue.clear();
+        dispatch(() -> server.listener.onDisconnect(this));
+        server.wakeup();
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return "NioConnection[" + channel.getRemoteAddress() + "]";
+        } catch (IOException e) {
+            return "NioConnection[closed]";
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package utils.network;
+
+import utils.elements.OverflowPolicies;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Неблокирующий сервер на основе {@link Selector}.
+ *
+ * <p>В отличие от {@link SimpleServerSocket}, не требует отдельного потока
+ * на каждого клиента: все соединения обслуживаются одним потоком селектора,
+ * а пришедшие строки обрабатываются на переданном пуле потоков.
+ * Строковый протокол тот же: одно сообщение - одна строка.
+ * Соединение может перейти на двоичный протокол, см. {@link Frame}.
+ *
+ * <pre><code>
+ *     var server = new NioServer(8080, listener, Executors.newFixedThreadPool(4));
+ *     if (!server.isClosed())
+ *         server.start();
+ * </code></pre>
+ *
+ * <p>После окончания работы с этим классом должен
+ * быть вызван метод {@link #close()}
+ */
+public class NioServer implements Closeable {
+
+    /**
+     * Максимальная длина одной строки в байтах.
+     * Соединения, присылающие строки длиннее, закрываются.
+     */
+    public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Обработчик событий соединений.
+     * <br>Методы вызываются на потоках пула, для одного соединения - строго по очереди.
+     */
+    public interface Listener {
+        void onConnect(NioConnection connection);
+
+        void onLine(NioConnection connection, String line);
+
+        void onDisconnect(NioConnection connection);
+    }
+
+    final Listener listener;
+    final Executor executor;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Общий для всех соединений буфер чтения. Используется только потоком селектора.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private volatile boolean isClosed = false;
+
+    private int outboundBytes = OutboundQueue.UNBOUNDED;
+    private OverflowPolicies overflowPolicy = OverflowPolicies.DISCONNECT;
+    private long blockTimeoutMs = 0;
+
+    private int receiveBufferBytes = 0;
+    private int sendBufferBytes = 0;
+
+    public NioServer(int port, Listener listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            System.err.println("Error creating server socket: " + e.getMessage());
+            // Не close(): переопределяемый метод нельзя вызывать из конструктора
+            isClosed = true;
+            closeChannels();
+        }
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Возвращает порт, на котором сервер принимает соединения.
+     * <br>Полезно, если сервер был создан с портом 0.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Ограничивает очередь исходящих сообщений каждого соединения.
+     * Действует на соединения, принятые после вызова.
+     * <br>По умолчанию очередь не ограничена.
+     *
+     * @see OutboundQueue
+     */
+    public void setOutboundLimit(int maxBytes, OverflowPolicies policy, long blockTimeoutMs) {
+        this.outboundBytes = maxBytes;
+        this.overflowPolicy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    /**
+     * Задает размеры буферов сокета (SO_RCVBUF, SO_SNDBUF) для соединений,
+     * принятых после вызова.
+     *
+     * @param receiveBytes размер буфера приема, 0 - оставить системный
+     * @param sendBytes размер буфера отправки, 0 - оставить системный
+     */
+    public void setSocketBuffers(int receiveBytes, int sendBytes) {
+        this.receiveBufferBytes = receiveBytes;
+        this.sendBufferBytes = sendBytes;
+    }
+
+    OutboundQueue createOutboundQueue() {
+        return new OutboundQueue(outboundBytes, overflowPolicy, blockTimeoutMs);
+    }
+
+    /**
+     * Запускает поток селектора.
+     */
+    public void start() {
+        var thread = new Thread(this::selectLoop, "nio-selector");
+        thread.start();
+    }
+
+    void wakeup() {
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    private void selectLoop() {
+        while (!isClosed) {
+            try {
+                selector.select();
+            } catch (IOException | ClosedSelectorException e) {
+                break;
+            }
+            if (isClosed)
+                break;
+
+            var iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                var key = iterator.next();
+                iterator.remove();
+
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable())
+                    accept();
+                else
+                    process(key);
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            if (receiveBufferBytes > 0)
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+            if (sendBufferBytes > 0)
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferBytes);
+        } catch (IOException e) {
+            System.err.println("Error accepting client: " + e.getMessage());
+            return;
+        }
+
+        try {
+            var key = channel.register(selector, SelectionKey.OP_READ);
+            var connection = new NioConnection(this, channel, key);
+            key.attach(connection);
+            connection.dispatch(() -> listener.onConnect(connection));
+        } catch (IOException e) {
+            System.err.println("Error registering client: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void process(SelectionKey key) {
+        var connection = (NioConnection) key.attachment();
+        try {
+            if (key.isWritable())
+                connection.onWritable();
+
+            if (key.isValid() && key.isReadable()) {
+                readBuffer.clear();
+                int read = ((SocketChannel) key.channel()).read(readBuffer);
+                if (read == -1) {
+                    connection.close();
+                    return;
+                }
+                readBuffer.flip();
+                if (!connection.onRead(readBuffer)) {
+                    System.err.println("Malformed input, closing " + connection);
+                    connection.close();
+                }
+            }
+        } catch (IOException | CancelledKeyException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Останавливает селектор и закрывает серверный сокет.
+     * Уже подключенные соединения следует закрыть отдельно.
+     * <br>
+     * <br>Данный метод безопасен, и может быть вызван, даже если сервер закрыт.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        closeChannels();
+    }
+
+    private void closeChannels() {
+        try {
+            if (serverChannel != null)
+                serverChannel.close();
+        } catch (IOException ignored) {}
+        try {
+            if (selector != null)
+                selector.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,223 @@
+package utils.network;
+
+import utils.elements.OverflowPolicies;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная по размеру очередь исходящих сообщений одного соединения.
+ *
+ * <p>Отправители кладут сообщения методом {@link #offer(ByteBuffer)},
+ * а единственный писатель забирает их парой {@link #peek()} и {@link #remove()}.
+ * Если сообщения не помещаются в {@link #getMaxBytes()} байт,
+ * поступаем согласно {@link OverflowPolicies}.
+ * <br>Первое сообщение очереди может быть уже частично отправлено,
+ * поэтому оно никогда не выбрасывается.
+ *
+ * <pre><code>
+ *     var queue = new OutboundQueue(64 * 1024, OverflowPolicies.DROP_OLDEST, 0);
+ *     if (!queue.offer(buffer))
+ *         connection.close(); // получатель не справляется
+ * </code></pre>
+ */
+public class OutboundQueue {
+
+    /**
+     * Очередь без ограничения размера.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final AtomicLong totalDropped = new AtomicLong();
+    private static final AtomicLong totalOverflows = new AtomicLong();
+
+    private final int maxBytes;
+    private final OverflowPolicies policy;
+    private final long blockTimeoutMs;
+
+    /**
+     * Сообщение и его исходный размер: позиция буфера сдвигается по мере отправки.
+     */
+    private record Entry(ByteBuffer buffer, int size) {}
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasSpace = lock.newCondition();
+
+    private volatile long queuedBytes = 0;
+    private volatile long dropped = 0;
+
+    /**
+     * @param maxBytes наибольший суммарный размер сообщений в очереди
+     * @param policy что делать при переполнении
+     * @param blockTimeoutMs сколько ждать освобождения места
+     *                       при {@link OverflowPolicies#BLOCK}
+     */
+    public OutboundQueue(int maxBytes, OverflowPolicies policy, long blockTimeoutMs) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Queue size must be positive: " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    /**
+     * Кладет сообщение в очередь. Буфер не копируется и не должен меняться после вызова.
+     * <br>Сообщение, которое больше всей очереди, принимается, только если очередь пуста.
+     * <br>При {@link OverflowPolicies#BLOCK} поток может быть заблокирован
+     * на время до <code>blockTimeoutMs</code>.
+     *
+     * @return false, если получатель не справляется и соединение следует разорвать
+     */
+    public boolean offer(ByteBuffer buffer) {
+        var size = buffer.remaining();
+        lock.lock();
+        try {
+            if (!fits(size)) {
+                switch (policy) {
+                    case DROP_OLDEST -> dropOldest(size);
+                    case DISCONNECT -> {
+                        totalOverflows.incrementAndGet();
+                        return false;
+                    }
+                    case BLOCK -> {
+                        if (!awaitSpace(size)) {
+                            totalOverflows.incrementAndGet();
+                            return false;
+                        }
+                    }
+                }
+            }
+
+            queue.add(new Entry(buffer, size));
+            queuedBytes += size;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(int size) {
+        return queue.isEmpty() || queuedBytes + size <= maxBytes;
+    }
+
+    private void dropOldest(int size) {
+        // Первое сообщение могло начать отправляться, поэтому выбрасываем со второго
+        var head = queue.poll();
+        while (!queue.isEmpty() && queuedBytes + size > maxBytes) {
+            queuedBytes -= queue.poll().size();
+            dropped++;
+            totalDropped.incrementAndGet();
+        }
+        queue.addFirst(head);
+    }
+
+    private boolean awaitSpace(int size) {
+        var nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        try {
+            while (!fits(size)) {
+                if (nanos <= 0)
+                    return false;
+                nanos = hasSpace.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает первое сообщение, не удаляя его, либо <code>null</code>, если очередь пуста.
+     * <br>Вызывается только писателем.
+     */
+    public ByteBuffer peek() {
+        lock.lock();
+        try {
+            var head = queue.peek();
+            return head == null ? null : head.buffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет первое сообщение после того, как оно полностью отправлено.
+     * <br>Вызывается только писателем.
+     */
+    public void remove() {
+        lock.lock();
+        try {
+            var head = queue.poll();
+            if (head == null)
+                return;
+            queuedBytes -= head.size();
+            hasSpace.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Выбрасывает все сообщения. Используется при закрытии соединения.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            queue.clear();
+            queuedBytes = 0;
+            hasSpace.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public OverflowPolicies getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Суммарный размер сообщений, ожидающих отправки.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Число сообщений, выброшенных из этой очереди.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Число сообщений, выброшенных из всех очередей.
+     */
+    public static long getTotalDropped() {
+        return totalDropped.get();
+    }
+
+    /**
+     * Сколько раз получатель не справился и соединение было разорвано.
+     */
+    public static long getTotalOverflows() {
+        return totalOverflows.get();
+    }
+}
@@ -0,0 +1,116 @@
+package utils.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Сообщение, закодированное один раз для рассылки многим получателям.
+ *
+ * <p>Текст собирается и кодируется в UTF-8 не более одного раза для каждого
+ * вида оформления (ANSI для консоли и HTML для графического клиента),
+ * после чего один и тот же буфер отправляется всем получателям
+ * через {@link Connection#send(ByteBuffer)}.
+ *
+ * <pre><code>
+ *     var payload = Payload.of((isHtml) -> Ansi.applyChoose(text, style, isHtml) + "\n");
+ *     for (var connection : connections)
+ *         connection.send(payload.get(isHtml(connection)));
+ * </code></pre>
+ *
+ * <p>Для соединений на двоичном протоколе сообщение кодируется отдельно,
+ * в виде кадра {@link Frame} (см. {@link #getFrame()}).
+ */
+public final class Payload {
+
+    /**
+     * Формирует текст сообщения для указанного вида оформления.
+     */
+    public interface Renderer {
+        String render(boolean isHtml);
+    }
+
+    private final Renderer renderer;
+    private final Supplier<ByteBuffer> framer;
+
+    private volatile ByteBuffer ansi = null;
+    private volatile ByteBuffer html = null;
+    private volatile ByteBuffer frame = null;
+
+    private Payload(Renderer renderer, Supplier<ByteBuffer> framer) {
+        this.renderer = renderer;
+        this.framer = framer != null
+            ? framer
+            : () -> Frame.text(Frame.stripLineEnd(renderer.render(true)));
+    }
+
+    /**
+     * Сообщение, текст которого зависит от вида оформления.
+     * Текст формируется лениво, при первом запросе.
+     */
+    public static Payload of(Renderer renderer) {
+        return new Payload(renderer, null);
+    }
+
+    /**
+     * Сообщение, у которого для двоичного протокола есть собственный кадр.
+     * И текст, и кадр формируются лениво.
+     *
+     * @param framer создает закодированный кадр, например {@link Frame#chat(Frame.Chat)}
+     */
+    public static Payload of(Renderer renderer, Supplier<ByteBuffer> framer) {
+        return new Payload(renderer, framer);
+    }
+
+    /**
+     * Сообщение с одинаковым текстом для всех получателей.
+     */
+    public static Payload of(String text) {
+        return of(text, null);
+    }
+
+    /**
+     * Сообщение с одинаковым текстом для всех получателей
+     * и собственным кадром для двоичного протокола.
+     */
+    public static Payload of(String text, Supplier<ByteBuffer> framer) {
+        var payload = new Payload((isHtml) -> text, framer);
+        payload.ansi = encode(text);
+        payload.html = payload.ansi;
+        return payload;
+    }
+
+    /**
+     * Возвращает закодированное сообщение. Буфер общий для всех вызовов
+     * и не должен изменяться; для отправки используйте
+     * {@link Connection#send(ByteBuffer)}, который не меняет его позицию.
+     */
+    public ByteBuffer get(boolean isHtml) {
+        if (isHtml) {
+            var buffer = html;
+            if (buffer == null)
+                html = buffer = encode(renderer.render(true));
+            return buffer;
+        }
+
+        var buffer = ansi;
+        if (buffer == null)
+            ansi = buffer = encode(renderer.render(false));
+        return buffer;
+    }
+
+    /**
+     * Возвращает сообщение в виде кадра двоичного протокола. Если кадр не был
+     * задан явно, это кадр {@link utils.elements.FrameTypes#TEXT} с HTML-текстом.
+     */
+    public ByteBuffer getFrame() {
+        var buffer = frame;
+        if (buffer == null)
+            frame = buffer = framer.get();
+        return buffer;
+    }
+
+    private static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,175 @@
+package utils.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обертка над блокирующим соединением, отправляющая сообщения через
+ * ограниченную очередь {@link OutboundQueue}.
+ *
+ * <p>Отправители только кладут сообщения в очередь и сразу возвращаются,
+ * а запись в сокет выполняет отдельная задача на переданном пуле.
+ * Поэтому медленный получатель не задерживает рассылку остальным.
+ *
+ * <pre><code>
+ *     var queue = new OutboundQueue(256 * 1024, OverflowPolicies.DROP_OLDEST, 0);
+ *     var writer = Executors.newVirtualThreadPerTaskExecutor();
+ *     var connection = new QueuedConnection(socket, queue, writer);
+ *     connection.sendln("Hello");
+ * </code></pre>
+ */
+public class QueuedConnection implements Connection {
+
+    private final Connection connection;
+    private final OutboundQueue queue;
+    private final Executor writer;
+
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    private volatile boolean isBinary = false;
+
+    /**
+     * Выбор между текстом и кадром и постановка в очередь идут под общей блокировкой,
+     * переключение протокола - под исключительной, см. {@link NioConnection}.
+     */
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    /**
+     * @param connection соединение, в которое пишутся сообщения
+     * @param queue очередь исходящих сообщений
+     * @param writer пул, на котором выполняется запись. Запись блокирующая,
+     *               поэтому лучше всего подходят виртуальные потоки.
+     */
+    public QueuedConnection(Connection connection, OutboundQueue queue, Executor writer) {
+        this.connection = connection;
+        this.queue = queue;
+        this.writer = writer;
+    }
+
+    @Override
+    public void sendln(String message) throws IllegalStateException {
+        switchLock.readLock().lock();
+        try {
+            if (isBinary)
+                send(Frame.text(message));
+            else
+                send(encode(message + '\n'));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void send(String message) throws IllegalStateException {
+        switchLock.readLock().lock();
+        try {
+            if (isBinary)
+                send(Frame.text(Frame.stripLineEnd(message)));
+            else
+                send(encode(message));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void send(Payload payload, boolean isHtml) throws IllegalStateException {
+        switchLock.readLock().lock();
+        try {
+            send(isBinary ? payload.getFrame() : payload.get(isHtml));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    private static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void send(ByteBuffer data) throws IllegalStateException {
+        if (connection.isClosed())
+            throw new IllegalStateException("Socket is closed");
+
+        if (!queue.offer(data.duplicate())) {
+            System.err.println("Client is too slow, closing " + connection);
+            close();
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true))
+            writer.execute(this::drain);
+    }
+
+    private void drain() {
+        ByteBuffer buffer;
+        while ((buffer = queue.peek()) != null) {
+            try {
+                connection.send(buffer);
+            } catch (IllegalStateException e) {
+                queue.clear();
+                break;
+            }
+            queue.remove();
+        }
+        isScheduled.set(false);
+        if (!queue.isEmpty())
+            schedule();
+    }
+
+    /**
+     * Переключает чтение обернутого соединения сразу, а кодирование
+     * исходящих строк - вместе с постановкой ответа <code>ack</code> в очередь.
+     */
+    @Override
+    public void switchToFrames(String ack) throws IllegalStateException {
+        connection.switchToFrames(null);
+        switchLock.writeLock().lock();
+        try {
+            if (ack != null)
+                send(encode(ack + '\n'));
+            isBinary = true;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isBinary() {
+        return isBinary;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return connection.isClosed();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queue.getQueuedBytes();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Закрывает соединение. Неотправленные сообщения выбрасываются.
+     */
+    @Override
+    public void close() {
+        connection.close();
+        queue.clear();
+    }
+
+    @Override
+    public String toString() {
+        return connection.toString();
+    }
+}
@@ -15,6 +15,9 @@ public class SimpleServerSocket implements Closeable {
 
     private boolean isClosed = false;
 
+    private int receiveBufferBytes = 0;
+    private int sendBufferBytes = 0;
+
     public  SimpleServerSocket(int port) {
         try {
             serverSocket = new ServerSocket(port);
@@ -24,6 +27,18 @@ public class SimpleServerSocket implements Closeable {
         }
     }
 
+    /**
+     * Задает размеры буферов сокета (SO_RCVBUF, SO_SNDBUF) для соединений,
+     * принятых после вызова.
+     *
+     * @param receiveBytes размер буфера приема, 0 - оставить системный
+     * @param sendBytes размер буфера отправки, 0 - оставить системный
+     */
+    public void setSocketBuffers(int receiveBytes, int sendBytes) {
+        this.receiveBufferBytes = receiveBytes;
+        this.sendBufferBytes = sendBytes;
+    }
+
     /**
      * Устанавливает соединение с пытающимся подключиться клиентом.<br>
      * Возможно блокирование потока, пока нет поступающих "запросов на соединение". <br>
@@ -32,7 +47,12 @@ public class SimpleServerSocket implements Closeable {
      */
     public SimpleSocket accept() {
         try {
-            return new SimpleSocket(serverSocket.accept());
+            var socket = serverSocket.accept();
+            if (receiveBufferBytes > 0)
+                socket.setReceiveBufferSize(receiveBufferBytes);
+            if (sendBufferBytes > 0)
+                socket.setSendBufferSize(sendBufferBytes);
+            return new SimpleSocket(socket);
         } catch (IOException e) {
             System.err.println("Error accepting client: " + e.getMessage());
             return null;
@@ -1,28 +1,39 @@
 package utils.network;
 
-import java.io.BufferedReader;
-import java.io.Closeable;
+import utils.elements.FrameTypes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Небольшой класс-обертка обычного сокета,
  * включающий в себя работу с отправкой и получением
  * информации, а также отлов исключений.
  *
+ * <p>По умолчанию сообщения - это строки. После {@link #switchToFrames(String)}
+ * обмен идет кадрами {@link Frame}; строки при этом оборачиваются в кадры
+ * {@link FrameTypes#TEXT}, а остальные кадры можно получить через {@link #receiveFrame()}.
+ *
  * <p>После окончания работы с этим классом должен
  * быть вызван метод {@link #close()}
  */
-public class SimpleSocket implements Closeable {
+public class SimpleSocket implements Connection {
     private Socket socket;
     private boolean isClosed = false;
 
+    private OutputStream rawOut = null;
     private PrintWriter out = null;
-    private BufferedReader in = null;
+    private DataInputStream in = null;
 
     private String peekMessage = null;
+    private volatile boolean isBinary = false;
 
     public SimpleSocket(Socket socket) {
         this.socket = socket;
@@ -42,8 +53,9 @@ public class SimpleSocket implements Closeable {
 
     private void loadSocket() {
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            rawOut = socket.getOutputStream();
+            out = new PrintWriter(rawOut, true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         } catch (IOException e) {
             System.err.println("Error opening socket streams: " + e.getMessage());
             close();
@@ -55,6 +67,7 @@ public class SimpleSocket implements Closeable {
             throw new IllegalStateException("Socket is closed");
     }
 
+    @Override
     public boolean isClosed() {
         return isClosed;
     }
@@ -65,9 +78,13 @@ public class SimpleSocket implements Closeable {
      * @param message сообщение
      * @throws IllegalStateException если сокет закрыт
      */
-    public void sendln(String message) throws IllegalStateException {
+    @Override
+    public synchronized void sendln(String message) throws IllegalStateException {
         ensureOpen();
-        out.println(message);
+        if (isBinary)
+            send(Frame.text(message));
+        else
+            out.println(message);
     }
 
     /**
@@ -76,12 +93,63 @@ public class SimpleSocket implements Closeable {
      * @param message сообщение
      * @throws IllegalStateException если сокет закрыт
      */
-    public void send(String message) throws IllegalStateException {
+    @Override
+    public synchronized void send(String message) throws IllegalStateException {
         ensureOpen();
+        if (isBinary) {
+            send(Frame.text(Frame.stripLineEnd(message)));
+            return;
+        }
         out.print(message);
         out.flush();
     }
 
+    /**
+     * Отправляет готовые байты данному сокету, минуя кодирование.
+     *
+     * @param data байты от текущей позиции до конца буфера
+     * @throws IllegalStateException если сокет закрыт
+     */
+    @Override
+    public synchronized void send(ByteBuffer data) throws IllegalStateException {
+        ensureOpen();
+        var buffer = data.duplicate();
+        try {
+            if (buffer.hasArray()) {
+                rawOut.write(
+                    buffer.array(),
+                    buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining()
+                );
+            } else {
+                var bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                rawOut.write(bytes);
+            }
+            rawOut.flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void send(Payload payload, boolean isHtml) throws IllegalStateException {
+        send(isBinary ? payload.getFrame() : payload.get(isHtml));
+    }
+
+    @Override
+    public synchronized void switchToFrames(String ack) throws IllegalStateException {
+        ensureOpen();
+        if (ack != null)
+            out.println(ack);
+        isBinary = true;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return isBinary;
+    }
+
     /**
      * Проверяет, есть ли новые сообщения от сокета.<br>
      * Возможно блокирование потока до тех пор, пока не будет получено
@@ -127,13 +195,79 @@ public class SimpleSocket implements Closeable {
         return rawGetMessage();
     }
 
+    /**
+     * Возвращает следующий кадр от сокета. До переключения на двоичный протокол
+     * каждая строка возвращается как кадр {@link FrameTypes#TEXT}.
+     *
+     * <p>Возможно блокирование потока до тех пор, пока не будет получен
+     * новый кадр или не будет закрыт сокет.
+     *
+     * @return кадр, либо null, если соединение было разорвано
+     * @throws IllegalStateException если сокет закрыт
+     */
+    public Frame receiveFrame() throws IllegalStateException {
+        if (peekMessage != null)
+            return Frame.ofText(receiveMessage());
+
+        ensureOpen();
+        if (!isBinary) {
+            var line = rawGetMessage();
+            return line == null ? null : Frame.ofText(line);
+        }
+        return rawGetFrame();
+    }
+
+    /**
+     * В двоичном режиме пропускает все кадры, кроме текстовых.
+     */
     private String rawGetMessage() {
+        if (!isBinary)
+            return readLine();
+
+        Frame frame;
+        while ((frame = rawGetFrame()) != null) {
+            if (frame.type == FrameTypes.TEXT)
+                return frame.getText();
+            System.err.println("Unexpected " + frame);
+        }
+        return null;
+    }
+
+    private Frame rawGetFrame() {
+        try {
+            return FrameDecoder.read(in);
+        } catch (IOException e) {
+            close();
+            return null;
+        }
+    }
+
+    /**
+     * Читает строку, завершенную <code>'\n'</code> или <code>"\r\n"</code>.
+     * Строка читается побайтово из буферизованного потока, чтобы после
+     * переключения на кадры не потерять уже прочитанные байты.
+     */
+    private String readLine() {
+        var line = new ByteArrayOutputStream(64);
         try {
-            return in.readLine();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    if (line.size() == 0)
+                        return null;
+                    break;
+                }
+                line.write(b);
+            }
         } catch (IOException e) {
             close();
             return null;
         }
+
+        var result = line.toString(StandardCharsets.UTF_8);
+        if (!result.isEmpty() && result.charAt(result.length() - 1) == '\r')
+            result = result.substring(0, result.length() - 1);
+        return result;
     }
 
     /**
@@ -147,18 +281,26 @@ public class SimpleSocket implements Closeable {
     public void close() {
         isClosed = true;
 
+        // Сокет может закрываться одновременно из нескольких потоков
+        // (например, при отключении клиента и остановке сервера)
+        var socket = this.socket;
+        var out = this.out;
+        var in = this.in;
         if (socket == null)
             return;
 
         try {
             socket.close();
         } catch (IOException ignored) {}
-        out.close();
+        if (out != null)
+            out.close();
         try {
-            in.close();
+            if (in != null)
+                in.close();
         } catch (IOException ignored) {}
 
         socket = null;
+        rawOut = null;
         out = null;
         in = null;
     }
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.cli.CommandError;
+import utils.cli.CommandTokenizer;
+import utils.cli.CommandValidator;
+import utils.cli.utils.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Сравнивает однопроходный разбор команд с прежним разбором
+ * на регулярном выражении.
+ */
+public class CommandParserTest {
+
+    private static final Pattern pattern = Pattern.compile(
+        "^/"
+            + "|(\\w+|(?<!\")\"\"|(?<!\")\".*?(?:(?<=[^\\\\])(?:\\\\\\\\)+|[^\\\\])\")"
+            + "|([^\"^[:alnum]]+?(?=\\w|\"|$)|\".*)"
+    );
+
+    private static final String ALPHABET = "/ \"\\ab_1x:^<-ф\n\r";
+
+    private static List<Token> referenceTokenize(String input) {
+        var tokens = new ArrayList<Token>();
+        for (var result : pattern.matcher(input).results().toList()) {
+            var token = result.group(1);
+            if (token == null)
+                continue;
+            var isArgument = token.charAt(0) == '"';
+            if (isArgument)
+                token = token.substring(1, token.length() - 1);
+            tokens.add(new Token(unescape(token), result.start(1), result.end(1), isArgument));
+        }
+        return tokens;
+    }
+
+    private static String unescape(String token) {
+        var builder = new StringBuilder();
+        boolean isEscaped = false;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '\\' && !isEscaped) {
+                isEscaped = true;
+                continue;
+            }
+            isEscaped = false;
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return тип и позиция ошибки, либо null
+     */
+    private static String referenceValidate(String command) {
+        if (command.isEmpty())
+            return "EMPTY_COMMAND 0 0";
+
+        for (MatchResult it : pattern.matcher(command).results().toList()) {
+            String delimiter = it.group(2);
+            if (delimiter == null)
+                continue;
+
+            if (delimiter.charAt(0) == '"') {
+                var type = command.charAt(it.start(2) - 1) == '"'
+                    ? "NO_SEPARATION "
+                    : "UNCLOSED_QUOTE ";
+                return type + it.start(2) + " " + it.end(2);
+            }
+            if (delimiter.charAt(0) != ' ')
+                return "INVALID_SEPARATOR " + it.start(2) + " " + it.end(2);
+            if (delimiter.length() > 1)
+                return "UNEXPECTED_SYMBOL " + (it.start(2) + 1) + " " + it.end(2);
+        }
+        return null;
+    }
+
+    private static String describe(CommandError error) {
+        return error == null ? null : error.type + " " + error.start + " " + error.end;
+    }
+
+    private static void assertSame(String command) {
+        Assertions.assertEquals(
+            referenceTokenize(command), CommandTokenizer.tokenize(command), command
+        );
+        Assertions.assertEquals(
+            referenceValidate(command), describe(CommandValidator.validate(command)), command
+        );
+    }
+
+    @Test
+    public void knownCommands() {
+        assertSame("/groups create groupId \"Группа для тех, кто любит...\" ");
+        assertSame("/friends add \"user\"\"name\"");
+        assertSame("/uwu \"<owo>\\\\\\\"");
+        assertSame("/msg группа");
+        assertSame("/x :y");
+        assertSame("/a  b");
+        assertSame("/ ");
+        assertSame("/history 120\r\n");
+    }
+
+    @Test
+    public void randomCommands() {
+        var random = new Random(12345);
+        for (int i = 0; i < 50_000; i++) {
+            var builder = new StringBuilder("/");
+            int length = random.nextInt(14);
+            for (int j = 0; j < length; j++)
+                builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            assertSame(builder.toString());
+        }
+    }
+}
@@ -3,6 +3,10 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import utils.Ansi;
 
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -696,4 +700,37 @@ public class CommandProcessorTest {
         a.set("");
     }
 
+    /**
+     * Результаты исполнения из разных потоков не должны смешиваться
+     * и не должны затрагивать {@link CommandProcessor#getOutput()}.
+     */
+    @Test
+    public void concurrentRun() throws InterruptedException, ExecutionException {
+        var processor = new CommandProcessor();
+        processor.register("echo", (rc) -> rc
+            .requireArgument("arg")
+            .executes((ctx) -> ctx.out.println(ctx.getString("arg")))
+        );
+
+        var executor = Executors.newFixedThreadPool(8);
+        var results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 1000; i++) {
+            var input = i % 10 == 0 ? "/unknown" : "/echo " + i;
+            results.add(executor.submit(() -> {
+                var result = processor.run(input, null);
+                return result.isSuccessful()
+                    ? result.getOutput()
+                    : result.getError().type.name();
+            }));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            var expected = i % 10 == 0 ? COMMAND_NOT_FOUND.name() : i + "\n";
+            Assertions.assertEquals(expected, results.get(i).get());
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals("", processor.getOutput());
+        Assertions.assertNull(processor.getLastError());
+    }
 }
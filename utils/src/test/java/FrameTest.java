@@ -0,0 +1,202 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.elements.FrameTypes;
+import utils.network.Frame;
+import utils.network.FrameDecoder;
+import utils.network.NioConnection;
+import utils.network.NioServer;
+import utils.network.SimpleSocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+public class FrameTest {
+
+    private static Frame decode(ByteBuffer encoded) {
+        var frames = new ArrayList<Frame>();
+        Assertions.assertTrue(new FrameDecoder().feed(encoded.duplicate(), frames::add));
+        Assertions.assertEquals(1, frames.size());
+        return frames.getFirst();
+    }
+
+    @Test
+    public void roundTrip() {
+        var text = decode(Frame.text("Первая строка\nвторая"));
+        Assertions.assertEquals(FrameTypes.TEXT, text.type);
+        Assertions.assertEquals("Первая строка\nвторая", text.getText());
+
+        var chat = new Frame.Chat(12, 3, "user", "Привет", 1700000000000L);
+        Assertions.assertEquals(chat, decode(Frame.chat(chat)).getChat());
+
+        var page = List.of(chat, new Frame.Chat(13, 4, "other", "", 0));
+        Assertions.assertEquals(page, decode(Frame.history(page)).getHistory());
+        Assertions.assertEquals(List.of(), decode(Frame.history(List.of())).getHistory());
+
+        var presence = new Frame.Presence(5, true, 42);
+        Assertions.assertEquals(presence, decode(Frame.presence(presence)).getPresence());
+
+        var unread = new Frame.Unread("group", 17);
+        Assertions.assertEquals(unread, decode(Frame.unread(unread)).getUnread());
+
+        var counts = List.of(new Frame.UnreadCount("a", 3), new Frame.UnreadCount("b", 0));
+        var session = new Frame.Session("alice", "ab12", "group", "Logged in as Alice.", counts);
+        Assertions.assertEquals(session, decode(Frame.session(session)).getSession());
+        Assertions.assertTrue(session.isAuthenticated());
+        var anonymous = new Frame.Session("", "", "", "", List.of());
+        Assertions.assertEquals(anonymous, decode(Frame.session(anonymous)).getSession());
+        Assertions.assertFalse(anonymous.isAuthenticated());
+
+        var result = decode(Frame.result(false, "Error"));
+        Assertions.assertEquals(new Frame.Result(false, "Error"), result.getResult());
+        Assertions.assertThrows(IllegalStateException.class, result::getText);
+    }
+
+    @Test
+    public void fragmentedFrames() throws IOException {
+        var first = Frame.text("a".repeat(100));
+        var second = Frame.result(true, "ok");
+        var stream = ByteBuffer.allocate(first.remaining() + second.remaining());
+        stream.put(first.duplicate()).put(second.duplicate()).flip();
+
+        // По одному байту за раз
+        var decoder = new FrameDecoder();
+        var frames = new ArrayList<Frame>();
+        while (stream.hasRemaining()) {
+            var chunk = stream.slice(stream.position(), 1);
+            stream.position(stream.position() + 1);
+            Assertions.assertTrue(decoder.feed(chunk, frames::add));
+        }
+        Assertions.assertEquals(2, frames.size());
+        Assertions.assertEquals("a".repeat(100), frames.get(0).getText());
+        Assertions.assertTrue(frames.get(1).getResult().isSuccessful());
+
+        // Блокирующее чтение того же потока
+        var in = new DataInputStream(new ByteArrayInputStream(stream.array()));
+        Assertions.assertEquals(FrameTypes.TEXT, FrameDecoder.read(in).type);
+        Assertions.assertEquals("ok", FrameDecoder.read(in).getResult().text());
+    }
+
+    @Test
+    public void emptyBody() {
+        // Кадр из одного заголовка: длина 1 (только тип), тела нет
+        var empty = ByteBuffer.allocate(Frame.HEADER_SIZE).putInt(1).put((byte) 0).flip();
+
+        var frames = new ArrayList<Frame>();
+        Assertions.assertTrue(new FrameDecoder().feed(empty.duplicate(), frames::add));
+        Assertions.assertEquals(1, frames.size());
+
+        // Заголовок приходит частями и заканчивается вместе с данными
+        var decoder = new FrameDecoder();
+        frames.clear();
+        Assertions.assertTrue(decoder.feed(empty.slice(0, 3), frames::add));
+        Assertions.assertEquals(0, frames.size());
+        Assertions.assertTrue(decoder.feed(empty.slice(3, Frame.HEADER_SIZE - 3), frames::add));
+        Assertions.assertEquals(1, frames.size());
+        Assertions.assertEquals(FrameTypes.TEXT, frames.getFirst().type);
+    }
+
+    @Test
+    public void malformedFrames() {
+        var unknownType = ByteBuffer.allocate(6).putInt(2).put((byte) 100).put((byte) 0).flip();
+        Assertions.assertFalse(new FrameDecoder().feed(unknownType, (f) -> {}));
+
+        var tooLarge = ByteBuffer.allocate(5).putInt(Integer.MAX_VALUE).put((byte) 0).flip();
+        Assertions.assertFalse(new FrameDecoder().feed(tooLarge, (f) -> {}));
+    }
+
+    @Test
+    public void negotiation() {
+        var executor = Executors.newFixedThreadPool(2);
+        var server = new NioServer(0, new NioServer.Listener() {
+            @Override
+            public void onConnect(NioConnection connection) {}
+
+            @Override
+            public void onLine(NioConnection connection, String line) {
+                if (line.equals(Frame.NEGOTIATION)) {
+                    connection.switchToFrames(Frame.NEGOTIATION);
+                    return;
+                }
+                if (connection.isBinary())
+                    connection.send(Frame.result(true, "echo\n" + line));
+                else
+                    connection.sendln("echo " + line);
+            }
+
+            @Override
+            public void onDisconnect(NioConnection connection) {}
+        }, executor);
+        server.start();
+
+        var client = new SimpleSocket("127.0.0.1", server.getPort());
+        client.sendln("text");
+        Assertions.assertEquals("echo text", client.receiveMessage());
+
+        client.sendln(Frame.NEGOTIATION);
+        Assertions.assertEquals(Frame.NEGOTIATION, client.receiveMessage());
+        client.switchToFrames(null);
+
+        client.sendln("многострочное\nсообщение");
+        var frame = client.receiveFrame();
+        Assertions.assertEquals(FrameTypes.RESULT, frame.type);
+        Assertions.assertEquals("echo\nмногострочное\nсообщение", frame.getResult().text());
+
+        client.close();
+        server.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void negotiationWhileSending() {
+        int count = 2000;
+        var executor = Executors.newFixedThreadPool(2);
+        var server = new NioServer(0, new NioServer.Listener() {
+            @Override
+            public void onConnect(NioConnection connection) {}
+
+            @Override
+            public void onLine(NioConnection connection, String line) {
+                if (line.equals(Frame.NEGOTIATION)) {
+                    connection.switchToFrames(Frame.NEGOTIATION);
+                    return;
+                }
+                // Рассылка из другого потока идет одновременно с переключением
+                new Thread(() -> {
+                    for (int i = 0; i < count; i++)
+                        connection.sendln("x");
+                }).start();
+            }
+
+            @Override
+            public void onDisconnect(NioConnection connection) {}
+        }, executor);
+        server.start();
+
+        var client = new SimpleSocket("127.0.0.1", server.getPort());
+        client.sendln("flood");
+        client.sendln(Frame.NEGOTIATION);
+
+        // До ответа на переключение - только строки, после него - только кадры
+        int received = 0;
+        String line;
+        while (!(line = client.receiveMessage()).equals(Frame.NEGOTIATION)) {
+            Assertions.assertEquals("x", line);
+            received++;
+        }
+        client.switchToFrames(null);
+        for (; received < count; received++) {
+            var frame = client.receiveFrame();
+            Assertions.assertNotNull(frame);
+            Assertions.assertEquals("x", frame.getText());
+        }
+
+        client.close();
+        server.close();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.IntSet;
+import utils.LruCache;
+
+public class IntSetTest {
+
+    @Test
+    public void ofSortsAndDeduplicates() {
+        var set = IntSet.of(5, 1, 3, 1, 5);
+        Assertions.assertArrayEquals(new int[] {1, 3, 5}, set.toArray());
+        Assertions.assertTrue(set.contains(3));
+        Assertions.assertFalse(set.contains(2));
+        Assertions.assertSame(IntSet.EMPTY, IntSet.of());
+    }
+
+    @Test
+    public void withAndWithout() {
+        var set = IntSet.of(2, 4);
+        var added = set.with(3).with(-1).with(10);
+        Assertions.assertArrayEquals(new int[] {-1, 2, 3, 4, 10}, added.toArray());
+        // Исходное множество не меняется
+        Assertions.assertArrayEquals(new int[] {2, 4}, set.toArray());
+        Assertions.assertSame(set, set.with(2));
+
+        var removed = added.without(-1).without(10).without(3);
+        Assertions.assertEquals(set, removed);
+        Assertions.assertSame(removed, removed.without(7));
+        Assertions.assertTrue(IntSet.of(1).without(1).isEmpty());
+    }
+
+    @Test
+    public void lruEviction() {
+        var cache = new LruCache<Integer, String>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        Assertions.assertEquals("a", cache.get(1));
+        cache.put(3, "c");
+
+        Assertions.assertNull(cache.get(2));
+        Assertions.assertEquals("a", cache.get(1));
+        Assertions.assertEquals("c", cache.get(3));
+        Assertions.assertEquals(2, cache.size());
+
+        cache.update(1, (v) -> v + "a");
+        Assertions.assertEquals("aa", cache.get(1));
+        cache.update(1, (v) -> null);
+        Assertions.assertNull(cache.get(1));
+        Assertions.assertEquals(4, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+}
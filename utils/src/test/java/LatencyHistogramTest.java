@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(50, histogram.getPercentile(50));
+        Assertions.assertEquals(99, histogram.getPercentile(99));
+        Assertions.assertEquals(100, histogram.getPercentile(100));
+        Assertions.assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void largeValuesWithinPrecision() {
+        var histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++)
+            histogram.record(value * 7);
+
+        for (var percentile : new double[] {50, 90, 99, 99.9}) {
+            var expected = 7 * 1_000_000 * percentile / 100;
+            var actual = histogram.getPercentile(percentile);
+            Assertions.assertTrue(
+                Math.abs(actual - expected) / expected < 0.02,
+                "p" + percentile + ": " + actual + " vs " + expected
+            );
+        }
+        Assertions.assertEquals(7_000_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void emptyAndOutOfRange() {
+        var histogram = new LatencyHistogram();
+        Assertions.assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(2, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getPercentile(50));
+        Assertions.assertTrue(histogram.getPercentile(100) > 0);
+    }
+
+    @Test
+    public void snapshotAndReset() {
+        var histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+
+        var snapshot = histogram.snapshotAndReset();
+        Assertions.assertEquals(2, snapshot.getCount());
+        Assertions.assertEquals(20, snapshot.getMax());
+        Assertions.assertEquals(0, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getMax());
+    }
+}
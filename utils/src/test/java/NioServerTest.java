@@ -0,0 +1,127 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.network.NioConnection;
+import utils.network.NioServer;
+import utils.network.Payload;
+import utils.network.SimpleSocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class NioServerTest {
+
+    private static class EchoListener implements NioServer.Listener {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+
+        @Override
+        public void onConnect(NioConnection connection) {
+            connected.countDown();
+        }
+
+        @Override
+        public void onLine(NioConnection connection, String line) {
+            connection.sendln("echo " + line);
+        }
+
+        @Override
+        public void onDisconnect(NioConnection connection) {
+            disconnected.countDown();
+        }
+    }
+
+    @Test
+    public void echoLines() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        var listener = new EchoListener();
+        var server = new NioServer(0, listener, executor);
+        Assertions.assertFalse(server.isClosed());
+        server.start();
+
+        var client = new SimpleSocket("127.0.0.1", server.getPort());
+        Assertions.assertFalse(client.isClosed());
+        Assertions.assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+
+        // Порядок ответов должен совпадать с порядком отправки
+        for (int i = 0; i < 100; i++)
+            client.sendln("message " + i);
+        for (int i = 0; i < 100; i++)
+            Assertions.assertEquals("echo message " + i, client.receiveMessage());
+
+        client.sendln("Сообщение с \"кавычками\"");
+        Assertions.assertEquals("echo Сообщение с \"кавычками\"", client.receiveMessage());
+
+        client.close();
+        Assertions.assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+
+        server.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void fragmentedLines() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        var listener = new EchoListener();
+        var server = new NioServer(0, listener, executor);
+        server.start();
+
+        try (var raw = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = raw.getOutputStream();
+            var reader = new SimpleSocket(raw);
+
+            // Одна строка приходит по частям, еще две - одним пакетом
+            var bytes = "ле\r\nвая строка\nправая\n".getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, 1);
+            out.flush();
+            Thread.sleep(50);
+            out.write(bytes, 1, bytes.length - 1);
+            out.flush();
+
+            Assertions.assertEquals("echo ле", reader.receiveMessage());
+            Assertions.assertEquals("echo вая строка", reader.receiveMessage());
+            Assertions.assertEquals("echo правая", reader.receiveMessage());
+        }
+
+        Assertions.assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+        server.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void sharedPayload() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        var payload = Payload.of((isHtml) -> isHtml ? "<b>всем</b>\n" : "всем\n");
+        var listener = new EchoListener() {
+            @Override
+            public void onLine(NioConnection connection, String line) {
+                connection.send(payload.get(line.equals("html")));
+            }
+        };
+        var server = new NioServer(0, listener, executor);
+        server.start();
+
+        var first = new SimpleSocket("127.0.0.1", server.getPort());
+        var second = new SimpleSocket("127.0.0.1", server.getPort());
+        for (int i = 0; i < 3; i++) {
+            first.sendln("ansi");
+            second.sendln("html");
+            Assertions.assertEquals("всем", first.receiveMessage());
+            Assertions.assertEquals("<b>всем</b>", second.receiveMessage());
+        }
+
+        // Буфер общий и не расходуется при отправке
+        Assertions.assertSame(payload.get(false), payload.get(false));
+        Assertions.assertEquals(0, payload.get(false).position());
+
+        first.close();
+        second.close();
+        server.close();
+        executor.shutdown();
+    }
+}
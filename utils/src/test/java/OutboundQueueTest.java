@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.elements.OverflowPolicies;
+import utils.network.OutboundQueue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class OutboundQueueTest {
+
+    private static ByteBuffer message(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String take(OutboundQueue queue) {
+        var buffer = queue.peek();
+        queue.remove();
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    @Test
+    public void dropOldest() {
+        var queue = new OutboundQueue(10, OverflowPolicies.DROP_OLDEST, 0);
+        Assertions.assertTrue(queue.offer(message("aaaa")));
+        Assertions.assertTrue(queue.offer(message("bbbb")));
+        Assertions.assertEquals(8, queue.getQueuedBytes());
+
+        // Первое сообщение могло начать отправляться, поэтому выбрасывается второе
+        Assertions.assertTrue(queue.offer(message("cccc")));
+        Assertions.assertEquals(1, queue.getDroppedCount());
+        Assertions.assertEquals("aaaa", take(queue));
+        Assertions.assertEquals("cccc", take(queue));
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertEquals(0, queue.getQueuedBytes());
+
+        // Сообщение больше очереди принимается только в пустую очередь
+        Assertions.assertTrue(queue.offer(message("very long message")));
+        Assertions.assertEquals("very long message", take(queue));
+    }
+
+    @Test
+    public void disconnect() {
+        var queue = new OutboundQueue(10, OverflowPolicies.DISCONNECT, 0);
+        Assertions.assertTrue(queue.offer(message("aaaaaa")));
+        Assertions.assertFalse(queue.offer(message("bbbbbb")));
+        Assertions.assertEquals(6, queue.getQueuedBytes());
+    }
+
+    @Test
+    public void partiallySentSize() {
+        var queue = new OutboundQueue(10, OverflowPolicies.DISCONNECT, 0);
+        queue.offer(message("aaaaaa"));
+        // Писатель отправил часть первого сообщения
+        queue.peek().position(3);
+        queue.remove();
+        Assertions.assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    public void blockWithTimeout() throws InterruptedException {
+        var queue = new OutboundQueue(10, OverflowPolicies.BLOCK, 2000);
+        queue.offer(message("aaaaaa"));
+
+        var writer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {}
+            queue.remove();
+        });
+        writer.start();
+        // Ждем, пока писатель освободит место
+        Assertions.assertTrue(queue.offer(message("bbbbbb")));
+        writer.join();
+        Assertions.assertEquals(6, queue.getQueuedBytes());
+
+        var timedOut = new OutboundQueue(10, OverflowPolicies.BLOCK, 50);
+        timedOut.offer(message("aaaaaa"));
+        Assertions.assertFalse(timedOut.offer(message("bbbbbb")));
+    }
+}